@@ -0,0 +1,195 @@
+// (c) Wiltrud Kessler
+// 19.10.2026
+// This code is distributed under a Creative Commons
+// Attribution-NonCommercial-ShareAlike 3.0 Unported license
+// http://creativecommons.org/licenses/by-nc-sa/3.0/
+
+package de.uni_stuttgart.ims.corpus.normalize;
+
+import java.io.BufferedReader;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+import de.uni_stuttgart.ims.util.Fileutils;
+
+
+/**
+ * Compare allocation and time of the token index remapping in the
+ * normalization loop: boxed Integer[]/String[] arrays allocated for
+ * every sentence (as it was done before IndexMap) against one IndexMap
+ * reused for all sentences.
+ *
+ * Both variants do the same work per sentence: initialize, merge
+ * every 7th token into its predecessor (like NER), replace '=',
+ * cut to the length window and build the sentence string.
+ *
+ * Usage: IndexMapBenchmark <sentences file> [<rounds>]
+ * Not part of the program, compile it together with src
+ * (it uses package classes of the normalization).
+ *
+ * @author kesslewd
+ *
+ */
+public class IndexMapBenchmark {
+
+
+   public static void main(String[] args) throws Exception {
+
+      if (args.length < 1) {
+         System.err.println("Usage: IndexMapBenchmark <sentences file> [<rounds>]");
+         System.exit(1);
+      }
+      int rounds = (args.length > 1) ? Integer.parseInt(args[1]) : 10;
+
+      List<String[]> sentences = new ArrayList<String[]>();
+      BufferedReader in = Fileutils.getReadFile(args[0]);
+      String strLine;
+      while ((strLine = in.readLine()) != null) {
+         sentences.add(strLine.split(" "));
+      }
+      Fileutils.closeSilently(in);
+      System.out.println("Read " + sentences.size() + " sentences.");
+
+      // warm up
+      runBoxed(sentences);
+      runIndexMap(sentences);
+
+      long[] boxed = new long[2];
+      long[] reused = new long[2];
+      for (int r=0; r<rounds; r++) {
+         add(boxed, measure(sentences, true));
+         add(reused, measure(sentences, false));
+      }
+
+      long total = (long) sentences.size() * rounds;
+      print("boxed arrays per sentence", boxed, total);
+      print("reused IndexMap", reused, total);
+      if (boxed[0] > 0) {
+         System.out.println(String.format("allocation reduced by %.1f%%", 100.0 * (boxed[0] - reused[0]) / boxed[0]));
+      }
+   }
+
+
+
+   /**
+    * @return {allocated bytes, nanoseconds}
+    */
+   private static long[] measure(List<String[]> sentences, boolean boxed) {
+      long bytes = allocatedBytes();
+      long start = System.nanoTime();
+      if (boxed) {
+         runBoxed(sentences);
+      } else {
+         runIndexMap(sentences);
+      }
+      return new long[] {allocatedBytes() - bytes, System.nanoTime() - start};
+   }
+
+
+   private static int sink = 0;
+
+   private static WindowSelector windowSelector = new FixedWindowSelector();
+
+
+   private static void runIndexMap(List<String[]> sentences) {
+      IndexMap indexMap = new IndexMap();
+      for (String[] tokens : sentences) {
+         indexMap.reset(tokens.length);
+
+         int del = 0;
+         for (int i=1; i<indexMap.size(); i++) {
+            if (i % 7 == 0) {
+               indexMap.set(i, IndexMap.DELETED);
+               del++;
+            } else {
+               indexMap.set(i, indexMap.get(i) - del);
+            }
+         }
+
+         TokenLevelReplacements.globalReplaceTokens(tokens, indexMap);
+         int[] window = windowSelector.getWindow(null, tokens.length);
+         LengthNormalizer.adjustReplacementIndices(window[0], window[1], indexMap);
+         sink += TokenLevelReplacements.getSentenceString(tokens, indexMap).length();
+      }
+   }
+
+
+   private static void runBoxed(List<String[]> sentences) {
+      for (String[] tokens : sentences) {
+         Integer[] newIndices = new Integer[tokens.length+1];
+         for (int i=0; i<newIndices.length; i++) {
+            newIndices[i] = i;
+         }
+         String[] replacements = new String[tokens.length+1];
+
+         int del = 0;
+         for (int i=1; i<newIndices.length; i++) {
+            if (i % 7 == 0) {
+               newIndices[i] = null;
+               del++;
+            } else {
+               newIndices[i] = newIndices[i] - del;
+            }
+         }
+
+         for (int i=0; i<tokens.length; i++) {
+            if (tokens[i].equals("="))
+               replacements[i + 1] = "eq";
+         }
+
+         int[] window = windowSelector.getWindow(null, tokens.length);
+         for (int i=0; i<window[0]; i++) {
+            newIndices[i] = null;
+            replacements[i] = null;
+         }
+         for (int i=window[0]; i<=window[1]; i++) {
+            if (newIndices[i] != null) {
+               newIndices[i] = newIndices[i] - window[0]+1;
+            }
+         }
+         for (int i=window[1]+1; i<newIndices.length; i++) {
+            newIndices[i] = null;
+            replacements[i] = null;
+         }
+
+         String newSentence = "";
+         for (int i=1; i<newIndices.length; i++) {
+            if (newIndices[i] != null) {
+               if (replacements[i] != null) {
+                  newSentence += " " + replacements[i];
+               } else {
+                  newSentence += " " + tokens[i - 1];
+               }
+            }
+         }
+         sink += newSentence.trim().length();
+      }
+   }
+
+
+
+   /**
+    * Bytes allocated by the current thread so far, -1 if the JVM cannot tell.
+    */
+   private static long allocatedBytes() {
+      java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+      if (bean instanceof com.sun.management.ThreadMXBean) {
+         return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+      }
+      return -1;
+   }
+
+
+   private static void add(long[] sum, long[] values) {
+      sum[0] += values[0];
+      sum[1] += values[1];
+   }
+
+
+   private static void print(String name, long[] values, long sentences) {
+      System.out.println(String.format("%-28s %10.1f bytes/sentence %10.2f us/sentence",
+            name + ":", (double) values[0] / sentences, values[1] / 1000.0 / sentences));
+   }
+
+}
@@ -0,0 +1,254 @@
+// (c) Wiltrud Kessler
+// 19.10.2026
+// This code is distributed under a Creative Commons
+// Attribution-NonCommercial-ShareAlike 3.0 Unported license
+// http://creativecommons.org/licenses/by-nc-sa/3.0/
+
+
+package de.uni_stuttgart.ims.corpus.compannotation;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+
+/**
+ * List of the annotations of one argument (e.g., all entity1)
+ * of a comparison, every annotation is an array of tokens.
+ *
+ * Copy-on-write: share() returns a copy that uses the same storage,
+ * the storage is only copied when one of the lists sharing it is changed.
+ * So comparisons can share their arguments (e.g., several predicates
+ * with the same entities) without changes of one showing up in the other.
+ * Token arrays are always shared, they must not be changed.
+ *
+ * Frozen lists (see freeze) cannot be changed at all.
+ *
+ * The list knows the first and last token number of all its tokens
+ * (bounding span), it is updated when tokens are added and only
+ * computed again after a remove.
+ *
+ * Not thread-safe.
+ *
+ * @author kesslewd
+ */
+public class ArgumentList extends AbstractList<ComparisonAnnotationToken[]> {
+
+   private ArrayList<ComparisonAnnotationToken[]> items;
+
+   /** Other lists may use the same storage, copy before changing. */
+   private boolean shared;
+
+   private boolean frozen;
+
+   // Bounding span of all tokens (token numbers > 0), -1 if there are none
+   private int firstToken = -1;
+   private int lastToken = -1;
+   private boolean spanValid = true;
+
+
+
+   public ArgumentList() {
+      this.items = new ArrayList<ComparisonAnnotationToken[]>();
+      this.shared = false;
+      this.frozen = false;
+   }
+
+
+   /**
+    * New list with the elements of the collection (the list is copied).
+    */
+   public ArgumentList(Collection<? extends ComparisonAnnotationToken[]> arguments) {
+      this.items = new ArrayList<ComparisonAnnotationToken[]>(arguments);
+      this.shared = false;
+      this.frozen = false;
+      this.spanValid = false;
+   }
+
+
+   private ArgumentList(ArgumentList other, boolean frozen) {
+      this.items = other.items;
+      this.shared = true;
+      this.frozen = frozen;
+      this.firstToken = other.firstToken;
+      this.lastToken = other.lastToken;
+      this.spanValid = other.spanValid;
+   }
+
+
+
+   /**
+    * Copy that shares the storage with this list until one of them is changed.
+    */
+   public ArgumentList share() {
+      if (!this.frozen) { // frozen lists never change their storage
+         this.shared = true;
+      }
+      return new ArgumentList(this, false);
+   }
+
+
+   /**
+    * Copy that cannot be changed, shares the storage with this list.
+    */
+   public ArgumentList freeze() {
+      if (this.frozen) {
+         return this;
+      }
+      this.shared = true;
+      return new ArgumentList(this, true);
+   }
+
+
+   public boolean isFrozen() {
+      return this.frozen;
+   }
+
+
+
+   /**
+    * Changeable copy of any list, null stays null.
+    */
+   public static ArgumentList sharedCopy(List<ComparisonAnnotationToken[]> arguments) {
+      if (arguments == null) {
+         return null;
+      }
+      if (arguments instanceof ArgumentList) {
+         return ((ArgumentList) arguments).share();
+      }
+      return new ArgumentList(arguments);
+   }
+
+
+   /**
+    * Copy of any list that cannot be changed, null stays null.
+    */
+   public static ArgumentList frozenCopy(List<ComparisonAnnotationToken[]> arguments) {
+      if (arguments == null) {
+         return null;
+      }
+      if (arguments instanceof ArgumentList) {
+         return ((ArgumentList) arguments).freeze();
+      }
+      return new ArgumentList(arguments).freeze();
+   }
+
+
+
+   // Bounding span
+
+
+   /**
+    * Smallest token number of all tokens, -1 if there are none
+    * (token number 0 is ignored).
+    */
+   public int getFirstToken() {
+      validateSpan();
+      return this.firstToken;
+   }
+
+   /**
+    * Largest token number of all tokens, -1 if there are none.
+    */
+   public int getLastToken() {
+      validateSpan();
+      return this.lastToken;
+   }
+
+
+   private void validateSpan() {
+      if (!this.spanValid) {
+         this.firstToken = -1;
+         this.lastToken = -1;
+         for (ComparisonAnnotationToken[] tokens : this.items) {
+            addToSpan(tokens);
+         }
+         this.spanValid = true;
+      }
+   }
+
+   private void addToSpan(ComparisonAnnotationToken[] tokens) {
+      if (tokens == null) {
+         return;
+      }
+      for (ComparisonAnnotationToken token : tokens) {
+         int number = token.tokenNumber;
+         if (number > 0) {
+            if (this.firstToken == -1 || number < this.firstToken) {
+               this.firstToken = number;
+            }
+            if (number > this.lastToken) {
+               this.lastToken = number;
+            }
+         }
+      }
+   }
+
+
+
+   // Read
+
+
+   @Override
+   public ComparisonAnnotationToken[] get(int index) {
+      return this.items.get(index);
+   }
+
+   @Override
+   public int size() {
+      return this.items.size();
+   }
+
+
+
+   // Change (copy storage first if it is shared)
+
+
+   @Override
+   public ComparisonAnnotationToken[] set(int index, ComparisonAnnotationToken[] element) {
+      prepareChange();
+      this.spanValid = false;
+      return this.items.set(index, element);
+   }
+
+   @Override
+   public void add(int index, ComparisonAnnotationToken[] element) {
+      prepareChange();
+      this.items.add(index, element);
+      this.modCount++;
+      if (this.spanValid) {
+         addToSpan(element);
+      }
+   }
+
+   @Override
+   public ComparisonAnnotationToken[] remove(int index) {
+      prepareChange();
+      this.modCount++;
+      this.spanValid = false;
+      return this.items.remove(index);
+   }
+
+   @Override
+   public void clear() {
+      prepareChange();
+      this.modCount++;
+      this.items = new ArrayList<ComparisonAnnotationToken[]>();
+      this.firstToken = -1;
+      this.lastToken = -1;
+      this.spanValid = true;
+   }
+
+
+   private void prepareChange() {
+      if (this.frozen) {
+         throw new UnsupportedOperationException("Argument list is frozen.");
+      }
+      if (this.shared) {
+         this.items = new ArrayList<ComparisonAnnotationToken[]>(this.items);
+         this.shared = false;
+      }
+   }
+
+}
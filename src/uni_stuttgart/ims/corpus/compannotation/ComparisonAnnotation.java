@@ -39,12 +39,19 @@ public class ComparisonAnnotation implements Comparable<ComparisonAnnotation> {
    private PredicateDirection direction = PredicateDirection.UNDEFINED;
    private Character entity1Type = '-';
    private char entity2Type = '-';
+   // all argument lists are ArgumentLists (copy-on-write)
    private List<ComparisonAnnotationToken[]> entity1;
    private List<ComparisonAnnotationToken[]> entity2;
    private List<ComparisonAnnotationToken[]> aspect;
    private List<ComparisonAnnotationToken[]> sentiment;
    private ComparisonAnnotationToken[] predicate;
 
+   // Bounding span of the predicate, valid for spanPredicate
+   // (the argument lists keep their own span)
+   private ComparisonAnnotationToken[] spanPredicate;
+   private int predicateFirst = -1;
+   private int predicateLast = -1;
+
 
 
 
@@ -53,10 +60,10 @@ public class ComparisonAnnotation implements Comparable<ComparisonAnnotation> {
     */
    public ComparisonAnnotation () {
       this.predicate = new ComparisonAnnotationToken[0];
-      this.entity1 = new ArrayList<ComparisonAnnotationToken[]>();
-      this.entity2 = new ArrayList<ComparisonAnnotationToken[]>();
-      this.aspect = new ArrayList<ComparisonAnnotationToken[]>();
-      this.sentiment = new ArrayList<ComparisonAnnotationToken[]>();
+      this.entity1 = new ArgumentList();
+      this.entity2 = new ArgumentList();
+      this.aspect = new ArgumentList();
+      this.sentiment = new ArgumentList();
    }
 
 
@@ -82,7 +89,7 @@ public class ComparisonAnnotation implements Comparable<ComparisonAnnotation> {
       this.predicate = getTokens(cleanupAnnotation(parts[length-1]));
 
       // Entity 1
-      this.entity1 = new ArrayList<ComparisonAnnotationToken[]>();
+      this.entity1 = new ArgumentList();
       if (!cleanupAnnotation(parts[1]).equals("")) {
          for (String part : parts[1].split(comparisonEntitySeparator)) {
             this.entity1.add(getTokens(cleanupAnnotation(part)));
@@ -90,7 +97,7 @@ public class ComparisonAnnotation implements Comparable<ComparisonAnnotation> {
       }
 
       // Entity 2
-      this.entity2 = new ArrayList<ComparisonAnnotationToken[]>();
+      this.entity2 = new ArgumentList();
       if (!cleanupAnnotation(parts[2]).equals("")) {
          for (String part : parts[2].split(comparisonEntitySeparator)) {
             this.entity2.add(getTokens(cleanupAnnotation(part)));
@@ -98,7 +105,7 @@ public class ComparisonAnnotation implements Comparable<ComparisonAnnotation> {
       }
 
       // Aspect
-      this.aspect = new ArrayList<ComparisonAnnotationToken[]>();
+      this.aspect = new ArgumentList();
       if (!cleanupAnnotation(parts[3]).equals("")) {
          for (String part : parts[3].split(comparisonEntitySeparator)) {
             this.aspect.add(getTokens(cleanupAnnotation(part)));
@@ -106,7 +113,7 @@ public class ComparisonAnnotation implements Comparable<ComparisonAnnotation> {
       }
 
       // Sentiment
-      this.sentiment = new ArrayList<ComparisonAnnotationToken[]>();
+      this.sentiment = new ArgumentList();
       if (!cleanupAnnotation(parts[4]).equals("")) {
          for (String part : parts[4].split(comparisonEntitySeparator)) {
             this.sentiment.add(getTokens(cleanupAnnotation(part)));
@@ -168,6 +175,59 @@ public class ComparisonAnnotation implements Comparable<ComparisonAnnotation> {
    }
 
 
+   /**
+    * Copy of another comparison annotation.
+    * The argument lists are shared until one of the copies changes them
+    * (copy-on-write), the tokens themselves are shared
+    * (normalization replaces tokens, it does not change them).
+    */
+   public ComparisonAnnotation (ComparisonAnnotation other) {
+      this.finetype = other.finetype;
+      this.direction = other.direction;
+      this.entity1Type = other.entity1Type;
+      this.entity2Type = other.entity2Type;
+      this.predicate = copyTokens(other.predicate);
+      this.entity1 = ArgumentList.sharedCopy(other.entity1);
+      this.entity2 = ArgumentList.sharedCopy(other.entity2);
+      this.aspect = ArgumentList.sharedCopy(other.aspect);
+      this.sentiment = ArgumentList.sharedCopy(other.sentiment);
+   }
+
+
+   /**
+    * Current state of this annotation that cannot be changed,
+    * later changes of this annotation do not change it.
+    * Token arrays are shared.
+    */
+   public ImmutableComparisonAnnotation freeze () {
+      return ImmutableComparisonAnnotation.copyOf(this);
+   }
+
+
+   /**
+    * Set this annotation to a frozen version,
+    * e.g., to undo changes made after freeze().
+    */
+   public void restore (ImmutableComparisonAnnotation version) {
+      this.finetype = version.getFineType();
+      this.direction = version.getDirection();
+      this.entity1Type = version.getEntity1Type();
+      this.entity2Type = version.getEntity2Type();
+      this.predicate = version.getPredicate();
+      this.entity1 = ArgumentList.sharedCopy(version.getEntity1());
+      this.entity2 = ArgumentList.sharedCopy(version.getEntity2());
+      this.aspect = ArgumentList.sharedCopy(version.getAspect());
+      this.sentiment = ArgumentList.sharedCopy(version.getSentiment());
+   }
+
+
+   private static ComparisonAnnotationToken[] copyTokens(ComparisonAnnotationToken[] tokens) {
+      return (tokens == null) ? null : tokens.clone();
+   }
+
+
+
+
    private ComparisonAnnotationToken[] getTokens(String annotation) {
       String[] parts = annotation.split(" ");
       ComparisonAnnotationToken[] tokens = new ComparisonAnnotationToken[parts.length];
@@ -242,6 +302,11 @@ public class ComparisonAnnotation implements Comparable<ComparisonAnnotation> {
    }
 
 
+   /**
+    * Smallest first and largest last token number of all token lists,
+    * -1 if there are none (token number 0 is ignored).
+    * ArgumentLists know their span, no need to look at the tokens.
+    */
    public static int[] getMinMaxIndex(List<ComparisonAnnotationToken[]> tokenlistlist) {
       int[] array = new int[2];
       array[0] = -1;
@@ -249,19 +314,111 @@ public class ComparisonAnnotation implements Comparable<ComparisonAnnotation> {
       if (tokenlistlist == null || tokenlistlist.size() == 0) {
          return array;
       }
+      if (tokenlistlist instanceof ArgumentList) {
+         ArgumentList arguments = (ArgumentList) tokenlistlist;
+         array[0] = arguments.getFirstToken();
+         array[1] = arguments.getLastToken();
+         return array;
+      }
       for (ComparisonAnnotationToken[] tokenlist : tokenlistlist) {
          int[] newArray = getMinMaxIndex(tokenlist);
-         if (newArray[0] != 0 && newArray[0] < array[0]) {
+         if (newArray[0] > 0 && (array[0] == -1 || newArray[0] < array[0])) {
             array[0] = newArray[0];
          }
-         if (newArray[1] != 0 && newArray[1] > array[1]) {
-            array[0] = newArray[1];
+         if (newArray[1] > 0 && newArray[1] > array[1]) {
+            array[1] = newArray[1];
          }
       }
       return array;
    }
 
 
+   // Bounding span
+
+
+   /**
+    * Smallest token number of the predicate and all arguments,
+    * -1 if there are none (token number 0 is ignored).
+    * @param withSentiment false: ignore the sentiment.
+    */
+   public int getFirstToken(boolean withSentiment) {
+      updatePredicateSpan();
+      int first = this.predicateFirst;
+      first = minToken(first, this.entity1);
+      first = minToken(first, this.entity2);
+      first = minToken(first, this.aspect);
+      if (withSentiment) {
+         first = minToken(first, this.sentiment);
+      }
+      return first;
+   }
+
+
+   /**
+    * Largest token number of the predicate and all arguments,
+    * -1 if there are none.
+    * @param withSentiment false: ignore the sentiment.
+    */
+   public int getLastToken(boolean withSentiment) {
+      updatePredicateSpan();
+      int last = this.predicateLast;
+      last = maxToken(last, this.entity1);
+      last = maxToken(last, this.entity2);
+      last = maxToken(last, this.aspect);
+      if (withSentiment) {
+         last = maxToken(last, this.sentiment);
+      }
+      return last;
+   }
+
+
+   /**
+    * The predicate array is set in many places,
+    * compute its span again only if it is a different array.
+    */
+   private void updatePredicateSpan() {
+      if (this.spanPredicate == this.predicate) {
+         return;
+      }
+      this.predicateFirst = -1;
+      this.predicateLast = -1;
+      if (this.predicate != null) {
+         for (ComparisonAnnotationToken token : this.predicate) {
+            int number = token.tokenNumber;
+            if (number > 0) {
+               if (this.predicateFirst == -1 || number < this.predicateFirst) {
+                  this.predicateFirst = number;
+               }
+               if (number > this.predicateLast) {
+                  this.predicateLast = number;
+               }
+            }
+         }
+      }
+      this.spanPredicate = this.predicate;
+   }
+
+
+   private static int minToken(int first, List<ComparisonAnnotationToken[]> arguments) {
+      if (arguments == null) {
+         return first;
+      }
+      int other = ((ArgumentList) arguments).getFirstToken();
+      if (other > 0 && (first == -1 || other < first)) {
+         return other;
+      }
+      return first;
+   }
+
+   private static int maxToken(int last, List<ComparisonAnnotationToken[]> arguments) {
+      if (arguments == null) {
+         return last;
+      }
+      return Math.max(last, ((ArgumentList) arguments).getLastToken());
+   }
+
+
+
    // Comparison
 
    /** Compares two predicates with respect to token id.
@@ -354,10 +511,10 @@ public class ComparisonAnnotation implements Comparable<ComparisonAnnotation> {
    }
    public void removeArgument (ArgumentType argumentName) {
       switch (argumentName) {
-      case entity1 : this.entity1 = new ArrayList<ComparisonAnnotationToken[]>(); break;
-      case entity2 : this.entity2 = new ArrayList<ComparisonAnnotationToken[]>(); break;
-      case aspect : this.aspect = new ArrayList<ComparisonAnnotationToken[]>(); break;
-      case sentiment : this.sentiment = new ArrayList<ComparisonAnnotationToken[]>(); break;
+      case entity1 : this.entity1 = new ArgumentList(); break;
+      case entity2 : this.entity2 = new ArgumentList(); break;
+      case aspect : this.aspect = new ArgumentList(); break;
+      case sentiment : this.sentiment = new ArgumentList(); break;
       default: // TODO
       }
    }
@@ -397,12 +554,15 @@ public class ComparisonAnnotation implements Comparable<ComparisonAnnotation> {
       if (entity1 != null)
          this.entity1.add(entity1);
    }
+   /**
+    * The list is shared until one of the annotations changes it.
+    */
    public void setEntity1 (List<ComparisonAnnotationToken[]> entity1) {
       if (entity1 != null)
-         this.entity1 = entity1;
+         this.entity1 = ArgumentList.sharedCopy(entity1);
    }
    public void removeEntity1 () {
-      this.entity1 = new ArrayList<ComparisonAnnotationToken[]>();
+      this.entity1 = new ArgumentList();
    }
 
    public List<ComparisonAnnotationToken[]> getEntity2 () {
@@ -416,12 +576,15 @@ public class ComparisonAnnotation implements Comparable<ComparisonAnnotation> {
       if (entity2 != null)
          this.entity2.add(entity2);
    }
+   /**
+    * The list is shared until one of the annotations changes it.
+    */
    public void setEntity2 (List<ComparisonAnnotationToken[]> entity2) {
       if (entity2 != null)
-         this.entity2 = entity2;
+         this.entity2 = ArgumentList.sharedCopy(entity2);
    }
    public void removeEntity2 () {
-      this.entity2 = new ArrayList<ComparisonAnnotationToken[]>();
+      this.entity2 = new ArgumentList();
    }
 
    public List<ComparisonAnnotationToken[]> getAspect () {
@@ -435,12 +598,15 @@ public class ComparisonAnnotation implements Comparable<ComparisonAnnotation> {
       if (aspect != null)
          this.aspect.add(aspect);
    }
+   /**
+    * The list is shared until one of the annotations changes it.
+    */
    public void setAspect (List<ComparisonAnnotationToken[]> aspect) {
       if (aspect != null)
-         this.aspect = aspect;
+         this.aspect = ArgumentList.sharedCopy(aspect);
    }
    public void removeAspect () {
-      this.aspect = new ArrayList<ComparisonAnnotationToken[]>();
+      this.aspect = new ArgumentList();
    }
 
    public List<ComparisonAnnotationToken[]> getSentiment() {
@@ -454,12 +620,15 @@ public class ComparisonAnnotation implements Comparable<ComparisonAnnotation> {
       if (sentiment != null)
          this.sentiment.add(sentiment);
    }
+   /**
+    * The list is shared until one of the annotations changes it.
+    */
    public void setSentiment (List<ComparisonAnnotationToken[]> sentiment) {
       if (sentiment != null)
-         this.sentiment = sentiment;
+         this.sentiment = ArgumentList.sharedCopy(sentiment);
    }
    public void removeSentiment () {
-      this.sentiment = new ArrayList<ComparisonAnnotationToken[]>();
+      this.sentiment = new ArgumentList();
    }
 
 
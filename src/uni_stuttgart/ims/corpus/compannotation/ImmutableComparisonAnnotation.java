@@ -0,0 +1,215 @@
+// (c) Wiltrud Kessler
+// 19.10.2026
+// This code is distributed under a Creative Commons
+// Attribution-NonCommercial-ShareAlike 3.0 Unported license
+// http://creativecommons.org/licenses/by-nc-sa/3.0/
+
+
+package de.uni_stuttgart.ims.corpus.compannotation;
+
+import java.util.Collections;
+import java.util.List;
+
+import de.uni_stuttgart.ims.nlpbase.nlp.ArgumentType;
+import de.uni_stuttgart.ims.nlpbase.nlp.PredicateDirection;
+import de.uni_stuttgart.ims.nlpbase.nlp.PredicateType;
+
+
+/**
+ * Annotation of a comparison that cannot be changed
+ * (see ComparisonAnnotation for the parts).
+ *
+ * The with* methods return a new version that shares everything
+ * that has not changed with this one, so keeping several versions
+ * (variants, the version before a normalization step) is cheap.
+ * Token arrays are shared as well, they must not be changed.
+ *
+ * Get one with ComparisonAnnotation.freeze(),
+ * go back with thaw() or ComparisonAnnotation.restore().
+ *
+ * @author kesslewd
+ */
+public final class ImmutableComparisonAnnotation {
+
+   private final PredicateType finetype;
+   private final PredicateDirection direction;
+   private final char entity1Type;
+   private final char entity2Type;
+   private final ComparisonAnnotationToken[] predicate;
+   private final List<ComparisonAnnotationToken[]> entity1;
+   private final List<ComparisonAnnotationToken[]> entity2;
+   private final List<ComparisonAnnotationToken[]> aspect;
+   private final List<ComparisonAnnotationToken[]> sentiment;
+
+
+
+   /**
+    * Lists must be frozen already.
+    */
+   private ImmutableComparisonAnnotation (PredicateType finetype, PredicateDirection direction,
+         char entity1Type, char entity2Type, ComparisonAnnotationToken[] predicate,
+         List<ComparisonAnnotationToken[]> entity1, List<ComparisonAnnotationToken[]> entity2,
+         List<ComparisonAnnotationToken[]> aspect, List<ComparisonAnnotationToken[]> sentiment) {
+      this.finetype = finetype;
+      this.direction = direction;
+      this.entity1Type = entity1Type;
+      this.entity2Type = entity2Type;
+      this.predicate = predicate;
+      this.entity1 = entity1;
+      this.entity2 = entity2;
+      this.aspect = aspect;
+      this.sentiment = sentiment;
+   }
+
+
+   /**
+    * Current state of a (changeable) annotation,
+    * later changes of the annotation do not change the result.
+    */
+   static ImmutableComparisonAnnotation copyOf (ComparisonAnnotation annotation) {
+      return new ImmutableComparisonAnnotation(annotation.getFineType(), annotation.getDirection(),
+            annotation.getEntity1Type(), annotation.getEntity2Type(), annotation.getPredicate(),
+            unmodifiableCopy(annotation.getEntity1()), unmodifiableCopy(annotation.getEntity2()),
+            unmodifiableCopy(annotation.getAspect()), unmodifiableCopy(annotation.getSentiment()));
+   }
+
+
+   /**
+    * Frozen lists share the storage of the original list (copy-on-write).
+    */
+   private static List<ComparisonAnnotationToken[]> unmodifiableCopy (List<ComparisonAnnotationToken[]> list) {
+      return ArgumentList.frozenCopy(list);
+   }
+
+
+
+   /**
+    * Changeable copy of this annotation.
+    */
+   public ComparisonAnnotation thaw () {
+      ComparisonAnnotation annotation = new ComparisonAnnotation();
+      annotation.restore(this);
+      return annotation;
+   }
+
+
+
+   // Getter (nothing returned may be changed)
+
+
+   public PredicateType getFineType() {
+      return this.finetype;
+   }
+
+   public PredicateDirection getDirection() {
+      return this.direction;
+   }
+
+   public char getEntity1Type() {
+      return this.entity1Type;
+   }
+
+   public char getEntity2Type() {
+      return this.entity2Type;
+   }
+
+   public ComparisonAnnotationToken[] getPredicate() {
+      return this.predicate;
+   }
+
+   public String getPredicateString() {
+      return ComparisonAnnotationToken.getString(this.predicate);
+   }
+
+   public List<ComparisonAnnotationToken[]> getArgument (ArgumentType argumentName) {
+      switch (argumentName) {
+      case entity1 : return this.entity1;
+      case entity2 : return this.entity2;
+      case aspect : return this.aspect;
+      case sentiment : return this.sentiment;
+      default : return null;
+      }
+   }
+
+   public List<ComparisonAnnotationToken[]> getEntity1 () {
+      return this.entity1;
+   }
+
+   public List<ComparisonAnnotationToken[]> getEntity2 () {
+      return this.entity2;
+   }
+
+   public List<ComparisonAnnotationToken[]> getAspect () {
+      return this.aspect;
+   }
+
+   public List<ComparisonAnnotationToken[]> getSentiment () {
+      return this.sentiment;
+   }
+
+
+
+   // New versions
+
+
+   public ImmutableComparisonAnnotation withPredicate (ComparisonAnnotationToken[] newPredicate) {
+      return new ImmutableComparisonAnnotation(finetype, direction, entity1Type, entity2Type,
+            newPredicate, entity1, entity2, aspect, sentiment);
+   }
+
+   public ImmutableComparisonAnnotation withPredicate (ComparisonAnnotationToken newPredicate) {
+      return withPredicate(new ComparisonAnnotationToken[] {newPredicate});
+   }
+
+
+   /**
+    * Replace all annotations of this argument.
+    */
+   public ImmutableComparisonAnnotation withArgument (ArgumentType argumentName,
+         List<ComparisonAnnotationToken[]> argumentTokenLists) {
+      List<ComparisonAnnotationToken[]> newList = unmodifiableCopy(argumentTokenLists);
+      switch (argumentName) {
+      case entity1 : return new ImmutableComparisonAnnotation(finetype, direction, entity1Type, entity2Type,
+            predicate, newList, entity2, aspect, sentiment);
+      case entity2 : return new ImmutableComparisonAnnotation(finetype, direction, entity1Type, entity2Type,
+            predicate, entity1, newList, aspect, sentiment);
+      case aspect : return new ImmutableComparisonAnnotation(finetype, direction, entity1Type, entity2Type,
+            predicate, entity1, entity2, newList, sentiment);
+      case sentiment : return new ImmutableComparisonAnnotation(finetype, direction, entity1Type, entity2Type,
+            predicate, entity1, entity2, aspect, newList);
+      default : return this;
+      }
+   }
+
+
+   /**
+    * Add one more annotation of this argument (nothing happens for null).
+    */
+   public ImmutableComparisonAnnotation withArgumentAdded (ArgumentType argumentName,
+         ComparisonAnnotationToken[] argumentTokens) {
+      if (argumentTokens == null) {
+         return this;
+      }
+      ArgumentList newList = ArgumentList.sharedCopy(getArgument(argumentName));
+      newList.add(argumentTokens);
+      return withArgument(argumentName, newList);
+   }
+
+
+   /**
+    * Remove all annotations of this argument.
+    */
+   public ImmutableComparisonAnnotation withoutArgument (ArgumentType argumentName) {
+      return withArgument(argumentName, Collections.<ComparisonAnnotationToken[]>emptyList());
+   }
+
+
+
+   /**
+    * Same format as ComparisonAnnotation.
+    */
+   public String toString() {
+      return thaw().toString();
+   }
+
+}
@@ -7,8 +7,10 @@
 
 package de.uni_stuttgart.ims.corpus.compannotation;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Iterator;
-import java.util.TreeSet;
+import java.util.List;
 
 
 /**
@@ -36,7 +38,9 @@ public class SentenceAnnotation {
    private String annotationErrors = " ";
 
    // Comparisons information
-   private TreeSet<ComparisonAnnotation> comparisonAnnotations = new TreeSet<ComparisonAnnotation>();
+   // sorted by predicate position when they are added,
+   // only one comparison per position (like a TreeSet)
+   private List<ComparisonAnnotation> comparisonAnnotations = new ArrayList<ComparisonAnnotation>();
 
 
 
@@ -89,7 +93,7 @@ public class SentenceAnnotation {
 
          // Comparisons
          for (int i=2; i<parts.length-3; i++) {
-            this.comparisonAnnotations.add(new ComparisonAnnotation(parts[i]));
+            this.addComparisonAnnotation(new ComparisonAnnotation(parts[i]));
          }
 
 
@@ -97,6 +101,38 @@ public class SentenceAnnotation {
 
 
 
+   /**
+    * Copy of this sentence annotation with copies of all comparisons,
+    * changing the copy does not change this one.
+    */
+   public SentenceAnnotation copy() {
+      List<ComparisonAnnotation> comparisons = new ArrayList<ComparisonAnnotation>(this.comparisonAnnotations.size());
+      for (ComparisonAnnotation comparison : this.comparisonAnnotations) {
+         comparisons.add(new ComparisonAnnotation(comparison));
+      }
+      return copy(comparisons);
+   }
+
+
+   /**
+    * Copy of this sentence annotation with the given comparisons
+    * instead of the comparisons of this one.
+    * They are kept in the given order, e.g., the order of
+    * getComparisonAnnotationsIterator() for normalized versions.
+    */
+   public SentenceAnnotation copy(List<ComparisonAnnotation> comparisons) {
+      SentenceAnnotation copy = new SentenceAnnotation();
+      copy.sentenceid = this.sentenceid;
+      copy.isComparative = this.isComparative;
+      copy.sentence = this.sentence;
+      copy.sourceFilename = this.sourceFilename;
+      copy.annotationErrors = this.annotationErrors;
+      copy.comparisonAnnotations.addAll(comparisons);
+      return copy;
+   }
+
+
+
    // Getter/Setter
 
    public String getId() {
@@ -147,10 +183,16 @@ public class SentenceAnnotation {
    }
 
    public void addComparisonAnnotation (ComparisonAnnotation newAnnotation) {
-      this.comparisonAnnotations.add(newAnnotation);
+      int index = Collections.binarySearch(this.comparisonAnnotations, newAnnotation);
+      if (index < 0) { // no comparison at this position yet
+         this.comparisonAnnotations.add(-(index + 1), newAnnotation);
+      }
    }
    public void removeComparisonAnnotation (ComparisonAnnotation newAnnotation) {
-      this.comparisonAnnotations.remove(newAnnotation);
+      int index = Collections.binarySearch(this.comparisonAnnotations, newAnnotation);
+      if (index >= 0) {
+         this.comparisonAnnotations.remove(index);
+      }
    }
    public Iterator<ComparisonAnnotation> getComparisonAnnotationsIterator() {
          return this.comparisonAnnotations.iterator();
@@ -160,6 +202,39 @@ public class SentenceAnnotation {
    }
 
 
+   /**
+    * Smallest token number annotated in any comparison,
+    * -1 if there are none.
+    * Every comparison knows its span, so this does not look at the tokens
+    * (comparisons may be changed after they have been added,
+    * so the spans are combined on every call).
+    * @param withSentiment false: ignore the sentiment.
+    */
+   public int getFirstToken(boolean withSentiment) {
+      int first = -1;
+      for (ComparisonAnnotation comparison : this.comparisonAnnotations) {
+         int other = comparison.getFirstToken(withSentiment);
+         if (other > 0 && (first == -1 || other < first)) {
+            first = other;
+         }
+      }
+      return first;
+   }
+
+   /**
+    * Largest token number annotated in any comparison,
+    * -1 if there are none.
+    * @param withSentiment false: ignore the sentiment.
+    */
+   public int getLastToken(boolean withSentiment) {
+      int last = -1;
+      for (ComparisonAnnotation comparison : this.comparisonAnnotations) {
+         last = Math.max(last, comparison.getLastToken(withSentiment));
+      }
+      return last;
+   }
+
+
 
    // Output
    /**
@@ -13,12 +13,14 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.PriorityQueue;
 
 import de.uni_stuttgart.ims.corpus.compannotation.ComparisonAnnotation;
 import de.uni_stuttgart.ims.corpus.compannotation.SentenceAnnotation;
 import de.uni_stuttgart.ims.nlpbase.nlp.PredicateType;
 import de.uni_stuttgart.ims.nlpbase.nlp.PredicateDirection;
 import de.uni_stuttgart.ims.corpus.util.Options;
+import de.uni_stuttgart.ims.corpus.util.StageFailedException;
 import de.uni_stuttgart.ims.util.Fileutils;
 
 
@@ -59,57 +61,147 @@ public class IMSExtractor {
     * @param args Config file
     */
    public static void main(String[] args) {
-
-      // ===== GET USER-DEFINED OPTIONS =====
-
+      if (args.length < 1) {
+         System.err.println("Usage: IMSExtractor <config file>");
+         System.exit(1);
+      }
+      Options options = null;
       try {
-
-         if (args.length < 1) {
-            System.err.println("Usage: IMSExtractor <config file>");
-            System.exit(1);
-         }
-         Options.parseOptionsFile(args[0]);
-
+         options = Options.readOptionsFile(args[0]);
       } catch (IOException e) {
          System.err.println("ERROR !!! while parsing options file: " + e);
          System.exit(1);
       }
+      try {
+         run(options);
+      } catch (StageFailedException e) {
+         System.exit(1);
+      }
+   }
+
 
-      String sentencesInputFilename = Options.getOption("inputSentencesFilename");
-      String[] annotationsInputFilename = Options.getListOption("inputAnnotationsFilename");
-      String annotationsOutputFilename = Options.getOption("plaintextAnnotationsFilename");
-      String sentencesOutputFilename = Options.getOption("plaintextSentencesFilename");
+
+   /**
+    * Run with these options.
+    * @return number of sentences processed.
+    * @throws StageFailedException if something goes wrong (the error has been printed).
+    */
+   public static int run(Options options) {
+
+      // ===== GET USER-DEFINED OPTIONS =====
+
+      String sentencesInputFilename = options.getOption("inputSentencesFilename");
+      String[] annotationsInputFilename = options.getListOption("inputAnnotationsFilename");
+      String annotationsOutputFilename = options.getOption("plaintextAnnotationsFilename");
+      String sentencesOutputFilename = options.getOption("plaintextSentencesFilename");
+      boolean inputSorted = options.getBooleanOption("inputSorted");
+      boolean useSentenceIndex = options.getBooleanOption("useSentenceIndex");
+      String sentenceIndexFilename = options.getOption("sentenceIndexFilename");
+      if (sentenceIndexFilename == null || sentenceIndexFilename.isEmpty()) {
+         sentenceIndexFilename = sentencesInputFilename + ".idx";
+      }
 
 
       // ===== INITIALIZATION =====
 
       // Things for I/O that we need later
       BufferedReader inSentences = null;
-      BufferedReader inAnnotations = null;
       BufferedWriter outSentences = null;
       BufferedWriter outAnnotations = null;
 
+      // Close the files also if the extraction fails
       try {
 
-         // open input file (sentences)
-         inSentences = Fileutils.getReadFile(sentencesInputFilename);
+         try {
 
-         // open output file (sentences)
-         outSentences = Fileutils.getWriteFile(sentencesOutputFilename);
+            // open input file (sentences)
+            inSentences = Fileutils.getReadFile(sentencesInputFilename);
 
-         // open output file (annotations)
-         outAnnotations = Fileutils.getWriteFile(annotationsOutputFilename);
+            // open output file (sentences)
+            outSentences = Fileutils.getWriteFile(sentencesOutputFilename);
 
+            // open output file (annotations)
+            outAnnotations = Fileutils.getWriteFile(annotationsOutputFilename);
 
-      } catch (Exception e) {
-         System.err.println("ERROR !!! in initialization: " + e);
-         e.printStackTrace();
-         System.exit(1);
+
+         } catch (Exception e) {
+            System.err.println("ERROR !!! in initialization: " + e);
+            e.printStackTrace();
+            throw new StageFailedException("Error in initialization");
+         }
+
+
+
+         // ===== PROCESSING =====
+
+         Statistics stats = new Statistics();
+
+         if (inputSorted) {
+            extractSorted(inSentences, sentencesInputFilename, annotationsInputFilename, outSentences, outAnnotations, stats);
+         } else if (useSentenceIndex) {
+            SentenceOffsetIndex index = null;
+            try {
+               index = new SentenceOffsetIndex(sentencesInputFilename, sentenceIndexFilename);
+            } catch (IOException e) {
+               System.err.println("ERROR !!! opening sentence index: " + sentenceIndexFilename + " " + e);
+               e.printStackTrace();
+               throw new StageFailedException("Cannot open sentence index");
+            }
+            try {
+               extractUnsorted(null, index, annotationsInputFilename, outSentences, outAnnotations, stats);
+            } finally {
+               index.close();
+            }
+         } else {
+            extractUnsorted(inSentences, null, annotationsInputFilename, outSentences, outAnnotations, stats);
+         }
+
+         // The important statistics
+         System.out.println("total sentences: " + stats.totalsentences);
+         System.out.println("total non-comparatives: " + (stats.totalsentences - stats.comparatives));
+         System.out.println("total comparatives: " + stats.comparatives);
+         System.out.println("total ignored: " + stats.ignored);
+         if (inputSorted) {
+            System.out.println("total duplicate ids: " + stats.duplicates);
+         }
+         System.out.println("number of errors (see System.err): " + stats.errorNo);
+
+         System.out.println("done.");
+
+         return stats.totalsentences;
+
+      } finally {
+         // Do some cleanup
+         Fileutils.closeSilently(inSentences);
+         Fileutils.closeSilently(outSentences);
+         Fileutils.closeSilently(outAnnotations);
       }
+   }
 
 
 
-      // ===== PROCESSING =====
+   /**
+    * Bookkeeping.
+    */
+   private static class Statistics {
+      int errorNo = 0;
+      int totalsentences = 0;
+      int comparatives = 0;
+      int ignored = 0;
+      int duplicates = 0;
+   }
+
+
+
+   /**
+    * Go through the annotation files one after the other
+    * and look up the sentence for every annotation.
+    * Sentences are looked up in the index if there is one,
+    * otherwise all sentences are read into memory first.
+    */
+   private static void extractUnsorted(BufferedReader inSentences, SentenceOffsetIndex index,
+         String[] annotationsInputFilename, BufferedWriter outSentences, BufferedWriter outAnnotations,
+         Statistics stats) {
 
       // Read sentences
       // Format: id \t sentence
@@ -117,66 +209,48 @@ public class IMSExtractor {
       String strLine;
       HashMap<String, String> sentences = new HashMap<String, String>();
 
-      try {
-         while ((strLine = inSentences.readLine()) != null) {
+      if (index == null) {
+         try {
+            while ((strLine = inSentences.readLine()) != null) {
 
-            String[] parts = strLine.split("\t");
+               String[] parts = strLine.split("\t");
 
-            sentences.put(parts[0].trim(), parts[1].trim());
+               sentences.put(parts[0].trim(), getSentence(parts));
 
+            }
+         } catch (Exception e) {
+            e.printStackTrace();
          }
-      } catch (Exception e) {
-         e.printStackTrace();
       }
 
 
       // Read annotations
       // Format: id \t [annotations, sentence, etc.] (don't care)
 
-      int errorNo = 0;
-      int totalsentences = 0;
-      int comparatives = 0;
-      int ignored = 0;
-
       for (int i=0; i<annotationsInputFilename.length; i++) {
 
          // open input file (annotations)
+         BufferedReader inAnnotations = null;
          try {
             inAnnotations = Fileutils.getReadFile(annotationsInputFilename[i]);
          } catch (Exception e) {
             System.err.println("ERROR !!! reading annotation file: " + annotationsInputFilename[i] + e);
             e.printStackTrace();
-            System.exit(1);
+            throw new StageFailedException("Error while reading annotation file");
          }
 
 
          try {
             while ((strLine = inAnnotations.readLine()) != null) {
-               totalsentences+=1;
+               stats.totalsentences+=1;
 
                String[] parts = strLine.split("\t");
                if (parts[1].equals("0")) { // non-comp
                   continue;
                }
 
-               String thisSentence = sentences.get(parts[0]);
-
-               if (thisSentence != null) { // have found sentence
-
-                  // Check annotation
-                  SentenceAnnotation result = wantThisAnnotation(strLine);
-                  if (result != null) {
-                     outSentences.write(thisSentence + "\n");
-                     outAnnotations.write(result + "\n");
-                     comparatives += 1;
-                  } else {
-                     ignored++;
-                  }
-               } else {
-                  System.out.println("error, could not find sentence for annotation id " + parts[0]);
-                  errorNo+= 1;
-               }
-
+               String thisSentence = (index != null) ? index.getSentence(parts[0]) : sentences.get(parts[0]);
+               writeAnnotation(parts[0], thisSentence, strLine, outSentences, outAnnotations, stats);
 
             }
             outAnnotations.flush();
@@ -185,25 +259,228 @@ public class IMSExtractor {
             e.printStackTrace();
          }
 
+         Fileutils.closeSilently(inAnnotations);
       }
 
-      // The important statistics
-      System.out.println("total sentences: " + totalsentences);
-      System.out.println("total non-comparatives: " + (totalsentences - comparatives));
-      System.out.println("total comparatives: " + comparatives);
-      System.out.println("total ignored: " + ignored);
-      System.out.println("number of errors (see System.err): " + errorNo);
+   }
+
+
+
+   /**
+    * All files are sorted by id (byte order of UTF-8, e.g., 'LC_ALL=C sort').
+    * Merge the annotation files and join them with the sentences,
+    * this only keeps the current line of every file in memory.
+    * If several annotation files contain the same id, only the first
+    * (in the order of the files) is used, the others are reported.
+    */
+   private static void extractSorted(BufferedReader inSentences, String sentencesInputFilename,
+         String[] annotationsInputFilename, BufferedWriter outSentences, BufferedWriter outAnnotations,
+         Statistics stats) {
 
-      // Do some cleanup
-      Fileutils.closeSilently(inSentences);
-      Fileutils.closeSilently(inAnnotations);
-      Fileutils.closeSilently(outSentences);
-      Fileutils.closeSilently(outAnnotations);
-      System.out.println("done.");
+      PriorityQueue<SortedIdReader> queue = new PriorityQueue<SortedIdReader>();
+      SortedIdReader sentences = new SortedIdReader(inSentences, sentencesInputFilename, 0, stats);
 
+      try {
+
+         // open input files (annotations)
+         for (int i=0; i<annotationsInputFilename.length; i++) {
+            BufferedReader inAnnotations = null;
+            try {
+               inAnnotations = Fileutils.getReadFile(annotationsInputFilename[i]);
+            } catch (Exception e) {
+               System.err.println("ERROR !!! reading annotation file: " + annotationsInputFilename[i] + e);
+               e.printStackTrace();
+               throw new StageFailedException("Error while reading annotation file");
+            }
+            SortedIdReader annotations = new SortedIdReader(inAnnotations, annotationsInputFilename[i], i, stats);
+            if (annotations.advance()) {
+               queue.add(annotations);
+            } else {
+               annotations.close();
+            }
+         }
+         sentences.advance();
+
+
+         // k-way merge, smallest id first, same ids in the order of the files
+         String lastId = null;
+         String lastFilename = null;
+         while (!queue.isEmpty()) {
+
+            SortedIdReader annotations = queue.poll();
+            String id = annotations.id;
+            String strLine = annotations.line;
+            String filename = annotations.filename;
+            if (annotations.advance()) {
+               queue.add(annotations);
+            } else {
+               annotations.close();
+            }
+
+            stats.totalsentences+=1;
+
+            if (id.equals(lastId)) {
+               stats.duplicates++;
+               System.out.println("duplicate annotation id " + id + " in " + filename + " (first in " + lastFilename + "), ignored");
+               continue;
+            }
+            lastId = id;
+            lastFilename = filename;
+
+            String[] parts = strLine.split("\t");
+            if (parts[1].equals("0")) { // non-comp
+               continue;
+            }
+
+            // Join with sentence of this id
+            while (sentences.id != null && compareUtf8(sentences.id, id) < 0) {
+               sentences.advance();
+            }
+            String thisSentence = null;
+            if (id.equals(sentences.id)) {
+               thisSentence = getSentence(sentences.line.split("\t"));
+            }
+
+            writeAnnotation(id, thisSentence, strLine, outSentences, outAnnotations, stats);
+
+         }
+
+         outAnnotations.flush();
+         outSentences.flush();
+
+      } catch (IOException e) {
+         e.printStackTrace();
+      } finally {
+         for (SortedIdReader annotations : queue) {
+            annotations.close();
+         }
+      }
 
    }
 
+
+
+   /**
+    * Write annotation if it is for a sentence we have found
+    * and we want it.
+    */
+   private static void writeAnnotation(String id, String thisSentence, String strLine,
+         BufferedWriter outSentences, BufferedWriter outAnnotations, Statistics stats) throws IOException {
+
+      if (thisSentence != null) { // have found sentence
+
+         // Check annotation
+         SentenceAnnotation result = wantThisAnnotation(strLine);
+         if (result != null) {
+            outSentences.write(thisSentence + "\n");
+            outAnnotations.write(result + "\n");
+            stats.comparatives += 1;
+         } else {
+            stats.ignored++;
+         }
+      } else {
+         System.out.println("error, could not find sentence for annotation id " + id);
+         stats.errorNo+= 1;
+      }
+   }
+
+
+
+   /**
+    * Sentence of a line of the sentences file.
+    * Format: id \t sentence
+    */
+   private static String getSentence(String[] parts) {
+      return (parts.length > 1) ? parts[1].trim() : "";
+   }
+
+
+   /**
+    * Compare strings in the byte order of their UTF-8 encoding
+    * (= order of the code points), like 'LC_ALL=C sort'.
+    * String.compareTo uses UTF-16 order, which is different
+    * for characters above U+FFFF.
+    */
+   static int compareUtf8(String s1, String s2) {
+      int length = Math.min(s1.length(), s2.length());
+      for (int i=0; i<length; i++) {
+         char c1 = s1.charAt(i);
+         char c2 = s2.charAt(i);
+         if (c1 != c2) {
+            if (c1 >= 0xd800 && c2 >= 0xd800) {
+               // Surrogates (U+10000 and above) come after U+E000..U+FFFF
+               c1 += (c1 >= 0xe000) ? -0x800 : 0x2000;
+               c2 += (c2 >= 0xe000) ? -0x800 : 0x2000;
+            }
+            return c1 - c2;
+         }
+      }
+      return s1.length() - s2.length();
+   }
+
+
+   /**
+    * Reads a file sorted by id line by line.
+    * Format: id \t ...
+    * Lines that break the order are reported and skipped.
+    */
+   private static class SortedIdReader implements Comparable<SortedIdReader> {
+
+      private BufferedReader reader;
+      private String filename;
+      private int fileIndex;
+      private Statistics stats;
+
+      /** Current line and its id, null at the end of the file. */
+      String line;
+      String id;
+
+      SortedIdReader(BufferedReader reader, String filename, int fileIndex, Statistics stats) {
+         this.reader = reader;
+         this.filename = filename;
+         this.fileIndex = fileIndex;
+         this.stats = stats;
+      }
+
+      /**
+       * Go to next line.
+       * @return false at the end of the file.
+       */
+      boolean advance() throws IOException {
+         String lastId = this.id;
+         while ((this.line = this.reader.readLine()) != null) {
+            int tab = this.line.indexOf('\t');
+            if (tab < 0) { // no id, ignore
+               continue;
+            }
+            this.id = this.line.substring(0, tab).trim();
+            if (lastId != null && compareUtf8(this.id, lastId) < 0) {
+               System.err.println("ERROR !!! file is not sorted, ignore id " + this.id + " after " + lastId + " in " + this.filename);
+               this.stats.errorNo++;
+               continue;
+            }
+            return true;
+         }
+         this.id = null;
+         return false;
+      }
+
+      void close() {
+         Fileutils.closeSilently(this.reader);
+      }
+
+      @Override
+      public int compareTo(SortedIdReader o) {
+         int result = compareUtf8(this.id, o.id);
+         if (result == 0) {
+            result = this.fileIndex - o.fileIndex;
+         }
+         return result;
+      }
+   }
+
+
+
    /**
     * Get sentence annotation & all the comparison annotations
     * only IF we want them.
@@ -0,0 +1,342 @@
+// (c) Wiltrud Kessler
+// 19.10.2026
+// This code is distributed under a Creative Commons
+// Attribution-NonCommercial-ShareAlike 3.0 Unported license
+// http://creativecommons.org/licenses/by-nc-sa/3.0/
+
+
+package de.uni_stuttgart.ims.corpus.comparatives.ims;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+
+
+/**
+ * Persistent index for looking up sentences by id in a file
+ * in the format "id \t sentence" (UTF-8, not compressed).
+ *
+ * The index file is an open addressing hash table that maps a
+ * 64 bit hash of the id to the byte offset of the line in the sentences file.
+ * Index and sentences file are memory-mapped, a lookup only decodes
+ * the line(s) with a matching hash, so the heap usage does not
+ * depend on the size of the sentences file.
+ *
+ * The index is built on first use and rebuilt if the sentences file
+ * has changed (different length or modification time).
+ * If an id occurs several times, the last line wins.
+ *
+ * Index file format:
+ * header (magic, version, sentences file length, sentences file modification time,
+ * number of slots, number of ids), then for every slot the hash (0 = empty)
+ * and the offset as longs.
+ *
+ * @author kesslewd
+ *
+ */
+public class SentenceOffsetIndex implements Closeable {
+
+   private static final long MAGIC = 0x494d53534f494458L; // "IMSSOIDX"
+   private static final int VERSION = 1;
+   private static final int HEADER_SIZE = 64;
+   private static final int SLOT_SIZE = 16;
+
+   private static final Charset UTF8 = Charset.forName("UTF-8");
+
+   private File sentencesFile;
+   private File indexFile;
+
+   private MappedFile sentences;
+   private MappedFile slots;
+   private long numberOfSlots;
+   private long numberOfIds;
+
+
+
+   /**
+    * Open the index for the sentences file,
+    * (re)build it first if it does not exist or is outdated.
+    */
+   public SentenceOffsetIndex(String sentencesFilename, String indexFilename) throws IOException {
+      this.sentencesFile = new File(sentencesFilename);
+      this.indexFile = new File(indexFilename);
+
+      this.sentences = new MappedFile(this.sentencesFile, false, 0, this.sentencesFile.length());
+
+      if (!isUpToDate()) {
+         long start = System.currentTimeMillis();
+         build();
+         System.out.println("built sentence index " + indexFilename + " with " + this.numberOfIds + " ids in "
+               + (System.currentTimeMillis() - start) + " ms");
+      } else {
+         openIndex();
+         System.out.println("using sentence index " + indexFilename + " with " + this.numberOfIds + " ids");
+      }
+   }
+
+
+
+   /**
+    * Get the sentence (second column, trimmed) for this id,
+    * null if the id is not in the file.
+    */
+   public String getSentence(String id) {
+      long hash = hash(id.getBytes(UTF8));
+      long mask = this.numberOfSlots - 1;
+      for (long slot = hash & mask; ; slot = (slot + 1) & mask) {
+         long slotHash = this.slots.getLong(slot * SLOT_SIZE);
+         if (slotHash == 0) {
+            return null;
+         }
+         if (slotHash == hash) {
+            String[] parts = readLine(this.slots.getLong(slot * SLOT_SIZE + 8)).split("\t");
+            if (parts[0].trim().equals(id)) {
+               return (parts.length > 1) ? parts[1].trim() : "";
+            }
+         }
+      }
+   }
+
+
+   public long size() {
+      return this.numberOfIds;
+   }
+
+
+   @Override
+   public void close() {
+      // Mapped buffers are released by the garbage collector
+      this.sentences = null;
+      this.slots = null;
+   }
+
+
+
+   /**
+    * Check header of the index file against the sentences file.
+    */
+   private boolean isUpToDate() throws IOException {
+      if (!this.indexFile.exists() || this.indexFile.length() < HEADER_SIZE) {
+         return false;
+      }
+      MappedFile header = new MappedFile(this.indexFile, false, 0, HEADER_SIZE);
+      return header.getLong(0) == MAGIC
+            && header.getLong(8) == VERSION
+            && header.getLong(16) == this.sentencesFile.length()
+            && header.getLong(24) == this.sentencesFile.lastModified()
+            && this.indexFile.length() == HEADER_SIZE + header.getLong(32) * SLOT_SIZE;
+   }
+
+
+   private void openIndex() throws IOException {
+      MappedFile header = new MappedFile(this.indexFile, false, 0, HEADER_SIZE);
+      this.numberOfSlots = header.getLong(32);
+      this.numberOfIds = header.getLong(40);
+      this.slots = new MappedFile(this.indexFile, false, HEADER_SIZE, this.numberOfSlots * SLOT_SIZE);
+   }
+
+
+
+   /**
+    * Two passes over the sentences file:
+    * count the lines to get the size of the table, then insert every id.
+    * The table is written directly to the mapped index file.
+    */
+   private void build() throws IOException {
+
+      long lines = 0;
+      InputStream in = new BufferedInputStream(new FileInputStream(this.sentencesFile), 1 << 16);
+      try {
+         int b;
+         while ((b = in.read()) != -1) {
+            if (b == '\n') {
+               lines++;
+            }
+         }
+      } finally {
+         in.close();
+      }
+
+      // load factor at most 0.5, power of 2
+      this.numberOfSlots = 16;
+      while (this.numberOfSlots < 2 * (lines + 1)) {
+         this.numberOfSlots <<= 1;
+      }
+
+      RandomAccessFile raf = new RandomAccessFile(this.indexFile, "rw");
+      try {
+         raf.setLength(0); // clear old content, empty slots are 0
+         raf.setLength(HEADER_SIZE + this.numberOfSlots * SLOT_SIZE);
+      } finally {
+         raf.close();
+      }
+      this.slots = new MappedFile(this.indexFile, true, HEADER_SIZE, this.numberOfSlots * SLOT_SIZE);
+
+      this.numberOfIds = 0;
+      in = new BufferedInputStream(new FileInputStream(this.sentencesFile), 1 << 16);
+      try {
+         ByteArrayOutputStream id = new ByteArrayOutputStream();
+         long offset = 0;
+         long lineStart = 0;
+         boolean inId = true;
+         boolean hasTab = false;
+         int b;
+         while ((b = in.read()) != -1) {
+            if (b == '\n') {
+               if (hasTab) {
+                  insert(id.toByteArray(), lineStart);
+               }
+               id.reset();
+               inId = true;
+               hasTab = false;
+               lineStart = offset + 1;
+            } else if (inId) {
+               if (b == '\t') {
+                  inId = false;
+                  hasTab = true;
+               } else {
+                  id.write(b);
+               }
+            }
+            offset++;
+         }
+         if (hasTab) { // no newline at the end of the file
+            insert(id.toByteArray(), lineStart);
+         }
+      } finally {
+         in.close();
+      }
+
+      this.slots.force();
+
+      // Write header last, an interrupted build is not mistaken for a valid index
+      MappedFile header = new MappedFile(this.indexFile, true, 0, HEADER_SIZE);
+      header.putLong(0, MAGIC);
+      header.putLong(8, VERSION);
+      header.putLong(16, this.sentencesFile.length());
+      header.putLong(24, this.sentencesFile.lastModified());
+      header.putLong(32, this.numberOfSlots);
+      header.putLong(40, this.numberOfIds);
+      header.force();
+   }
+
+
+   private void insert(byte[] rawId, long offset) {
+      String id = new String(rawId, UTF8).trim();
+      long hash = hash(id.getBytes(UTF8));
+      long mask = this.numberOfSlots - 1;
+      for (long slot = hash & mask; ; slot = (slot + 1) & mask) {
+         long slotHash = this.slots.getLong(slot * SLOT_SIZE);
+         if (slotHash == 0) {
+            this.slots.putLong(slot * SLOT_SIZE, hash);
+            this.slots.putLong(slot * SLOT_SIZE + 8, offset);
+            this.numberOfIds++;
+            return;
+         }
+         if (slotHash == hash) {
+            String other = readLine(this.slots.getLong(slot * SLOT_SIZE + 8)).split("\t")[0].trim();
+            if (other.equals(id)) { // duplicate id, last one wins
+               this.slots.putLong(slot * SLOT_SIZE + 8, offset);
+               return;
+            }
+         }
+      }
+   }
+
+
+
+   /**
+    * Decode the line starting at this offset.
+    */
+   private String readLine(long offset) {
+      ByteArrayOutputStream line = new ByteArrayOutputStream(256);
+      long length = this.sentences.length();
+      for (long pos = offset; pos < length; pos++) {
+         byte b = this.sentences.get(pos);
+         if (b == '\n') {
+            break;
+         }
+         line.write(b);
+      }
+      return new String(line.toByteArray(), UTF8);
+   }
+
+
+   /**
+    * FNV-1a, 0 is reserved for empty slots.
+    */
+   private static long hash(byte[] bytes) {
+      long hash = 0xcbf29ce484222325L;
+      for (byte b : bytes) {
+         hash ^= (b & 0xff);
+         hash *= 0x100000001b3L;
+      }
+      return (hash == 0) ? 1 : hash;
+   }
+
+
+
+   /**
+    * Region of a file mapped in several buffers,
+    * a single buffer cannot be larger than 2 GB.
+    */
+   private static class MappedFile {
+
+      private static final int SEGMENT_BITS = 30; // multiple of SLOT_SIZE
+      private static final long SEGMENT_SIZE = 1L << SEGMENT_BITS;
+
+      private MappedByteBuffer[] segments;
+      private long length;
+
+      MappedFile(File file, boolean writable, long start, long length) throws IOException {
+         this.length = length;
+         int numberOfSegments = (int) ((length + SEGMENT_SIZE - 1) / SEGMENT_SIZE);
+         this.segments = new MappedByteBuffer[numberOfSegments];
+
+         RandomAccessFile raf = new RandomAccessFile(file, writable ? "rw" : "r");
+         try {
+            FileChannel channel = raf.getChannel();
+            for (int i=0; i<numberOfSegments; i++) {
+               long segmentStart = i * SEGMENT_SIZE;
+               long size = Math.min(SEGMENT_SIZE, length - segmentStart);
+               this.segments[i] = channel.map(writable ? FileChannel.MapMode.READ_WRITE : FileChannel.MapMode.READ_ONLY,
+                     start + segmentStart, size);
+            }
+         } finally {
+            raf.close(); // mapping stays valid
+         }
+      }
+
+      long length() {
+         return this.length;
+      }
+
+      byte get(long pos) {
+         return this.segments[(int) (pos >>> SEGMENT_BITS)].get((int) (pos & (SEGMENT_SIZE - 1)));
+      }
+
+      /** Longs never cross segment boundaries (aligned at 8). */
+      long getLong(long pos) {
+         return this.segments[(int) (pos >>> SEGMENT_BITS)].getLong((int) (pos & (SEGMENT_SIZE - 1)));
+      }
+
+      void putLong(long pos, long value) {
+         this.segments[(int) (pos >>> SEGMENT_BITS)].putLong((int) (pos & (SEGMENT_SIZE - 1)), value);
+      }
+
+      void force() {
+         for (MappedByteBuffer segment : this.segments) {
+            segment.force();
+         }
+      }
+   }
+
+}
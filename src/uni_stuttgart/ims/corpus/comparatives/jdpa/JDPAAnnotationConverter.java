@@ -18,6 +18,7 @@ import de.uni_stuttgart.ims.corpus.compannotation.ComparisonAnnotationToken;
 import de.uni_stuttgart.ims.corpus.compannotation.SentenceAnnotation;
 import de.uni_stuttgart.ims.corpus.util.ArgumentNotFoundException;
 import de.uni_stuttgart.ims.corpus.util.PredicateNotFoundException;
+import de.uni_stuttgart.ims.corpus.util.TokenReplacementRules;
 import de.uni_stuttgart.ims.nlpbase.nlp.PredicateType;
 import de.uni_stuttgart.ims.nlpbase.tools.TextSpan;
 import de.uni_stuttgart.ims.nlpbase.tools.Tokenizer;
@@ -52,6 +53,11 @@ public class JDPAAnnotationConverter {
     * Tokenizer
     */
    private Tokenizer tokenizer;
+
+   /**
+    * Replacements for tokens the parser cannot treat.
+    */
+   private TokenReplacementRules replacements = TokenReplacementRules.getDefault();
    
    
    /**
@@ -75,14 +81,14 @@ public class JDPAAnnotationConverter {
 
    
    /**
-    * Global counter of predicates not found.
+    * Counter of predicates not found.
     */
-   private static int predicatesNotFound = 0;
+   private int predicatesNotFound = 0;
    
    /**
-    * Global counter of arguments not found.
+    * Counter of arguments not found.
     */
-   private static int argumentsNotFound = 0;
+   private int argumentsNotFound = 0;
 
 
    /**
@@ -140,6 +146,14 @@ public class JDPAAnnotationConverter {
    public void setTokenizer(Tokenizer tokenizer) {
       this.tokenizer = tokenizer;
    }
+
+   /**
+    * Replacements for tokens in the written sentences
+    * (default: the built-in rules).
+    */
+   public void setReplacementRules(TokenReplacementRules replacements) {
+      this.replacements = replacements;
+   }
    
    
    // ===== GETTER =====
@@ -556,7 +570,7 @@ public class JDPAAnnotationConverter {
          String out = "";
          for (int i=0; i<tokenSpans.length; i++) {
             String token = tokenSpans[i].coveredText;
-            token = token.replaceAll("=", "eq");
+            token = replacements.apply(token);
             out = out + " " + token;
          }
          out = out.trim();
@@ -25,12 +25,13 @@ import org.jdom2.JDOMException;
 import com.google.common.io.Files;
 
 import de.uni_stuttgart.ims.util.Fileutils;
+import de.uni_stuttgart.ims.corpus.util.ModelRegistry;
 import de.uni_stuttgart.ims.corpus.util.Options;
+import de.uni_stuttgart.ims.corpus.util.StageFailedException;
+import de.uni_stuttgart.ims.corpus.util.TokenReplacementRules;
 import de.uni_stuttgart.ims.nlpbase.tools.SentenceSplitter;
-import de.uni_stuttgart.ims.nlpbase.tools.SentenceSplitterStanford;
 import de.uni_stuttgart.ims.nlpbase.tools.TextSpan;
 import de.uni_stuttgart.ims.nlpbase.tools.Tokenizer;
-import de.uni_stuttgart.ims.nlpbase.tools.TokenizerStanford;
 
 
 /**
@@ -62,27 +63,40 @@ public class JDPAConverter {
    *    Example annotation file loc.:  <given path>/annotation/camera-002-001.txt.knowtator.xml
    */
    public static void main(String[] args) {
-
-
-      // ===== GET USER-DEFINED OPTIONS =====
-
+      if (args.length < 1) {
+         System.err.println("Usage: JDPAConverter <config file>");
+         System.exit(1);
+      }
+      Options options = null;
       try {
-
-         if (args.length < 1) {
-            System.err.println("Usage: JDPAConverter <config file>");
-            System.exit(1);
-         }
-         Options.parseOptionsFile(args[0]);
-
+         options = Options.readOptionsFile(args[0]);
       } catch (IOException e) {
          System.err.println("ERROR !!! while parsing options file: " + e);
          System.exit(1);
       }
+      try {
+         run(options);
+      } catch (StageFailedException e) {
+         System.exit(1);
+      }
+      ModelRegistry.closeAll();
+   }
+
+
 
-      String[] paths = Options.getListOption("jdpaCorpusPaths");
-      String sentencesOutputFilename = Options.getOption("plaintextSentencesFilename");
-      String annotationsOutputFilename = Options.getOption("plaintextAnnotationsFilename");
-      String htmlOutputFilename = Options.getOption("htmlMentionsOutputFilename");
+   /**
+    * Run with these options.
+    * @return number of sentences processed.
+    * @throws StageFailedException if something goes wrong (the error has been printed).
+    */
+   public static int run(Options options) {
+
+      // ===== GET USER-DEFINED OPTIONS =====
+
+      String[] paths = options.getListOption("jdpaCorpusPaths");
+      String sentencesOutputFilename = options.getOption("plaintextSentencesFilename");
+      String annotationsOutputFilename = options.getOption("plaintextAnnotationsFilename");
+      String htmlOutputFilename = options.getOption("htmlMentionsOutputFilename");
       boolean writeHTMLOutput = (htmlOutputFilename != null);
 
 
@@ -104,219 +118,228 @@ public class JDPAConverter {
       HTMLDebugOutputJDPA outHTML = null;
       JDPAAnnotationConverter converter = null;
 
+      // Give back the models and close the files also if the conversion fails
       try {
 
-         // Initialize sentence splitter (Stanford)
-         sentenceSplitter = new SentenceSplitterStanford();
-         //sentenceSplitter.initializeOpenNLP();
-
-         // Initialize tokenizer (Stanford)
-         tokenizer = new TokenizerStanford();
-
-         // Initialize Knowtator XML parser
-         parser = new KnowtatorXMLParser();
-
-         // open output file (sentences)
-         FileWriter fstream1 = new FileWriter(sentencesOutputFilename);
-         outSentences = new BufferedWriter(fstream1);
+         try {
 
-         // open output file (annotations)
-         FileWriter fstream2 = new FileWriter(annotationsOutputFilename);
-         outAnnotations = new BufferedWriter(fstream2);
+            // Initialize sentence splitter (Stanford)
+            sentenceSplitter = ModelRegistry.getSentenceSplitterPool().borrow();
+            //sentenceSplitter.initializeOpenNLP();
 
-         // HTML Debug output
-         if (writeHTMLOutput) {
-            outHTML = new HTMLDebugOutputJDPA(htmlOutputFilename);
-            outHTML.initialize();
-         }
-
-         // Converts JDPA annotations to our format
-         converter = new JDPAAnnotationConverter();
-         converter.setOutputFileSentences(outSentences);
-         converter.setOutputFileAnnotations(outAnnotations);
-         converter.setTokenizer(tokenizer);
+            // Initialize tokenizer (Stanford)
+            tokenizer = ModelRegistry.getTokenizerPool().borrow();
 
+            // Initialize Knowtator XML parser
+            parser = new KnowtatorXMLParser();
 
-      } catch (Exception e) {
-         System.err.println("ERROR !!! in initialization: " + e);
-         e.printStackTrace();
-         System.exit(1);
-      }
+            // open output file (sentences)
+            FileWriter fstream1 = new FileWriter(sentencesOutputFilename);
+            outSentences = new BufferedWriter(fstream1);
 
+            // open output file (annotations)
+            FileWriter fstream2 = new FileWriter(annotationsOutputFilename);
+            outAnnotations = new BufferedWriter(fstream2);
 
+            // HTML Debug output
+            if (writeHTMLOutput) {
+               outHTML = new HTMLDebugOutputJDPA(htmlOutputFilename);
+               outHTML.initialize();
+            }
 
-      // ===== PROCESSING =====
-
-      // Bookkeeping variables
-      int documentNo = 0;
-      int comparativesNo = 0;
-      int totalsentencesNo = 0;
-      int errorNo = 0;
-
-      for (String knowtatorTextDirectoryPath : paths) {
-         if (debug) System.out.println();
-         if (debug) System.out.println("Process directory " + knowtatorTextDirectoryPath);
-         File knowtatorTextDirectory = new File(knowtatorTextDirectoryPath + "txt");
-         File knowtatorAnnotationsDirectory = new File(knowtatorTextDirectoryPath + "annotation");
+            // Converts JDPA annotations to our format
+            converter = new JDPAAnnotationConverter();
+            converter.setOutputFileSentences(outSentences);
+            converter.setOutputFileAnnotations(outAnnotations);
+            converter.setTokenizer(tokenizer);
+            converter.setReplacementRules(TokenReplacementRules.getRules(options));
 
-         // Loop through all text files
-         File[] files = knowtatorTextDirectory.listFiles();
-         Arrays.sort(files);
-         for (File textFile : files) {
-            //if (debug) System.out.println();
-            if (debug) System.out.println("Process file " + textFile.getAbsolutePath());
 
-            // Try to find corresponding annotation file, abort if not found
-            File anntationFile = new File(knowtatorAnnotationsDirectory + File.separator + textFile.getName()+".knowtator.xml");
-            URI knowtatorURI = anntationFile.toURI();
-            if (!anntationFile.exists()) {
-               System.err.println("ERROR !!! Annotation file not found: " + knowtatorURI);
-               errorNo++;
-               continue;
-            }
+         } catch (Exception e) {
+            System.err.println("ERROR !!! in initialization: " + e);
+            e.printStackTrace();
+            throw new StageFailedException("Error in initialization");
+         }
 
-            // DEBUG count
-            documentNo++;
-
-            // Get plain text and normalize (replace windows line breaks)
-            String text = "";
-            try {
-               text = Files.toString(textFile, Charset.forName("ASCII"));
-            } catch (IOException e) {
-               System.err.println("ERROR !!! while reading text file: " + e);
-               errorNo++;
-               continue;
-            }
-            text = text.replaceAll("\\r\\n", " ");
-            parser.setPlaintext(text);
 
 
-            // Sentence splitting
-            TextSpan[] sentenceSpans = sentenceSplitter.split(text);
+         // ===== PROCESSING =====
 
-            // Start new document in converter
-            converter.startNewDocument(text, anntationFile.getAbsolutePath(), sentenceSpans);
+         // Bookkeeping variables
+         int documentNo = 0;
+         int comparativesNo = 0;
+         int totalsentencesNo = 0;
+         int errorNo = 0;
 
-            // HTML Output DEBUG
-            if (writeHTMLOutput) {
-               outHTML.startNewDocument(text, sentenceSpans);
-            }
+         for (String knowtatorTextDirectoryPath : paths) {
+            if (debug) System.out.println();
+            if (debug) System.out.println("Process directory " + knowtatorTextDirectoryPath);
+            File knowtatorTextDirectory = new File(knowtatorTextDirectoryPath + "txt");
+            File knowtatorAnnotationsDirectory = new File(knowtatorTextDirectoryPath + "annotation");
 
+            // Loop through all text files
+            File[] files = knowtatorTextDirectory.listFiles();
+            Arrays.sort(files);
+            for (File textFile : files) {
+               //if (debug) System.out.println();
+               if (debug) System.out.println("Process file " + textFile.getAbsolutePath());
 
-            // --- PARSE XML ---
+               // Try to find corresponding annotation file, abort if not found
+               File anntationFile = new File(knowtatorAnnotationsDirectory + File.separator + textFile.getName()+".knowtator.xml");
+               URI knowtatorURI = anntationFile.toURI();
+               if (!anntationFile.exists()) {
+                  System.err.println("ERROR !!! Annotation file not found: " + knowtatorURI);
+                  errorNo++;
+                  continue;
+               }
 
-            // Parse the JDPA xml files to get the annotations
-            // Parse the Knowtator XML file into annotation objects
-            Collection<KnowtatorAnnotation> jdpaAnnotations = null;
-            try {
-               jdpaAnnotations = parser.parse(knowtatorURI);
-            } catch (JDOMException e) {
-               System.err.println("ERROR !!! while parsing file " + knowtatorURI + " : " + e);
-               errorNo++;
-               continue;
-            } catch (IOException e) {
-               System.err.println("ERROR !!! while parsing file " + knowtatorURI + " : " + e);
-               errorNo++;
-               continue;
-            } // processed document
+               // DEBUG count
+               documentNo++;
+
+               // Get plain text and normalize (replace windows line breaks)
+               String text = "";
+               try {
+                  text = Files.toString(textFile, Charset.forName("ASCII"));
+               } catch (IOException e) {
+                  System.err.println("ERROR !!! while reading text file: " + e);
+                  errorNo++;
+                  continue;
+               }
+               text = text.replaceAll("\\r\\n", " ");
+               parser.setPlaintext(text);
 
 
-            // --- COLLECT ANNOTATIONS ---
+               // Sentence splitting
+               TextSpan[] sentenceSpans = sentenceSplitter.split(text);
 
-            // Iterate through all JDPA annotations,
-            // and collect the ones we are interested in.
-            Iterator<KnowtatorAnnotation> iter = jdpaAnnotations.iterator();
-            HashMap<Integer, List<KnowtatorAnnotation>> sentimentAnnotations = new HashMap<Integer, List<KnowtatorAnnotation>>();
-            List<KnowtatorAnnotation> comparisonAnnotations = new ArrayList<KnowtatorAnnotation>();
-            while (iter.hasNext()) {
-               KnowtatorAnnotation current = iter.next();
+               // Start new document in converter
+               converter.startNewDocument(text, anntationFile.getAbsolutePath(), sentenceSpans);
 
                // HTML Output DEBUG
                if (writeHTMLOutput) {
-                  outHTML.addHTMLDebugOutput(current);
+                  outHTML.startNewDocument(text, sentenceSpans);
                }
 
-               // Collect annotation types we are interested in
-               if (comparisonTypes.contains(current.type)) {
-                  comparisonAnnotations.add(current);
-               }
-               if (sentimentTypes.contains(current.type)) {
-                  Integer begin = current.getCoveringSpan().begin;
-                  List<KnowtatorAnnotation> thislist = sentimentAnnotations.get(begin);
-                  if (thislist == null) {
-                     thislist = new ArrayList<KnowtatorAnnotation>();
+
+               // --- PARSE XML ---
+
+               // Parse the JDPA xml files to get the annotations
+               // Parse the Knowtator XML file into annotation objects
+               Collection<KnowtatorAnnotation> jdpaAnnotations = null;
+               try {
+                  jdpaAnnotations = parser.parse(knowtatorURI);
+               } catch (JDOMException e) {
+                  System.err.println("ERROR !!! while parsing file " + knowtatorURI + " : " + e);
+                  errorNo++;
+                  continue;
+               } catch (IOException e) {
+                  System.err.println("ERROR !!! while parsing file " + knowtatorURI + " : " + e);
+                  errorNo++;
+                  continue;
+               } // processed document
+
+
+               // --- COLLECT ANNOTATIONS ---
+
+               // Iterate through all JDPA annotations,
+               // and collect the ones we are interested in.
+               Iterator<KnowtatorAnnotation> iter = jdpaAnnotations.iterator();
+               HashMap<Integer, List<KnowtatorAnnotation>> sentimentAnnotations = new HashMap<Integer, List<KnowtatorAnnotation>>();
+               List<KnowtatorAnnotation> comparisonAnnotations = new ArrayList<KnowtatorAnnotation>();
+               while (iter.hasNext()) {
+                  KnowtatorAnnotation current = iter.next();
+
+                  // HTML Output DEBUG
+                  if (writeHTMLOutput) {
+                     outHTML.addHTMLDebugOutput(current);
                   }
-                  thislist.add(current);
-                  sentimentAnnotations.put(begin, thislist);
-               }
 
+                  // Collect annotation types we are interested in
+                  if (comparisonTypes.contains(current.type)) {
+                     comparisonAnnotations.add(current);
+                  }
+                  if (sentimentTypes.contains(current.type)) {
+                     Integer begin = current.getCoveringSpan().begin;
+                     List<KnowtatorAnnotation> thislist = sentimentAnnotations.get(begin);
+                     if (thislist == null) {
+                        thislist = new ArrayList<KnowtatorAnnotation>();
+                     }
+                     thislist.add(current);
+                     sentimentAnnotations.put(begin, thislist);
+                  }
 
-            } // while (iter.hasNext()) {
 
+               } // while (iter.hasNext()) {
 
-            // Create comparison annotation objects
-            // and add them to the corresponding sentences.
-            for (KnowtatorAnnotation current : comparisonAnnotations) {
-               //System.out.println("Annotation: " + current.type + " / "+ current.spannedText +
-               //      " (" + current.spans + ")");
-               //if (debug) System.out.println(current);
-               converter.addAnnotation(current, sentimentAnnotations);
 
-            }
+               // Create comparison annotation objects
+               // and add them to the corresponding sentences.
+               for (KnowtatorAnnotation current : comparisonAnnotations) {
+                  //System.out.println("Annotation: " + current.type + " / "+ current.spannedText +
+                  //      " (" + current.spans + ")");
+                  //if (debug) System.out.println(current);
+                  converter.addAnnotation(current, sentimentAnnotations);
 
+               }
 
-            // --- WRITE ANNOTATIONS TO FILE(S)---
 
-            try {
-               converter.writeAnnotations();
-            } catch (IOException e) {
-               System.err.println("ERROR !!! while writing sentence/annotaion to file: " + e);
-               System.err.println("in file " + textFile.getAbsolutePath());
-               errorNo++;
-               continue;
-               // TODO what is the best error handling here?
-            }
+               // --- WRITE ANNOTATIONS TO FILE(S)---
 
-            // HTML Output (DEBUG)
-            if (writeHTMLOutput) {
-               outHTML.writeHTMLToFile(textFile.getAbsolutePath() + "<br/>");
-            }
+               try {
+                  converter.writeAnnotations();
+               } catch (IOException e) {
+                  System.err.println("ERROR !!! while writing sentence/annotaion to file: " + e);
+                  System.err.println("in file " + textFile.getAbsolutePath());
+                  errorNo++;
+                  continue;
+                  // TODO what is the best error handling here?
+               }
+
+               // HTML Output (DEBUG)
+               if (writeHTMLOutput) {
+                  outHTML.writeHTMLToFile(textFile.getAbsolutePath() + "<br/>");
+               }
 
 
-            // DEBUG counts
-            totalsentencesNo += converter.getNumberOfSentences();
-            comparativesNo += converter.getNumberOfComparativeSentences();
+               // DEBUG counts
+               totalsentencesNo += converter.getNumberOfSentences();
+               comparativesNo += converter.getNumberOfComparativeSentences();
 
-            // DEBUG
-            //if (documentNo > 50)  break;
+               // DEBUG
+               //if (documentNo > 50)  break;
 
-         } // file
+            } // file
+
+            // DEBUG counts
+            //System.out.println("Processed " + documentNo + " annotated documents.");
+            //System.out.println("total comparatives: " + comparativesNo);
+         }
 
-         // DEBUG counts
-         //System.out.println("Processed " + documentNo + " annotated documents.");
-         //System.out.println("total comparatives: " + comparativesNo);
-      }
 
+         // ===== STATISTICS, CLEANUP =====
 
-      // ===== STATISTICS, CLEANUP =====
+         // Some statistics
+         System.out.println("number of errors (see System.err): " + errorNo);
+         System.out.println("number of predicate annotations not found: " + converter.getPredicatesNotFound());
+         System.out.println("number of argument annotations not found: " + converter.getArgumentsNotFound());
+         System.out.println("total documents: " + documentNo);
+         System.out.println("total sentences: " + totalsentencesNo);
+         System.out.println("total non-comparatives: " + (totalsentencesNo - comparativesNo));
+         System.out.println("total comparatives: " + comparativesNo);
 
-      // Some statistics
-      System.out.println("number of errors (see System.err): " + errorNo);
-      System.out.println("number of predicate annotations not found: " + converter.getPredicatesNotFound());
-      System.out.println("number of argument annotations not found: " + converter.getArgumentsNotFound());
-      System.out.println("total documents: " + documentNo);
-      System.out.println("total sentences: " + totalsentencesNo);
-      System.out.println("total non-comparatives: " + (totalsentencesNo - comparativesNo));
-      System.out.println("total comparatives: " + comparativesNo);
+         ModelRegistry.printStatistics();
+         System.out.println("done.");
 
-      // Do some cleanup
-      Fileutils.closeSilently(sentenceSplitter);
-      Fileutils.closeSilently(tokenizer);
-      Fileutils.closeSilently(outSentences);
-      Fileutils.closeSilently(outAnnotations);
-      Fileutils.closeSilently(outHTML);
-      System.out.println("done.");
+         return totalsentencesNo;
 
+      } finally {
+         // Do some cleanup
+         ModelRegistry.getSentenceSplitterPool().release(sentenceSplitter);
+         ModelRegistry.getTokenizerPool().release(tokenizer);
+         Fileutils.closeSilently(outSentences);
+         Fileutils.closeSilently(outAnnotations);
+         Fileutils.closeSilently(outHTML);
+      }
    }
 
 
@@ -9,18 +9,22 @@ package de.uni_stuttgart.ims.corpus.comparatives.liu;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import de.uni_stuttgart.ims.corpus.compannotation.ComparisonAnnotation;
 import de.uni_stuttgart.ims.corpus.compannotation.ComparisonAnnotationToken;
 import de.uni_stuttgart.ims.corpus.compannotation.SentenceAnnotation;
 import de.uni_stuttgart.ims.corpus.util.ArgumentNotFoundException;
+import de.uni_stuttgart.ims.corpus.util.PhraseMatcher;
 import de.uni_stuttgart.ims.corpus.util.PredicateNotFoundException;
+import de.uni_stuttgart.ims.corpus.util.SentenceTokenIndex;
+import de.uni_stuttgart.ims.corpus.util.TokenizerCache;
 import de.uni_stuttgart.ims.nlpbase.nlp.PredicateType;
-import de.uni_stuttgart.ims.nlpbase.nlp.SRLSentence;
-import de.uni_stuttgart.ims.nlpbase.nlp.Word;
 import de.uni_stuttgart.ims.nlpbase.tools.Tokenizer;
-import de.uni_stuttgart.ims.util.StringWordMapping;
 
 
 /**
@@ -31,9 +35,6 @@ import de.uni_stuttgart.ims.util.StringWordMapping;
  */
 public class LiuAnnotation {
 
-   static boolean useType4;
-
-
    public boolean isAnnotation;
    public List<Integer> types;
    public int linesToIgnore;
@@ -43,69 +44,78 @@ public class LiuAnnotation {
    private String originalLine = "";
 
 
-   private static int numberOfComparisons = 0;
-
-   /**
-    * Global counter of predicates not found.
-    */
-   private static int predicatesNotFound = 0;
-
-   /**
-    * Global counter of arguments not found.
-    */
-   private static int argumentsNotFound = 0;
-
-
-
-   /**
-    * Tokenizer
-    */
-   private static Tokenizer tokenizer;
-
-
    /**
     * Per-document. Stores document name
     * (recorded as part of annotation).
     */
-   private static String filename;
+   private String filename;
+
 
-   /**
-    * Tokenizer of sentences.
-    */
-   public static void setTokenizer(Tokenizer tokenizer) {
-      LiuAnnotation.tokenizer = tokenizer;
-   }
 
    /**
-    * filename.
-    */
-   public static void setFilename(String filename) {
-      LiuAnnotation.filename = filename;
-   }
-   /**
-    * filename.
+    * Settings and counters of one conversion (input file),
+    * shared by all threads that convert annotations of it.
     */
-   public static void setUseType4(boolean useType4) {
-      LiuAnnotation.useType4 = useType4;
-   }
+   public static class Conversion {
+
+      private String filename;
+
+      /**
+       * Include annotations of type 4 (no entities or predicate annotated).
+       */
+      private boolean useType4;
+
+      /**
+       * Optional memo of tokenized predicates and arguments,
+       * shared by all threads.
+       */
+      private TokenizerCache tokenizerCache;
+
+      /**
+       * Annotations may be converted in parallel, so the counters are atomic.
+       */
+      private AtomicInteger predicatesNotFound = new AtomicInteger(0);
+      private AtomicInteger argumentsNotFound = new AtomicInteger(0);
+
+      /**
+       * @param useType4 Include annotations of type 4 (no entities or predicate annotated).
+       * @param tokenizerCache Memo for tokenization of predicates and arguments (may be null).
+       */
+      public Conversion(String filename, boolean useType4, TokenizerCache tokenizerCache) {
+         this.filename = filename;
+         this.useType4 = useType4;
+         this.tokenizerCache = tokenizerCache;
+      }
 
+      /**
+       * Returns number of predicates that could not be found,
+       * to know the reason, see log.
+       * Equivalent to cought PredicateNotFoundExceptions.
+       */
+      public int getPredicatesNotFound() {
+         return predicatesNotFound.get();
+      }
 
-   /**
-    * Returns number of predicates that could not be found,
-    * to know the reason, see log.
-    * Equivalent to cought PredicateNotFoundExceptions.
-    */
-   public static int getPredicatesNotFound() {
-      return predicatesNotFound;
-   }
+      /**
+       * Returns number of arguments that could not be found,
+       * to know the reason, see log.
+       * Equivalent to cought ArgumentNotFoundExceptions.
+       */
+      public int getArgumentsNotFound() {
+         return argumentsNotFound.get();
+      }
 
-   /**
-    * Returns number of arguments that could not be found,
-    * to know the reason, see log.
-    * Equivalent to cought ArgumentNotFoundExceptions.
-    */
-   public static int getArgumentsNotFound() {
-      return argumentsNotFound;
+      /**
+       * Tokenize an annotated predicate or argument.
+       * These strings recur a lot, so use the memo if we have one.
+       * Whole sentences are not memoized, they hardly ever repeat.
+       */
+      String[] tokenizeArgument(String argument, Tokenizer tokenizer) {
+         if (tokenizerCache != null) {
+            return tokenizerCache.tokenize(tokenizer, argument);
+         }
+         return tokenizer.tokenize(argument);
+      }
    }
 
 
@@ -227,14 +237,11 @@ public class LiuAnnotation {
    }
 
 
-   public SentenceAnnotation convertToSentenceAnnotation() {
-      numberOfComparisons += 1;
-      return convertToSentenceAnnotation(numberOfComparisons);
-   }
-
-
-
-   public SentenceAnnotation convertToSentenceAnnotation(int comparisonID) {
+   /**
+    * Convert to sentence annotation with the given id.
+    * Every thread converts with its own tokenizer.
+    */
+   public SentenceAnnotation convertToSentenceAnnotation(int comparisonID, Tokenizer tokenizer, Conversion conversion) {
       String thisSentence = this.sentence;
       thisSentence = thisSentence.replaceAll("\\n", " ");
       String[] tokens = tokenizer.tokenize(thisSentence);
@@ -243,8 +250,31 @@ public class LiuAnnotation {
       SentenceAnnotation thisSentenceAnnotation = new SentenceAnnotation();
       thisSentenceAnnotation.setId(comparisonID + "");
       thisSentenceAnnotation.setComparative(true);
+      this.filename = conversion.filename;
       thisSentenceAnnotation.setSource(filename);
 
+      // Find all annotated predicates and arguments with one pass over the sentence
+      SentenceMatches matches = new SentenceMatches(tokens, conversion);
+      int k = -1;
+      for (int i=0; i<this.types.size(); i++) {
+         if (this.types.get(i) != 4) {
+            k++;
+            for (String pred : this.annotationcontent[k].predicate.split(",")) {
+               matches.add(pred, tokenizer);
+            }
+            for (String argument : this.annotationcontent[k].entity1) {
+               matches.add(argument, tokenizer);
+            }
+            for (String argument : this.annotationcontent[k].entity2) {
+               matches.add(argument, tokenizer);
+            }
+            for (String argument : this.annotationcontent[k].aspect) {
+               matches.add(argument, tokenizer);
+            }
+         }
+      }
+      matches.resolve();
+
       // Add parts
       int j = -1; // need j to treat cases like [4,1] to skip the annotation for 4
       for (int i=0; i<this.types.size(); i++) {
@@ -259,21 +289,21 @@ public class LiuAnnotation {
             int done = 0;
             ComparisonAnnotationToken[] predicate = null;
             for (String pred : preds) {
-               String[] parts = tokenizer.tokenize(pred);
+               String[] parts = matches.getParts(pred, tokenizer);
                done++;
                try {
-                  predicate = makePredicate(parts, tokens);
+                  predicate = makePredicate(parts, matches);
                   break;
                } catch (PredicateNotFoundException e) { // expected error
                   this.printError("Predicate not found (\"" + pred +  "\"):" + e.getMessage(), thisSentence);
-                  predicatesNotFound++;
+                  conversion.predicatesNotFound.incrementAndGet();
                   thisSentenceAnnotation.addAnnotationError(e.getMessage());
                   continue;
                } catch (Exception e) { // whatever strange thing might happen
                   System.err.println("Predicate not found (\"" + pred +  "\"): "  + e.getMessage());
                   e.printStackTrace();
                   this.printError("Predicate not found (\"" + pred +  "\"): " + e.getMessage(), thisSentence);
-                  predicatesNotFound++;
+                  conversion.predicatesNotFound.incrementAndGet();
                   thisSentenceAnnotation.addAnnotationError(e.getMessage());
                }
             }
@@ -284,49 +314,49 @@ public class LiuAnnotation {
             }
             for (String entity1 : this.annotationcontent[j].entity1) {
                try {
-                  String[] parts = tokenizer.tokenize(entity1);
-                  newAnnotation.addEntity1(makeArgument(parts, tokens));
+                  String[] parts = matches.getParts(entity1, tokenizer);
+                  newAnnotation.addEntity1(makeArgument(parts, matches));
                } catch (ArgumentNotFoundException e) { // expected error
                   this.printError("Argument 'entity1' not found (\"" + entity1 +  "\"): " + e.getMessage(), thisSentence);
-                  argumentsNotFound++;
+                  conversion.argumentsNotFound.incrementAndGet();
                   thisSentenceAnnotation.addAnnotationError(e.getMessage());
                } catch (Exception e) { // whatever strange thing might happen
                   System.err.println("Argument 'entity1' not found (\"" + entity1 +  "\"): "  + e.getMessage());
                   e.printStackTrace();
                   this.printError("Argument 'entity1' not found (\"" + entity1 +  "\"): " + e.getMessage(), thisSentence);
-                  argumentsNotFound++;
+                  conversion.argumentsNotFound.incrementAndGet();
                   thisSentenceAnnotation.addAnnotationError(e.getMessage());
                }
             }
             for (String entity2 : this.annotationcontent[j].entity2) {
                try {
-                  String[] parts = tokenizer.tokenize(entity2);
-                  newAnnotation.addEntity2(makeArgument(parts, tokens));
+                  String[] parts = matches.getParts(entity2, tokenizer);
+                  newAnnotation.addEntity2(makeArgument(parts, matches));
                } catch (ArgumentNotFoundException e) { // expected error
                   this.printError("Argument 'entity2' not found: " + e.getMessage(), thisSentence);
-                  argumentsNotFound++;
+                  conversion.argumentsNotFound.incrementAndGet();
                   thisSentenceAnnotation.addAnnotationError(e.getMessage());
                } catch (Exception e) { // whatever strange thing might happen
                   System.err.println("Argument 'entity1' not found (\"" + entity2 +  "\"): "  + e.getMessage());
                   e.printStackTrace();
                   this.printError("Argument 'entity1' not found (\"" + entity2 +  "\"): " + e.getMessage(), thisSentence);
-                  argumentsNotFound++;
+                  conversion.argumentsNotFound.incrementAndGet();
                   thisSentenceAnnotation.addAnnotationError(e.getMessage());
                }
             }
             for (String aspect : this.annotationcontent[j].aspect) {
                try {
-                  String[] parts = tokenizer.tokenize(aspect);
-                  newAnnotation.addAspect(makeArgument(parts, tokens));
+                  String[] parts = matches.getParts(aspect, tokenizer);
+                  newAnnotation.addAspect(makeArgument(parts, matches));
                } catch (ArgumentNotFoundException e) { // expected error
                   this.printError("Argument 'aspect' not found: " + e.getMessage(), thisSentence);
-                  argumentsNotFound++;
+                  conversion.argumentsNotFound.incrementAndGet();
                   thisSentenceAnnotation.addAnnotationError(e.getMessage());
                } catch (Exception e) { // whatever strange thing might happen
                   System.err.println("Argument 'entity1' not found (\"" + aspect +  "\"): "  + e.getMessage());
                   e.printStackTrace();
                   this.printError("Argument 'entity1' not found (\"" + aspect +  "\"): " + e.getMessage(), thisSentence);
-                  argumentsNotFound++;
+                  conversion.argumentsNotFound.incrementAndGet();
                   thisSentenceAnnotation.addAnnotationError(e.getMessage());
                }
             }
@@ -339,12 +369,12 @@ public class LiuAnnotation {
             // copy annotation for other predicates
             for (int m=done; m<preds.length; m++) {
                ComparisonAnnotation copiedAnnotation = new ComparisonAnnotation();
-               String[] parts = tokenizer.tokenize(preds[m]);
+               String[] parts = matches.getParts(preds[m], tokenizer);
                try {
-                  copiedAnnotation.setPredicate(makePredicate(parts, tokens));
+                  copiedAnnotation.setPredicate(makePredicate(parts, matches));
                } catch (PredicateNotFoundException e) {
                   this.printError("Predicate not found " + e.getMessage(), thisSentence);
-                  predicatesNotFound++;
+                  conversion.predicatesNotFound.incrementAndGet();
                   thisSentenceAnnotation.addAnnotationError(e.getMessage());
                   continue;
                }
@@ -357,7 +387,7 @@ public class LiuAnnotation {
 
 
          } else { // type 4
-            if (useType4) {
+            if (conversion.useType4) {
                ComparisonAnnotation newAnnotation = new ComparisonAnnotation();
                newAnnotation.setFineType(mapLiuType(this.types.get(i)));
                thisSentenceAnnotation.addComparisonAnnotation(newAnnotation);
@@ -401,7 +431,7 @@ public class LiuAnnotation {
 
    }
 
-   private ComparisonAnnotationToken[] makePredicate (String[] predicate, String[] tokens)
+   private ComparisonAnnotationToken[] makePredicate (String[] predicate, SentenceMatches matches)
          throws PredicateNotFoundException {
 
       // Abort if spanned text is empty
@@ -410,7 +440,7 @@ public class LiuAnnotation {
       }
 
       // Try mapping to tokens
-      ComparisonAnnotationToken[] catokens = mapToTokens(predicate, tokens, true, false);
+      ComparisonAnnotationToken[] catokens = matches.mapToTokens(predicate);
 
       // Throw error if this fails
       if (catokens == null)
@@ -420,7 +450,7 @@ public class LiuAnnotation {
    }
 
 
-   private ComparisonAnnotationToken[] makeArgument (String[] argument, String[] tokens)
+   private ComparisonAnnotationToken[] makeArgument (String[] argument, SentenceMatches matches)
          throws ArgumentNotFoundException {
 
       // Abort if spanned text is empty
@@ -429,7 +459,7 @@ public class LiuAnnotation {
       }
 
       // Try mapping to tokens
-      ComparisonAnnotationToken[] catokens = mapToTokens(argument, tokens, false, false);
+      ComparisonAnnotationToken[] catokens = matches.mapToTokens(argument);
 
       // Throw error if this fails
       if (catokens == null)
@@ -439,40 +469,95 @@ public class LiuAnnotation {
    }
 
 
-   private ComparisonAnnotationToken[] mapToTokens (String[] thewords, String[] tokens, boolean ignorePredicates, boolean caseSensitive) {
 
-      List<Word> words = null;
-      SRLSentence tree = new SRLSentence();
-      for (String token : tokens) {
-         tree.addWord(new Word(token));
+   /**
+    * Positions of all annotated predicates and arguments of one sentence.
+    * All of them are tokenized first and then found together
+    * with one pass over the sentence tokens (case insensitive).
+    * Like before, the first occurrence in the sentence is used.
+    */
+   private static class SentenceMatches {
+
+      private SentenceTokenIndex index;
+      private PhraseMatcher matcher = new PhraseMatcher(false);
+      private Map<String, String[]> parts = new HashMap<String, String[]>();
+      private Map<String[], Integer> phraseIds = new IdentityHashMap<String[], Integer>();
+      private int[] firstPositions;
+      private Conversion conversion;
+
+      SentenceMatches(String[] tokens, Conversion conversion) {
+         this.index = new SentenceTokenIndex(tokens);
+         this.conversion = conversion;
       }
 
-      if (thewords.length > 1) { // MultiWordUnit
-         words = StringWordMapping.identifyMWU(tree, thewords, ignorePredicates, caseSensitive);
-      } else { // single word
-         List<Word> found = StringWordMapping.identifyOneWordAll(tree, thewords[0].trim(), ignorePredicates, caseSensitive);
-         if (found != null) {
-            words = new ArrayList<Word>();
-            words.add(found.get(0)); // add first place found, ignore rest
-         } else {
-            return null;
+      /**
+       * Tokenize annotated string and add it to the strings to be found.
+       */
+      void add(String annotated, Tokenizer tokenizer) {
+         if (this.parts.containsKey(annotated)) {
+            return;
+         }
+         String[] tokenized = null;
+         try {
+            tokenized = this.conversion.tokenizeArgument(annotated, tokenizer);
+         } catch (Exception e) {
+            return; // reported when the string is used
          }
+         if (tokenized == null) {
+            return;
+         }
+         this.parts.put(annotated, tokenized);
+
+         String[] phrase = tokenized;
+         if (phrase.length == 1) { // single words were trimmed before
+            phrase = new String[] {phrase[0].trim()};
+         }
+         this.phraseIds.put(tokenized, this.matcher.addPhrase(phrase));
       }
 
-      // Not a complete token
-      if (words == null) {
-         return null;
+      /**
+       * Find all added strings in the sentence.
+       */
+      void resolve() {
+         this.firstPositions = this.matcher.findFirst(this.index);
       }
 
-      ComparisonAnnotationToken[] catokens = new ComparisonAnnotationToken[words.size()];
+      /**
+       * Tokens of the annotated string (tokenize if it has not been added).
+       */
+      String[] getParts(String annotated, Tokenizer tokenizer) {
+         String[] result = this.parts.get(annotated);
+         if (result == null) {
+            result = this.conversion.tokenizeArgument(annotated, tokenizer);
+         }
+         return result;
+      }
+
+      /**
+       * Tokens of the sentence at the first place the words were found,
+       * null if they are not found.
+       */
+      ComparisonAnnotationToken[] mapToTokens(String[] thewords) {
+         Integer phraseId = this.phraseIds.get(thewords);
+         int start;
+         if (phraseId != null) {
+            start = this.firstPositions[phraseId];
+         } else { // not added before, search on its own
+            PhraseMatcher single = new PhraseMatcher(false);
+            single.addPhrase(thewords.length == 1 ? new String[] {thewords[0].trim()} : thewords);
+            start = single.findFirst(this.index)[0];
+         }
+         if (start == -1) {
+            return null;
+         }
 
-      int j=0;
-      for (Word word : words) {
-         catokens[j] = new ComparisonAnnotationToken(word.getForm(), word.getId());
-         j++;
+         ComparisonAnnotationToken[] catokens = new ComparisonAnnotationToken[thewords.length];
+         for (int j=0; j<thewords.length; j++) {
+            catokens[j] = new ComparisonAnnotationToken(this.index.getForm(start + j), start + j + 1);
+         }
+         return catokens;
       }
 
-      return catokens;
    }
 
 
@@ -20,13 +20,17 @@ import java.util.Arrays;
 import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.RecursiveTask;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
+import de.uni_stuttgart.ims.corpus.util.ModelRegistry;
 import de.uni_stuttgart.ims.corpus.util.Options;
+import de.uni_stuttgart.ims.corpus.util.StageFailedException;
+import de.uni_stuttgart.ims.corpus.util.TokenizerCache;
+import de.uni_stuttgart.ims.corpus.util.WorkerPool;
 import de.uni_stuttgart.ims.corpus.compannotation.SentenceAnnotation;
 import de.uni_stuttgart.ims.nlpbase.tools.Tokenizer;
-import de.uni_stuttgart.ims.nlpbase.tools.TokenizerStanford;
 import de.uni_stuttgart.ims.util.Fileutils;
 
 
@@ -46,30 +50,53 @@ public class LiuConverter {
    //private static boolean debugoutput = false;
    private static boolean debugoutput = false;
 
+   /**
+    * Approximate number of lines per chunk that is converted in one task.
+    */
+   private static int chunkLines = 500;
+
    /**
     * @param args
     * @throws IOException
    */
    public static void main(String[] args) {
-
-      // ===== GET USER-DEFINED OPTIONS =====
-
+      if (args.length < 1) {
+         System.err.println("Usage: LiuConverter <config file>");
+         System.exit(1);
+      }
+      Options options = null;
       try {
-
-         if (args.length < 1) {
-            System.err.println("Usage: LiuConverter <config file>");
-            System.exit(1);
-         }
-         Options.parseOptionsFile(args[0]);
-
+         options = Options.readOptionsFile(args[0]);
       } catch (IOException e) {
          System.err.println("ERROR !!! while parsing options file: " + e);
          System.exit(1);
       }
+      try {
+         run(options);
+      } catch (StageFailedException e) {
+         System.exit(1);
+      }
+      ModelRegistry.closeAll();
+   }
+
 
-      String filename = Options.getOption("inputCorpusFilename");
-      String annotationsOutputFilename = Options.getOption("plaintextAnnotationsFilename");
-      String sentencesOutputFilename = Options.getOption("plaintextSentencesFilename");
+
+   /**
+    * Run with these options.
+    * @return number of sentences processed.
+    * @throws StageFailedException if something goes wrong (the error has been printed).
+    */
+   public static int run(Options options) {
+
+      // ===== GET USER-DEFINED OPTIONS =====
+
+      String filename = options.getOption("inputCorpusFilename");
+      String annotationsOutputFilename = options.getOption("plaintextAnnotationsFilename");
+      String sentencesOutputFilename = options.getOption("plaintextSentencesFilename");
+
+
+      int numThreads = WorkerPool.getNumThreads(options);
+      int tokenizerCacheSize = options.getIntOption("tokenizerCacheSize", 10000);
 
 
       // ===== INITIALIZATION =====
@@ -79,97 +106,230 @@ public class LiuConverter {
       BufferedWriter outSentences = null;
       BufferedWriter outAnnotations = null;
       BufferedWriter outDebug = null;
-      Tokenizer tokenizer = null;
+      TokenizerCache tokenizerCache = null;
+      LiuAnnotation.Conversion conversion = null;
 
+      // Close the files also if the conversion fails
       try {
 
-         LiuAnnotation.setUseType4(useType4);
+         try {
 
-         // Initialize tokenizer (Stanford)
-         tokenizer = new TokenizerStanford();
-         LiuAnnotation.setTokenizer(tokenizer);
+            // Memo of tokenized predicates/arguments, shared by all threads
+            if (tokenizerCacheSize > 0) {
+               tokenizerCache = new TokenizerCache(tokenizerCacheSize);
+            }
 
-         // open input file
-         DataInputStream in = new DataInputStream(new FileInputStream(filename));
-         br = new BufferedReader(new InputStreamReader(in, Charset.forName("UTF-8")));
-         LiuAnnotation.setFilename(filename);
+            // open input file
+            DataInputStream in = new DataInputStream(new FileInputStream(filename));
+            br = new BufferedReader(new InputStreamReader(in, Charset.forName("UTF-8")));
+            conversion = new LiuAnnotation.Conversion(filename, useType4, tokenizerCache);
 
-         // open output file (sentences)
-         FileWriter fstream1 = new FileWriter(sentencesOutputFilename);
-         outSentences = new BufferedWriter(fstream1);
+            // open output file (sentences)
+            FileWriter fstream1 = new FileWriter(sentencesOutputFilename);
+            outSentences = new BufferedWriter(fstream1);
 
-         // open output file (annotations)
-         FileWriter fstream2 = new FileWriter(annotationsOutputFilename);
-         outAnnotations = new BufferedWriter(fstream2);
+            // open output file (annotations)
+            FileWriter fstream2 = new FileWriter(annotationsOutputFilename);
+            outAnnotations = new BufferedWriter(fstream2);
 
-         // open output file (debug)
-         if (debugoutput) {
-            FileWriter fstream3 = new FileWriter(sentencesOutputFilename + ".debug");
-            outDebug = new BufferedWriter(fstream3);
+            // open output file (debug)
+            if (debugoutput) {
+               FileWriter fstream3 = new FileWriter(sentencesOutputFilename + ".debug");
+               outDebug = new BufferedWriter(fstream3);
+            }
+
+         } catch (Exception e) {
+            System.err.println("ERROR !!! in initialization: " + e);
+            e.printStackTrace();
+            throw new StageFailedException("Error in initialization");
          }
 
-      } catch (Exception e) {
-         System.err.println("ERROR !!! in initialization: " + e);
-         e.printStackTrace();
-         System.exit(1);
-      }
 
 
+         // ===== PROCESSING =====
 
-      // ===== PROCESSING =====
+         // Read all lines, the file is small enough (~10000 lines)
+         List<String> lines = new ArrayList<String>();
+         try {
+            String strLine;
+            while ((strLine = br.readLine()) != null) {
+               lines.add(strLine);
+            }
+         } catch (IOException e) {
+            System.err.println("ERROR !!! while reading input file: " + e);
+            e.printStackTrace();
+            throw new StageFailedException("Error while reading input file");
+         }
 
+         // Split into chunks at record boundaries and convert them in parallel
+         List<int[]> chunks = findChunks(lines, chunkLines);
+         System.out.println("Convert " + lines.size() + " lines in " + chunks.size() + " chunks with " + numThreads + " threads.");
 
-      // Bookkeeping
-      String strLine = "asdf";
-      boolean inComparativeSentence = false;
-      boolean afterStars = false;
-      int comparatives = 0;
-      int comparativesFound = 0;
-      int ignoreLines = 0;
-      int lineno = 0;
-      int totalsentences = 0;
-      int errorNo = 0;
-      int[] types = new int[5];
-      LiuAnnotation thisLineAnnotation = null;
+         ChunkResult result = new ChunkResult();
+         if (!chunks.isEmpty()) {
+            try {
+               result = WorkerPool.getPool(options).invoke(new ChunkTask(lines, chunks, 0, chunks.size(), conversion));
+            } catch (RuntimeException e) {
+               System.err.println("ERROR !!! while converting annotations: " + e);
+               e.printStackTrace();
+               throw new StageFailedException("Error while converting annotations");
+            } finally {
+               WorkerPool.shutdown();
+            }
+         }
 
-      // TEST !!!
-      // todo: adapt to repaired file!
-      // reviews -> 0 .. 5366
-      // forums -> 5405 .. 6896
-      // forums -> 8522 .. 10397
-      // news -> 5367 .. 5405
-      // news -> 6897 .. 8521
-      // tokenized roughly until 8524
-      // total 10403
-      int min = 0;
-      int max = 10403;
 
+         // Write all sentences and annotations in original order
+         int errorNo = result.errorNo;
+         int comparativesFound = 0;
+         for (int k=0; k<result.annotations.size(); k++) {
+            SentenceAnnotation thisSentenceAnnotation = result.annotations.get(k);
+            thisSentenceAnnotation.setId(result.ids.get(k) + "");
+            comparativesFound++;
 
-      while (strLine != null) {
+            try {
+               outSentences.write(thisSentenceAnnotation.getSentence());
+               outSentences.newLine();
+            } catch (IOException e) {
+               System.err.println("ERROR !!! while writing sentence to file: " + e);
+               System.err.println("in sentence " + thisSentenceAnnotation.getSentence());
+               errorNo++;
+               continue;
+               // TODO what is the best error handling here?
+            }
 
-         try {
-            strLine = br.readLine();
-         } catch (IOException e1) {
-            // TODO Auto-generated catch block
-            e1.printStackTrace();
+            // Write annotation to annotation file
+            try {
+               outAnnotations.write(thisSentenceAnnotation.toString());
+               outAnnotations.newLine();
+            } catch (IOException e) {
+               System.err.println("ERROR !!! while writing annotation to file: " + e);
+               System.err.println("in sentence " + thisSentenceAnnotation.getSentence());
+               errorNo++;
+               continue;
+               // TODO what is the best error handling here?
+            }
          }
-         if (strLine == null)
-            break;
 
-         strLine = strLine.trim();
-         lineno++;
+         if (debugoutput) {
+            try {
+               for (String debugLine : result.debugLines) {
+                  outDebug.write(debugLine);
+                  outDebug.newLine();
+               }
+            } catch (IOException e) {
+               // TODO Auto-generated catch block
+               e.printStackTrace();
+            }
+         }
 
-         // TEST !!!
-         if (lineno < min) {
-            continue;
+
+         // ===== CLEANUP =====
+
+         // The important statistics
+         System.out.println("number of errors (see System.err): " + errorNo);
+         System.out.println("number of predicate annotations not found: " + conversion.getPredicatesNotFound());
+         System.out.println("number of argument annotations not found: " + conversion.getArgumentsNotFound());
+
+         System.out.println("total sentences: " + result.totalsentences);
+         System.out.println("total non-comparatives: " + (result.totalsentences - result.comparatives));
+         System.out.println("total comparatives to be found: " + result.comparatives);
+         System.out.println("total comparatives found: " + comparativesFound);
+         System.out.println("types: " + Arrays.toString(result.types));
+         if (tokenizerCache != null) {
+            tokenizerCache.printStatistics();
          }
-         if (lineno == min) {
-            //System.out.println(strLine);
+
+         ModelRegistry.printStatistics();
+         System.out.println("done.");
+
+         return result.totalsentences;
+
+      } finally {
+         // Do some cleanup
+         Fileutils.closeSilently(br);
+         Fileutils.closeSilently(outSentences);
+         Fileutils.closeSilently(outAnnotations);
+         Fileutils.closeSilently(outDebug);
+      }
+   }
+
+
+
+   /**
+    * Split the lines into chunks of about 'chunkLines' lines.
+    * A chunk only ends at a safe record boundary, i.e., after
+    * the annotation lines that follow a '</cs-N>' or after a non-annotated line,
+    * and never inside a heading.
+    * This mirrors the state changes in processChunk.
+    *
+    * @return List of [first line, last line + 1]
+    */
+   static List<int[]> findChunks(List<String> lines, int chunkLines) {
+      List<int[]> chunks = new ArrayList<int[]>();
+
+      boolean inComparativeSentence = false;
+      boolean afterStars = false;
+      int ignoreLines = 0;
+      int start = 0;
+
+      for (int lineno=0; lineno<lines.size(); lineno++) {
+         String strLine = lines.get(lineno).trim();
+
+         if (!strLine.equals("")) {
+            if (isStarLine(strLine)) {
+               afterStars = !afterStars;
+            } else if (!afterStars) {
+               if (ignoreLines > 0 && !inComparativeSentence) {
+                  ignoreLines--;
+               } else if (!inComparativeSentence) {
+                  LiuAnnotation annotation = getAnnotation(strLine);
+                  if (annotation.isAnnotation) {
+                     ignoreLines = annotation.linesToIgnore;
+                     inComparativeSentence = true;
+                  }
+               } else if (recognizeAnnotationEnd(strLine)) {
+                  inComparativeSentence = false;
+               }
+            }
          }
-         if (lineno > max) {
-            //System.out.println(strLine);
-            break;
+
+         if (lineno + 1 - start >= chunkLines
+               && !afterStars && !inComparativeSentence && ignoreLines == 0) {
+            chunks.add(new int[] {start, lineno + 1});
+            start = lineno + 1;
          }
+      }
+
+      if (start < lines.size()) {
+         chunks.add(new int[] {start, lines.size()});
+      }
+
+      return chunks;
+   }
+
+
+
+   /**
+    * Convert the lines [from, to) which start and end at a record boundary.
+    * Sentence ids are local to the chunk (starting at 1),
+    * they are reconciled when the chunk results are combined.
+    */
+   static ChunkResult processChunk(List<String> lines, int from, int to, LiuAnnotation.Conversion conversion) {
+
+      ChunkResult result = new ChunkResult();
+      // Tokenizer (Stanford) of the current worker thread
+      Tokenizer tokenizer = ModelRegistry.getTokenizerPool().forCurrentThread();
+
+      // Bookkeeping
+      boolean inComparativeSentence = false;
+      boolean afterStars = false;
+      int ignoreLines = 0;
+      LiuAnnotation thisLineAnnotation = null;
+
+      for (int lineno=from; lineno<to; lineno++) {
+
+         String strLine = lines.get(lineno).trim();
 
          // Skip empty lines
          if (strLine.equals("")) {
@@ -197,68 +357,28 @@ public class LiuConverter {
          // Format:
          // 1_this player 2_ipod 3_sound ()
          if (ignoreLines > 0 && !inComparativeSentence) {
-            //System.out.println (lineno + ": " + "ignore (after annotation): " + strLine);
-
-            errorNo += thisLineAnnotation.addEntities(strLine, thisLineAnnotation.linesToIgnore - ignoreLines);
+            result.errorNo += thisLineAnnotation.addEntities(strLine, thisLineAnnotation.linesToIgnore - ignoreLines);
             ignoreLines--;
-
             continue;
          }
 
 
-         // Write completed annotation to files
+         // Convert completed annotation
          if (!inComparativeSentence && thisLineAnnotation != null && thisLineAnnotation.toWrite) {
-
-            if (thisLineAnnotation.types.size() > 0) {
-
-               SentenceAnnotation thisSentenceAnnotation = thisLineAnnotation.convertToSentenceAnnotation();
-
-               if (thisSentenceAnnotation != null) {
-                  comparativesFound++;
-
-                  try {
-                     outSentences.write(thisSentenceAnnotation.getSentence());
-                     outSentences.newLine();
-                     outSentences.flush();
-                  } catch (IOException e) {
-                     System.err.println("ERROR !!! while writing sentence to file: " + e);
-                     System.err.println("in sentence " + thisSentenceAnnotation.getSentence());
-                     errorNo++;
-                     continue;
-                     // TODO what is the best error handling here?
-                  }
-
-                  // Write annotation to annotation file
-                  try {
-                     outAnnotations.write(thisSentenceAnnotation.toString());
-                     outAnnotations.newLine();
-                     outAnnotations.flush();
-                  } catch (IOException e) {
-                     System.err.println("ERROR !!! while writing annotation to file: " + e);
-                     System.err.println("annotation " + thisLineAnnotation);
-                     System.err.println("in sentence " + thisSentenceAnnotation.getSentence());
-                     errorNo++;
-                     continue;
-                     // TODO what is the best error handling here?
-                  }
-               }
-            }
-
-            thisLineAnnotation.toWrite = false;
+            convertCompleted(thisLineAnnotation, tokenizer, conversion, result);
          }
 
          // Recognize start of annotation for comparative sentence
          if (!inComparativeSentence) {
             thisLineAnnotation = getAnnotation(strLine);
             if (thisLineAnnotation.isAnnotation) {
-               //System.out.println ("lineno + ": " + ignore (annotation start): " + strLine + " " + ignoreLines);
                ignoreLines = thisLineAnnotation.linesToIgnore;
                thisLineAnnotation.toWrite = true;
                for (Integer type: thisLineAnnotation.types) {
-                  types[type]++;
+                  result.types[type]++;
                }
                inComparativeSentence = true;
-               types[0]++;
+               result.types[0]++;
                continue;
             }
 
@@ -276,56 +396,131 @@ public class LiuConverter {
 
          // ===== CONTENT SENTENCES =====
 
-         // Count comparative sentences and write to file
+         // Count comparative sentences
          if (inComparativeSentence) {
             // Add sentence to annotation
             thisLineAnnotation.sentence = strLine;
-            // sanity check & debug
 
             if (thisLineAnnotation.types.size() > 0) {
-               comparatives++;
+               result.comparatives++;
             }
          }
-         totalsentences++;
+         result.totalsentences++;
 
          if (debugoutput) {
-            try {
-               if (thisLineAnnotation.types.size() > 0) {
-                  outDebug.write("1\t" + strLine);
-               } else {
-                  outDebug.write("0\t" + strLine);
-               }
-               outDebug.newLine();
-
-            } catch (IOException e) {
-               // TODO Auto-generated catch block
-               e.printStackTrace();
+            if (thisLineAnnotation.types.size() > 0) {
+               result.debugLines.add("1\t" + strLine);
+            } else {
+               result.debugLines.add("0\t" + strLine);
             }
          }
 
       }
 
+      // The chunk ends at a record boundary,
+      // so the last annotation is complete.
+      if (thisLineAnnotation != null && thisLineAnnotation.toWrite) {
+         convertCompleted(thisLineAnnotation, tokenizer, conversion, result);
+      }
+
+      return result;
+   }
+
+
+
+   /**
+    * Convert a completed annotation and add it to the chunk result.
+    */
+   private static void convertCompleted(LiuAnnotation thisLineAnnotation, Tokenizer tokenizer,
+         LiuAnnotation.Conversion conversion, ChunkResult result) {
+
+      if (thisLineAnnotation.types.size() > 0) {
+         result.conversions++;
+         SentenceAnnotation thisSentenceAnnotation = thisLineAnnotation.convertToSentenceAnnotation(result.conversions, tokenizer, conversion);
+         if (thisSentenceAnnotation != null) {
+            result.annotations.add(thisSentenceAnnotation);
+            result.ids.add(result.conversions);
+         }
+      }
+
+      thisLineAnnotation.toWrite = false;
+   }
+
+
+
+   /**
+    * Converted annotations and statistics of one or several adjacent chunks.
+    */
+   static class ChunkResult {
+      List<SentenceAnnotation> annotations = new ArrayList<SentenceAnnotation>();
+      List<Integer> ids = new ArrayList<Integer>();
+      List<String> debugLines = new ArrayList<String>();
+      int conversions = 0;
+      int comparatives = 0;
+      int totalsentences = 0;
+      int errorNo = 0;
+      int[] types = new int[5];
 
-      // ===== CLEANUP =====
+      /**
+       * Append the result of the chunk(s) directly following this one.
+       * Ids of the appended annotations are shifted by the number of
+       * conversions in this result, so ids stay sequential.
+       */
+      void append(ChunkResult next) {
+         this.annotations.addAll(next.annotations);
+         for (Integer id : next.ids) {
+            this.ids.add(id + this.conversions);
+         }
+         this.debugLines.addAll(next.debugLines);
+         this.conversions += next.conversions;
+         this.comparatives += next.comparatives;
+         this.totalsentences += next.totalsentences;
+         this.errorNo += next.errorNo;
+         for (int i=0; i<this.types.length; i++) {
+            this.types[i] += next.types[i];
+         }
+      }
+   }
 
-      // The important statistics
-      System.out.println("number of errors (see System.err): " + errorNo);
-      System.out.println("number of predicate annotations not found: " + LiuAnnotation.getPredicatesNotFound());
-      System.out.println("number of argument annotations not found: " + LiuAnnotation.getArgumentsNotFound());
 
-      System.out.println("total sentences: " + totalsentences);
-      System.out.println("total non-comparatives: " + (totalsentences - comparatives));
-      System.out.println("total comparatives to be found: " + comparatives);
-      System.out.println("total comparatives found: " + comparativesFound);
-      System.out.println("types: " + Arrays.toString(types));
 
-      // Do some cleanup
-      Fileutils.closeSilently(br);
-      Fileutils.closeSilently(outSentences);
-      Fileutils.closeSilently(outAnnotations);
-      Fileutils.closeSilently(outDebug);
-      System.out.println("done.");
+   /**
+    * Converts the chunks [first, last) by splitting them in half
+    * until only one chunk is left.
+    */
+   @SuppressWarnings("serial")
+   static class ChunkTask extends RecursiveTask<ChunkResult> {
+
+      private List<String> lines;
+      private List<int[]> chunks;
+      private int first;
+      private int last;
+      private LiuAnnotation.Conversion conversion;
+
+      ChunkTask(List<String> lines, List<int[]> chunks, int first, int last, LiuAnnotation.Conversion conversion) {
+         this.lines = lines;
+         this.chunks = chunks;
+         this.first = first;
+         this.last = last;
+         this.conversion = conversion;
+      }
+
+      @Override
+      protected ChunkResult compute() {
+         if (last - first == 1) {
+            int[] chunk = chunks.get(first);
+            return processChunk(lines, chunk[0], chunk[1], conversion);
+         }
 
+         int middle = (first + last) / 2;
+         ChunkTask left = new ChunkTask(lines, chunks, first, middle, conversion);
+         ChunkTask right = new ChunkTask(lines, chunks, middle, last, conversion);
+         left.fork();
+         ChunkResult rightResult = right.compute();
+         ChunkResult leftResult = left.join();
+         leftResult.append(rightResult);
+         return leftResult;
+      }
    }
 
 
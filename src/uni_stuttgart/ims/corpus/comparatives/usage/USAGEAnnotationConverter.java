@@ -14,6 +14,7 @@ import de.uni_stuttgart.ims.corpus.compannotation.ComparisonAnnotation;
 import de.uni_stuttgart.ims.corpus.compannotation.ComparisonAnnotationToken;
 import de.uni_stuttgart.ims.corpus.compannotation.SentenceAnnotation;
 import de.uni_stuttgart.ims.corpus.util.PredicateNotFoundException;
+import de.uni_stuttgart.ims.corpus.util.TokenReplacementRules;
 import de.uni_stuttgart.ims.nlpbase.nlp.PredicateType;
 import de.uni_stuttgart.ims.nlpbase.tools.TextSpan;
 import de.uni_stuttgart.ims.nlpbase.tools.Tokenizer;
@@ -50,14 +51,19 @@ public class USAGEAnnotationConverter {
    private Tokenizer tokenizer;
 
    /**
-    * Global counter of predicates not found.
+    * Replacements for tokens the parser cannot treat.
     */
-   private static int predicatesNotFound = 0;
+   private TokenReplacementRules replacements = TokenReplacementRules.getDefault();
 
    /**
-    * Global counter of arguments not found.
+    * Counter of predicates not found.
     */
-   private static int argumentsNotFound = 0;
+   private int predicatesNotFound = 0;
+
+   /**
+    * Counter of arguments not found.
+    */
+   private int argumentsNotFound = 0;
 
 
    /**
@@ -155,6 +161,14 @@ public class USAGEAnnotationConverter {
       this.tokenizer = tokenizer;
    }
 
+   /**
+    * Replacements for tokens in the written sentences
+    * (default: the built-in rules).
+    */
+   public void setReplacementRules(TokenReplacementRules replacements) {
+      this.replacements = replacements;
+   }
+
 
    // ===== GETTER =====
 
@@ -419,7 +433,7 @@ public class USAGEAnnotationConverter {
          String out = "";
          for (int i=0; i<tokenSpans.length; i++) {
             String token = tokenSpans[i].coveredText;
-            token = token.replaceAll("=", "eq");
+            token = replacements.apply(token);
             out = out + " " + token;
          }
          out = out.trim();
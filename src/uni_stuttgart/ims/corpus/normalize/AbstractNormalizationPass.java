@@ -0,0 +1,53 @@
+// (c) Wiltrud Kessler
+// 19.10.2026
+// This code is distributed under a Creative Commons
+// Attribution-NonCommercial-ShareAlike 3.0 Unported license
+// http://creativecommons.org/licenses/by-nc-sa/3.0/
+
+package de.uni_stuttgart.ims.corpus.normalize;
+
+import java.util.List;
+
+import de.uni_stuttgart.ims.corpus.compannotation.ImmutableComparisonAnnotation;
+
+
+/**
+ * Normalization pass that does nothing,
+ * subclasses override what they need.
+ *
+ * @author kesslewd
+ *
+ */
+public abstract class AbstractNormalizationPass implements NormalizationPass {
+
+   @Override
+   public void prepareBatch (List<NormalizationContext> batch) {
+   }
+
+   @Override
+   public void startSentence (NormalizationContext context) {
+   }
+
+   @Override
+   public void processToken (NormalizationContext context, int i) {
+   }
+
+   @Override
+   public void endSentence (NormalizationContext context) {
+   }
+
+   @Override
+   public ImmutableComparisonAnnotation processAnnotation (NormalizationContext context,
+         ImmutableComparisonAnnotation annotation) {
+      return annotation;
+   }
+
+   @Override
+   public void addStatistics (NormalizationPass other) {
+   }
+
+   @Override
+   public void printStatistics () {
+   }
+
+}
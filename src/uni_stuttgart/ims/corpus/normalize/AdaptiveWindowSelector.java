@@ -0,0 +1,75 @@
+// (c) Wiltrud Kessler
+// 19.10.2026
+// This code is distributed under a Creative Commons
+// Attribution-NonCommercial-ShareAlike 3.0 Unported license
+// http://creativecommons.org/licenses/by-nc-sa/3.0/
+
+package de.uni_stuttgart.ims.corpus.normalize;
+
+import de.uni_stuttgart.ims.corpus.compannotation.SentenceAnnotation;
+
+
+/**
+ * Keep as little of a long sentence as possible, parsing time
+ * grows faster than sentence length.
+ *
+ * Sentences longer than minLength are cut to the smallest window that
+ * covers all annotated tokens (predicates and all arguments) plus
+ * margin tokens on each side. The window is never longer than
+ * the token limit, if the annotated tokens do not fit,
+ * the window starts at the first annotated token.
+ * Sentences without annotated tokens are only cut if they are longer
+ * than the token limit.
+ *
+ * @author kesslewd
+ *
+ */
+public class AdaptiveWindowSelector implements WindowSelector {
+
+   private int tokenlimit;
+   private int margin;
+   private int minLength;
+
+
+   /**
+    * @param tokenlimit Maximum length of the window.
+    * @param margin Number of tokens kept before and after the annotated tokens.
+    * @param minLength Sentences up to this length are never cut.
+    */
+   public AdaptiveWindowSelector (int tokenlimit, int margin, int minLength) {
+      this.tokenlimit = tokenlimit;
+      this.margin = margin;
+      this.minLength = minLength;
+   }
+
+
+   @Override
+   public int getTokenLimit () {
+      return this.tokenlimit;
+   }
+
+
+   @Override
+   public int[] getWindow (SentenceAnnotation annotation, int sentenceLength) {
+      // remember counting of tokens starts at 1!!
+
+      if (sentenceLength <= minLength) {
+         return new int[] {1, sentenceLength};
+      }
+
+      int[] span = LengthNormalizer.getAnnotatedSpan(annotation, true);
+      if (span[0] < 1 || span[1] < 1) { // nothing annotated
+         return new int[] {1, Math.min(sentenceLength, tokenlimit)};
+      }
+
+      int startIndex = Math.max(1, span[0] - margin);
+      int endIndex = Math.min(sentenceLength, span[1] + margin);
+      if (endIndex - startIndex + 1 > tokenlimit) {
+         startIndex = Math.min(span[0], Math.max(1, sentenceLength - tokenlimit + 1));
+         endIndex = Math.min(startIndex + tokenlimit - 1, sentenceLength);
+      }
+
+      return new int[] {startIndex, endIndex};
+   }
+
+}
@@ -6,15 +6,16 @@
 
 package de.uni_stuttgart.ims.corpus.normalize;
 
-import java.io.IOException;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 
 import de.uni_stuttgart.ims.corpus.compannotation.ComparisonAnnotation;
 import de.uni_stuttgart.ims.corpus.compannotation.ComparisonAnnotationToken;
+import de.uni_stuttgart.ims.corpus.compannotation.ImmutableComparisonAnnotation;
+import de.uni_stuttgart.ims.corpus.util.ModelRegistry;
+import de.uni_stuttgart.ims.nlpbase.nlp.ArgumentType;
 import de.uni_stuttgart.ims.nlpbase.tools.POSTagger;
-import de.uni_stuttgart.ims.nlpbase.tools.POSTaggerStanford;
 
 /**
  * Normalization for annotations, especially regarding multiword-predicates.
@@ -26,6 +27,18 @@ public class AnnotationNormalizer {
 
    private POSTagger taggy = null;
 
+   /**
+    * Optional persistent cache for POS tags, shared by all normalizers of a run.
+    */
+   private POSTagCache posTagCache = null;
+
+   /**
+    * Analysis of the last sentence if called with tokens,
+    * all comparisons of a sentence are normalized with the same token array.
+    */
+   private TokenAnalysis lastAnalysis = null;
+   private int taggedSentences = 0;
+
    private HashMap<String, Integer> exchangedCount = new HashMap<String, Integer>();
    private int reorder = 0;
    private int addSentiment = 0;
@@ -33,17 +46,77 @@ public class AnnotationNormalizer {
 
 
    public AnnotationNormalizer() {
-      try {
-         taggy = new POSTaggerStanford();
-      } catch (IOException e) {
-         e.printStackTrace();
+   }
+
+
+   /**
+    * @param posTagCache may be null.
+    */
+   public AnnotationNormalizer(POSTagCache posTagCache) {
+      this.posTagCache = posTagCache;
+   }
+
+
+
+   /**
+    * Get POS tags from the cache or the tagger,
+    * the tagger is only loaded when it is first needed.
+    * TokenAnalysis makes sure this is called only once per sentence.
+    */
+   private POSTagger lazyTagger = new POSTagger() {
+      @Override
+      public String[] getPOSTags(String[] tokens) {
+         return tag(tokens);
       }
+   };
+
+   private String[] tag(String[] tokens) {
+      String[] result = null;
+      if (posTagCache != null) {
+         result = posTagCache.getTags(tokens);
+      }
+      if (result == null) {
+         if (taggy == null) { // one tagger per thread, shared by all normalizers of the thread
+            taggy = ModelRegistry.getPOSTaggerPool().forCurrentThread();
+         }
+         result = taggy.getPOSTags(tokens);
+         taggedSentences++;
+         if (posTagCache != null && result != null) {
+            posTagCache.putTags(tokens, result);
+         }
+      }
+      return result;
    }
 
 
 
+   /**
+    * The token array of a sentence must not be changed between calls.
+    */
    public void splitPredicate(ComparisonAnnotation annotation,
          String[] tokens) {
+      if (lastAnalysis == null || lastAnalysis.getTokens() != tokens) {
+         lastAnalysis = new TokenAnalysis(tokens);
+      }
+      splitPredicate(annotation, lastAnalysis);
+   }
+
+
+
+   public void splitPredicate(ComparisonAnnotation annotation,
+         TokenAnalysis analysis) {
+      annotation.restore(splitPredicate(annotation.freeze(), analysis));
+   }
+
+
+
+   /**
+    * Split multiword predicate, return the changed version.
+    */
+   public ImmutableComparisonAnnotation splitPredicate(ImmutableComparisonAnnotation annotation,
+         TokenAnalysis analysis) {
+
+      String[] tokens = analysis.getTokens();
 
       ComparisonAnnotationToken[] pred = annotation.getPredicate();
 
@@ -52,10 +125,10 @@ public class AnnotationNormalizer {
          // only happens with 'as'
          if (pred[0].word.equals("as")
                && pred[pred.length - 1].word.equals("as")) {
-            annotation
-                  .addSentiment(Arrays.copyOfRange(pred, 1, pred.length - 1));
+            annotation = annotation.withArgumentAdded(ArgumentType.sentiment,
+                  Arrays.copyOfRange(pred, 1, pred.length - 1));
             addSentiment++;
-            annotation.setPredicate(pred[0]);
+            annotation = annotation.withPredicate(pred[0]);
             splitPredicate++;
          }
 
@@ -85,10 +158,10 @@ public class AnnotationNormalizer {
             // aspect: degree of choice
             if (aspect[0].tokenNumber == tokenid) {
                if (aspect.length > 1) {
-                  annotation.removeAspect();
                   addSentiment++;
                   aspect = Arrays.copyOfRange(aspect, 1, aspect.length);
-                  annotation.addAspect(aspect);
+                  annotation = annotation.withoutArgument(ArgumentType.aspect)
+                        .withArgumentAdded(ArgumentType.aspect, aspect);
                } else {
                   aspect = null; // don't need to proceed any further
                }
@@ -106,11 +179,9 @@ public class AnnotationNormalizer {
                // -> annotate
                if (aspect[0].tokenNumber == tokenid + 1
                      || aspect[0].tokenNumber == tokenid + 2) {
-                  annotation.removeAspect();
-                  annotation.addSentiment(aspect);
+                  annotation = annotation.withoutArgument(ArgumentType.aspect)
+                        .withArgumentAdded(ArgumentType.sentiment, aspect);
                   addSentiment++;
-                  // System.out.println(" -> " + Arrays.toString(pred) + " sent
-                  // " + Arrays.toString(annotation.getSentiment().get(0)));
 
                   // Annotated aspect is word before predicate
                   // this is the 'as' after the aspect
@@ -120,7 +191,7 @@ public class AnnotationNormalizer {
                } else if (aspect[0].tokenNumber == tokenid - 1) {
                   int index = 0;
                   for (int j = 3; tokenid - j > 0; j++) {
-                     if (tokens[tokenid - j].equalsIgnoreCase("as")) {
+                     if (analysis.getLowerForm(tokenid - j).equals("as")) {
                         index = tokenid - j;
                         break;
                      }
@@ -128,22 +199,14 @@ public class AnnotationNormalizer {
                   // found second as? - index != 0
                   // this fails in one case "as complete a [solution]A [as]P"
                   if (index != 0) {
-                     annotation.removeAspect();
-                     annotation.addSentiment(aspect);
+                     annotation = annotation.withoutArgument(ArgumentType.aspect)
+                           .withArgumentAdded(ArgumentType.sentiment, aspect)
+                           .withPredicate(new ComparisonAnnotationToken(
+                                 tokens[index], index + 1));
                      addSentiment++;
-                     annotation.setPredicate(new ComparisonAnnotationToken(
-                           tokens[index], index + 1));
-                     // System.out.println("added " + (index+1) + " " +
-                     // tokens[index] + " " + Arrays.toString(aspect) + " " +
-                     // Arrays.toString(pred));
-                     // System.out.println(" -> " +
-                     // Arrays.toString(annotation.getPredicate()) + " sent " +
-                     // Arrays.toString(annotation.getSentiment().get(0)));
 
                   } // else {
                     // we just leave the rest, no sentiment left in JDPA
-                    // System.out.println(index + " " + tokens[index] + " " +
-                    // Arrays.toString(aspect) + " " + Arrays.toString(pred));
                     // }
                }
 
@@ -160,11 +223,11 @@ public class AnnotationNormalizer {
 
             if (aspect != null && aspect[0].tokenNumber == tokenid + 1) {
 
-               String[] result = taggy.getPOSTags(tokens);
+               String[] result = analysis.getPOSTags(lazyTagger);
 
                if (result[tokenid].equals("JJ")) {
-                  annotation.removeAspect();
-                  annotation.addSentiment(aspect);
+                  annotation = annotation.withoutArgument(ArgumentType.aspect)
+                        .withArgumentAdded(ArgumentType.sentiment, aspect);
                   addSentiment++;
                } else {
                }
@@ -174,10 +237,20 @@ public class AnnotationNormalizer {
 
       }
 
+      return annotation;
    }
 
 
    public void changePredicate(ComparisonAnnotation annotation) {
+      annotation.restore(changePredicate(annotation.freeze()));
+   }
+
+
+   /**
+    * Annotate the (first) sentiment as predicate,
+    * return the changed version.
+    */
+   public ImmutableComparisonAnnotation changePredicate(ImmutableComparisonAnnotation annotation) {
       List<ComparisonAnnotationToken[]> sentimentlist2 = annotation
             .getSentiment();
       if (!sentimentlist2.isEmpty()) {
@@ -187,8 +260,29 @@ public class AnnotationNormalizer {
             exchangedCount.put(annotation.getPredicateString(), 1);
          else
             exchangedCount.put(annotation.getPredicateString(), count + 1);
-         annotation.setPredicate(sentimentlist2.get(0));
+         annotation = annotation.withPredicate(sentimentlist2.get(0));
+      }
+      return annotation;
+   }
+
+
+
+   /**
+    * Add the statistics of another normalizer to this one
+    * (each thread has its own normalizer).
+    */
+   public void addStatistics(AnnotationNormalizer other) {
+      for (String key : other.exchangedCount.keySet()) {
+         Integer count = exchangedCount.get(key);
+         if (count == null)
+            exchangedCount.put(key, other.exchangedCount.get(key));
+         else
+            exchangedCount.put(key, count + other.exchangedCount.get(key));
       }
+      reorder += other.reorder;
+      addSentiment += other.addSentiment;
+      splitPredicate += other.splitPredicate;
+      taggedSentences += other.taggedSentences;
    }
 
 
@@ -205,6 +299,7 @@ public class AnnotationNormalizer {
       System.out.println("reordered: " + reorder + "\n");
       System.out.println("addSentiment: " + addSentiment + "\n");
       System.out.println("splitPredicate: " + splitPredicate + "\n");
+      System.out.println("POS tagged sentences: " + taggedSentences + "\n");
 
    }
 
@@ -0,0 +1,94 @@
+// (c) Wiltrud Kessler
+// 19.10.2026
+// This code is distributed under a Creative Commons
+// Attribution-NonCommercial-ShareAlike 3.0 Unported license
+// http://creativecommons.org/licenses/by-nc-sa/3.0/
+
+package de.uni_stuttgart.ims.corpus.normalize;
+
+import de.uni_stuttgart.ims.corpus.compannotation.SentenceAnnotation;
+
+
+/**
+ * Sentences longer than the token limit are cut to this
+ * length, try to pick out the part that contains the annotations
+ * (predicates, entities, aspects), centered around it.
+ * Shorter sentences are kept completely.
+ *
+ * @author kesslewd
+ *
+ */
+public class FixedWindowSelector implements WindowSelector {
+
+   private int tokenlimit;
+
+
+   /**
+    * Cut after LengthNormalizer.DEFAULT_TOKEN_LIMIT tokens.
+    */
+   public FixedWindowSelector () {
+      this(LengthNormalizer.DEFAULT_TOKEN_LIMIT);
+   }
+
+   public FixedWindowSelector (int tokenlimit) {
+      this.tokenlimit = tokenlimit;
+   }
+
+
+   @Override
+   public int getTokenLimit () {
+      return this.tokenlimit;
+   }
+
+
+   @Override
+   public int[] getWindow (SentenceAnnotation thisAnnotation, int thisSentenceTokenLength) {
+      // remember counting of tokens starts at 1!!
+
+      // Long sentences are cut off after tokenlimit tokens.
+      if (thisSentenceTokenLength <= tokenlimit) {
+         return new int[] {1, thisSentenceTokenLength};
+      }
+
+      // we have more than tokenlimit tokens
+
+      // no annotation
+      if (thisAnnotation == null) {
+         return new int[] {1, tokenlimit};
+      }
+
+
+      // look at annotation
+      // Get min/max token numbers for all preds and args in the sentence
+      int[] span = LengthNormalizer.getAnnotatedSpan(thisAnnotation, false);
+      int minIndex = (span[0] > 0) ? span[0] : thisSentenceTokenLength;
+      int maxIndex = (span[1] > 0) ? span[1] : 1;
+
+
+      int startIndex = minIndex;
+      int endIndex = maxIndex;
+      int nowLength = (maxIndex - minIndex);
+      if (nowLength > tokenlimit) {
+         // We still have more than tokenlimit tokens - take the first ones
+         startIndex = minIndex;
+         endIndex = Math.min(minIndex + tokenlimit - 1, thisSentenceTokenLength);
+      } else {
+         int addon = (tokenlimit - nowLength) / 2;
+         if (minIndex - addon < 0) {
+            startIndex = 1;
+            endIndex = tokenlimit;
+         } else if (maxIndex + addon > thisSentenceTokenLength) {
+            endIndex = thisSentenceTokenLength;
+            startIndex = endIndex - tokenlimit;
+         } else {
+            startIndex = Math.max(minIndex - addon, 1);
+            endIndex =  Math.min(maxIndex + addon, thisSentenceTokenLength);
+         }
+      }
+
+
+      return new int[] {startIndex, endIndex};
+
+   }
+
+}
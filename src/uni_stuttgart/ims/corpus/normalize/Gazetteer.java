@@ -0,0 +1,184 @@
+// (c) Wiltrud Kessler
+// 19.10.2026
+// This code is distributed under a Creative Commons
+// Attribution-NonCommercial-ShareAlike 3.0 Unported license
+// http://creativecommons.org/licenses/by-nc-sa/3.0/
+
+package de.uni_stuttgart.ims.corpus.normalize;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import de.uni_stuttgart.ims.corpus.util.PhraseMatcher;
+import de.uni_stuttgart.ims.corpus.util.SentenceTokenIndex;
+import de.uni_stuttgart.ims.util.Fileutils;
+
+
+/**
+ * List of names (brands, models, ...) with their labels.
+ * Entries may consist of several tokens, case is ignored.
+ *
+ * All entries are found with one left-to-right pass over the sentence
+ * (token trie with failure links), the cost does not depend on the
+ * number of entries.
+ *
+ * File format: one entry per line, tokens separated by ' ',
+ * optionally followed by \t and the label (default: PRODUCT).
+ * Lines starting with '#' are ignored.
+ *
+ * Once built, a gazetteer can be used by several threads.
+ *
+ * @author kesslewd
+ *
+ */
+public class Gazetteer {
+
+   public static String defaultLabel = NERHeuristic.labelBrand;
+
+   /**
+    * Brands of the TV domain, used if no files are given.
+    */
+   static final String[] defaultEntries = new String[] {
+      "Sony", "Samsung", "Bravia", "Panasonic", "Loewe", "Freeview", "Philips", "Toshiba"};
+
+   private PhraseMatcher matcher = new PhraseMatcher(false);
+   private List<String> labels = new ArrayList<String>();
+
+
+   /**
+    * Orders matches by start, longer matches first.
+    */
+   private static Comparator<int[]> leftmostLongest = new Comparator<int[]>() {
+      @Override
+      public int compare(int[] o1, int[] o2) {
+         if (o1[0] != o2[0]) {
+            return o1[0] - o2[0];
+         }
+         return o2[1] - o1[1];
+      }
+   };
+
+
+
+   /**
+    * Create empty gazetteer.
+    */
+   public Gazetteer() {
+   }
+
+
+   /**
+    * Gazetteer with the default entries.
+    */
+   public static Gazetteer getDefaultGazetteer() {
+      Gazetteer gazetteer = new Gazetteer();
+      for (String entry : defaultEntries) {
+         gazetteer.addEntry(entry, defaultLabel);
+      }
+      gazetteer.build();
+      return gazetteer;
+   }
+
+
+   /**
+    * Gazetteer with the entries of all files.
+    */
+   public static Gazetteer readGazetteer(String[] filenames) throws IOException {
+      Gazetteer gazetteer = new Gazetteer();
+      for (String filename : filenames) {
+         gazetteer.readFile(filename);
+      }
+      gazetteer.build();
+      return gazetteer;
+   }
+
+
+
+   public void readFile(String filename) throws IOException {
+      BufferedReader in = Fileutils.getReadFile(filename);
+      try {
+         String strLine;
+         while ((strLine = in.readLine()) != null) {
+            if (strLine.trim().isEmpty() || strLine.startsWith("#")) {
+               continue;
+            }
+            String[] parts = strLine.split("\t");
+            String label = defaultLabel;
+            if (parts.length > 1 && !parts[1].trim().isEmpty()) {
+               label = parts[1].trim();
+            }
+            addEntry(parts[0], label);
+         }
+      } finally {
+         Fileutils.closeSilently(in);
+      }
+   }
+
+
+   public void addEntry(String entry, String label) {
+      String[] tokens = entry.trim().split("\\s+");
+      if (tokens.length == 0 || tokens[0].isEmpty()) {
+         return;
+      }
+      matcher.addPhrase(tokens);
+      labels.add(label);
+   }
+
+
+   /**
+    * Number of entries.
+    */
+   public int size() {
+      return labels.size();
+   }
+
+
+   /**
+    * Prepare for searching, needs to be done before the gazetteer
+    * is shared by several threads.
+    */
+   public void build() {
+      matcher.build();
+   }
+
+
+
+   /**
+    * Get the label for every token that is part of an entry, null otherwise.
+    * Overlapping entries: the leftmost and then the longest one wins.
+    */
+   public String[] getLabels(String[] tokens) {
+      return getLabels(new SentenceTokenIndex(tokens));
+   }
+
+
+   public String[] getLabels(SentenceTokenIndex sentence) {
+      String[] result = new String[sentence.length()];
+
+      List<int[]> matches = matcher.findMatches(sentence);
+      if (matches.isEmpty()) {
+         return result;
+      }
+      if (matches.size() > 1) {
+         Collections.sort(matches, leftmostLongest);
+      }
+
+      int covered = 0;
+      for (int[] match : matches) {
+         if (match[0] < covered) { // overlaps with a previous entry
+            continue;
+         }
+         String label = labels.get(match[2]);
+         for (int i=match[0]; i<match[1]; i++) {
+            result[i] = label;
+         }
+         covered = match[1];
+      }
+      return result;
+   }
+
+}
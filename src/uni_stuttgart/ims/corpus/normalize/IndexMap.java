@@ -0,0 +1,146 @@
+// (c) Wiltrud Kessler
+// 19.10.2026
+// This code is distributed under a Creative Commons
+// Attribution-NonCommercial-ShareAlike 3.0 Unported license
+// http://creativecommons.org/licenses/by-nc-sa/3.0/
+
+package de.uni_stuttgart.ims.corpus.normalize;
+
+import java.util.Arrays;
+
+
+/**
+ * Maps the token indices of the original sentence to the indices
+ * in the normalized sentence, and optionally to a replacement form.
+ * Token indices as given by parser/annotation start at 1,
+ * index 0 is there, but not used.
+ *
+ * Deleted tokens have the index DELETED.
+ *
+ * The arrays are reused for the next sentence (see reset),
+ * so one map per thread is enough.
+ *
+ * @author kesslewd
+ *
+ */
+public class IndexMap {
+
+   /**
+    * Not -1: tokens before the length window can get negative indices.
+    */
+   public static final int DELETED = Integer.MIN_VALUE;
+
+   private int[] indices = new int[0];
+   private String[] replacements = new String[0];
+   private int size = 0;
+
+
+
+   /**
+    * Empty map, call reset before using it.
+    */
+   public IndexMap() {
+   }
+
+
+   public IndexMap(int numberOfTokens) {
+      reset(numberOfTokens);
+   }
+
+
+   /**
+    * Initialize map for a sentence with this number of tokens:
+    * every token is mapped to itself and has no replacement.
+    */
+   public void reset(int numberOfTokens) {
+      this.size = numberOfTokens + 1;
+      if (this.indices.length < this.size) {
+         int capacity = Math.max(this.size, 2 * this.indices.length);
+         this.indices = new int[capacity];
+         this.replacements = new String[capacity];
+      } else {
+         Arrays.fill(this.replacements, 0, this.size, null);
+      }
+      for (int i=0; i<this.size; i++) {
+         this.indices[i] = i;
+      }
+   }
+
+
+   /**
+    * Number of tokens + 1 (index 0).
+    */
+   public int size() {
+      return this.size;
+   }
+
+
+   public int get(int i) {
+      checkIndex(i);
+      return this.indices[i];
+   }
+
+   public void set(int i, int newIndex) {
+      checkIndex(i);
+      this.indices[i] = newIndex;
+   }
+
+   public boolean isDeleted(int i) {
+      return get(i) == DELETED;
+   }
+
+   /**
+    * Delete token and its replacement.
+    */
+   public void delete(int i) {
+      checkIndex(i);
+      this.indices[i] = DELETED;
+      this.replacements[i] = null;
+   }
+
+
+   /**
+    * Replacement for the token, null if it is not replaced.
+    */
+   public String getReplacement(int i) {
+      checkIndex(i);
+      return this.replacements[i];
+   }
+
+   public void setReplacement(int i, String replacement) {
+      checkIndex(i);
+      this.replacements[i] = replacement;
+   }
+
+
+
+   /**
+    * Indices, deleted tokens as null.
+    */
+   public String indicesToString() {
+      StringBuilder str = new StringBuilder("[");
+      for (int i=0; i<this.size; i++) {
+         if (i > 0) {
+            str.append(", ");
+         }
+         str.append((this.indices[i] == DELETED) ? "null" : String.valueOf(this.indices[i]));
+      }
+      return str.append(']').toString();
+   }
+
+   public String replacementsToString() {
+      return Arrays.toString(Arrays.copyOf(this.replacements, this.size));
+   }
+
+
+
+   /**
+    * The arrays may be larger than the current sentence.
+    */
+   private void checkIndex(int i) {
+      if (i < 0 || i >= this.size) {
+         throw new ArrayIndexOutOfBoundsException(i);
+      }
+   }
+
+}
@@ -7,138 +7,83 @@
 
 package de.uni_stuttgart.ims.corpus.normalize;
 
-import java.util.Iterator;
-
-import de.uni_stuttgart.ims.corpus.compannotation.ComparisonAnnotation;
 import de.uni_stuttgart.ims.corpus.compannotation.SentenceAnnotation;
 
 
 /**
  * Sentence normalization:
- * Long sentences are cut off after 150 tokens, try to pick out the
- * part that contains the annotations.
+ * Long sentences are cut, only a window of the sentence is kept.
+ * The WindowSelector decides which part, by default sentences are
+ * cut off after 150 tokens and the part that contains the annotations
+ * is picked out (FixedWindowSelector).
  *
  * @author kesslewd
  *
  */
 public class LengthNormalizer {
 
-   public static int tokenlimit = 150;
-
+   public static final int DEFAULT_TOKEN_LIMIT = 150;
 
-   public static int[] getStartEnd (SentenceAnnotation thisAnnotation, int thisSentenceTokenLength) {
-      // remember counting of tokens starts at 1!!
-
-      // Long sentences are cut off after 150 tokens.
-      if (thisSentenceTokenLength <= LengthNormalizer.tokenlimit) {
-         return new int[] {1, thisSentenceTokenLength};
-      }
 
-      // we have more than 150 tokens
 
-      // no annotation
+   /**
+    * Get min/max token numbers for all preds and args (sentiment only
+    * if withSentiment) of all comparisons in the sentence,
+    * -1 if there are none or there is no annotation.
+    */
+   public static int[] getAnnotatedSpan (SentenceAnnotation thisAnnotation, boolean withSentiment) {
       if (thisAnnotation == null) {
-         return new int[] {1, 150};
+         return new int[] {-1, -1};
       }
+      return new int[] {thisAnnotation.getFirstToken(withSentiment), thisAnnotation.getLastToken(withSentiment)};
+   }
 
 
-      // look at annotation
-      int minIndex = thisSentenceTokenLength;
-      int maxIndex = 1;
-
-      Iterator<ComparisonAnnotation> itty = thisAnnotation.getComparisonAnnotationsIterator();
-
-      // Get min/max token numbers for all preds and args in the sentence
-      int[] startend;
-      while (itty.hasNext()) {
-         ComparisonAnnotation annotation = itty.next();
-
-         // pred
-         startend = ComparisonAnnotation.getMinMaxIndex(annotation.getPredicate());
-         if (startend[0] > 0 && startend[0] < minIndex) {
-            minIndex = startend[0];
-         }
-         if (startend[1] > 0 && startend[1] > maxIndex) {
-            maxIndex = startend[1];
-         }
-
-         // entity1
-         startend = ComparisonAnnotation.getMinMaxIndex(annotation.getEntity1());
-         if (startend[0] > 0 && startend[0] < minIndex) {
-            minIndex = startend[0];
-         }
-         if (startend[1] > 0 && startend[1] > maxIndex) {
-            maxIndex = startend[1];
-         }
-
-         // entity2
-         startend = ComparisonAnnotation.getMinMaxIndex(annotation.getEntity2());
-         if (startend[0] > 0 && startend[0] < minIndex) {
-            minIndex = startend[0];
-         }
-         if (startend[1] > 0 && startend[1] > maxIndex) {
-            maxIndex = startend[1];
-         }
 
-         // aspect
-         startend = ComparisonAnnotation.getMinMaxIndex(annotation.getAspect());
-         if (startend[0] > 0 && startend[0] < minIndex) {
-            minIndex = startend[0];
-         }
-         if (startend[1] > 0 && startend[1] > maxIndex) {
-            maxIndex = startend[1];
+   public static void adjustReplacementIndices (int startIndex, int endIndex,
+         IndexMap indexMap) {
+
+      // tokens deleted before the window (e.g., merged by NER)
+      // have already been subtracted from the indices
+      int deletedBefore = 0;
+      for (int i=1; i<startIndex && i<indexMap.size(); i++) {
+         if (indexMap.isDeleted(i)) {
+            deletedBefore++;
          }
-
       }
 
-
-      int startIndex = minIndex;
-      int endIndex = maxIndex;
-      int nowLength = (maxIndex - minIndex);
-      if (nowLength > tokenlimit) {
-         // We still have more than 150 tokens - take the first 150
-         startIndex = minIndex;
-         endIndex = Math.min(minIndex + tokenlimit - 1, thisSentenceTokenLength);
-      } else {
-         int addon = (tokenlimit - nowLength) / 2;
-         if (minIndex - addon < 0) {
-            startIndex = 1;
-            endIndex = tokenlimit;
-         } else if (maxIndex + addon > thisSentenceTokenLength) {
-            endIndex = thisSentenceTokenLength;
-            startIndex = endIndex - tokenlimit;
-         } else {
-            startIndex = Math.max(minIndex - addon, 1);
-            endIndex =  Math.min(maxIndex + addon, thisSentenceTokenLength);
-         }
+      for (int i=0; i<indexMap.size(); i++) {
+         adjustReplacementIndex(i, startIndex, endIndex, startIndex - 1 - deletedBefore, indexMap);
       }
 
-
-      return new int[] {startIndex, endIndex};
-
    }
 
 
+   /**
+    * Delete token i if it is outside of the window,
+    * otherwise move it to the position in the window
+    * (assumes no tokens before the window have been deleted).
+    */
+   public static void adjustReplacementIndex (int i, int startIndex, int endIndex,
+         IndexMap indexMap) {
+      adjustReplacementIndex(i, startIndex, endIndex, startIndex - 1, indexMap);
+   }
 
-   public static void adjustReplacementIndices (int startIndex, int endIndex,
-         Integer[] newIndices, String[] replacements) {
 
-      for (int i=0; i<startIndex; i++) {
-         newIndices[i] = null;
-         replacements[i] = null;
-      }
+   /**
+    * Delete token i if it is outside of the window,
+    * otherwise move it to the position in the window.
+    *
+    * @param offset Number of tokens before the window that have not been deleted.
+    */
+   public static void adjustReplacementIndex (int i, int startIndex, int endIndex,
+         int offset, IndexMap indexMap) {
 
-      for (int i=startIndex; i<=endIndex; i++) {
-         if (newIndices[i] != null) {
-            newIndices[i] = newIndices[i] - startIndex+1;
-         }
+      if (i < startIndex || i > endIndex) {
+         indexMap.delete(i);
+      } else if (!indexMap.isDeleted(i)) {
+         indexMap.set(i, indexMap.get(i) - offset);
       }
-
-      for (int i=endIndex+1; i<newIndices.length; i++) {
-         newIndices[i] = null;
-         replacements[i] = null;
-      }
-
    }
 
 
@@ -10,6 +10,7 @@ import java.io.StringReader;
 import java.util.ArrayList;
 import java.util.List;
 
+import de.uni_stuttgart.ims.corpus.util.ModelRegistry;
 import edu.stanford.nlp.ie.AbstractSequenceClassifier;
 import edu.stanford.nlp.ie.crf.CRFClassifier;
 import edu.stanford.nlp.ling.CoreAnnotations;
@@ -21,22 +22,41 @@ import edu.stanford.nlp.process.WhitespaceTokenizer;
  * Named Entity Recognizer to be used by NERNormalizer.
  *
  * Users Standford NER.
+ * The classifier is loaded once per model file and shared by all
+ * instances and threads (see ModelRegistry), classification does not change it.
  *
  * @author kesslewd
  *
  */
-public class NER {
+public class NER implements NERBackend {
 
-   private String serializedClassifier = "../models/ner-model.ser.gz";
+   public static String defaultModel = "../models/ner-model.ser.gz";
 
    private AbstractSequenceClassifier<CoreLabel> classifier;
 
 
    public NER () {
-      classifier = CRFClassifier.getClassifierNoExceptions(serializedClassifier);
+      this(defaultModel);
    }
 
 
+   public NER (String serializedClassifier) {
+      classifier = getClassifier(serializedClassifier);
+   }
+
+
+   private static AbstractSequenceClassifier<CoreLabel> getClassifier (final String serializedClassifier) {
+      return ModelRegistry.getShared("NER " + serializedClassifier,
+            new ModelRegistry.Loader<AbstractSequenceClassifier<CoreLabel>>() {
+         @Override
+         public AbstractSequenceClassifier<CoreLabel> load() {
+            return CRFClassifier.getClassifierNoExceptions(serializedClassifier);
+         }
+      });
+   }
+
+
+
    public List<List<String>> getNamedEntities (String sentence) {
 
       List<List<String>> foundEntities = new ArrayList<List<String>>();
@@ -64,10 +84,48 @@ public class NER {
       StringReader reader=new StringReader(sentence);
       WhitespaceTokenizer<CoreLabel> ptbt = WhitespaceTokenizer.newCoreLabelWhitespaceTokenizer(reader);
 
-      List<CoreLabel> asfd = ptbt.tokenize();
-      String[] labels = new String[asfd.size()];
+      return classify(ptbt.tokenize());
+   }
+
+
+
+   /**
+    * Labels for already tokenized sentence, tokens are used as they are.
+    */
+   @Override
+   public String[] getLabels (String[] tokens) {
+      List<CoreLabel> sentence = new ArrayList<CoreLabel>(tokens.length);
+      for (String token : tokens) {
+         CoreLabel cl = new CoreLabel();
+         cl.setWord(token);
+         cl.setValue(token);
+         cl.setOriginalText(token);
+         sentence.add(cl);
+      }
+      return classify(sentence);
+   }
+
+
+   /**
+    * Labels for several tokenized sentences.
+    * Sentences are classified independently, to use several threads
+    * give each thread its own batch.
+    */
+   @Override
+   public List<String[]> getLabels (List<TokenAnalysis> sentences) {
+      List<String[]> result = new ArrayList<String[]>(sentences.size());
+      for (TokenAnalysis analysis : sentences) {
+         result.add(getLabels(analysis.getTokens()));
+      }
+      return result;
+   }
+
+
+
+   private String[] classify (List<CoreLabel> sentence) {
+      String[] labels = new String[sentence.size()];
 
-      List<CoreLabel> resultNER = classifier.classify(asfd);
+      List<CoreLabel> resultNER = classifier.classify(sentence);
       int i=0;
       for (CoreLabel cl : resultNER) {
          String label = cl.get(CoreAnnotations.AnswerAnnotation.class);
@@ -0,0 +1,34 @@
+// (c) Wiltrud Kessler
+// 19.10.2026
+// This code is distributed under a Creative Commons
+// Attribution-NonCommercial-ShareAlike 3.0 Unported license
+// http://creativecommons.org/licenses/by-nc-sa/3.0/
+
+package de.uni_stuttgart.ims.corpus.normalize;
+
+import java.util.List;
+
+
+/**
+ * Named Entity Recognizer to be used by NERNormalizer.
+ *
+ * Implementations get tokenized sentences and must be usable
+ * from several threads at the same time.
+ *
+ * @author kesslewd
+ *
+ */
+public interface NERBackend {
+
+   /**
+    * Get the label for every token, null if the token is no named entity.
+    */
+   public String[] getLabels (String[] tokens);
+
+   /**
+    * Get the labels for several analyzed sentences at once,
+    * result has the same order as the input.
+    */
+   public List<String[]> getLabels (List<TokenAnalysis> sentences);
+
+}
@@ -7,21 +7,64 @@
 
 package de.uni_stuttgart.ims.corpus.normalize;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
 /**
  * Named Entity Recognizer to be used by NERNormalizer.
  *
  * Heuristics for Named Entity detection in the domain of cameras.
+ * Brands and other known names are taken from a gazetteer.
  *
  * @author kesslewd
  *
  */
-public class NERHeuristic {
+public class NERHeuristic implements NERBackend {
 
 
    static final String labelBrand = "PRODUCT";
    static final String labelProduct = "PRODUCT";
    static final String labelModel = "PRODUCT";
 
+   private static final Set<String> determiners = new HashSet<String>(Arrays.asList(
+         new String[] {"the", "a", "an", "my", "this"}));
+
+   private Gazetteer gazetteer;
+
+
+
+   /**
+    * Use the default gazetteer (TV brands).
+    */
+   public NERHeuristic () {
+      this(Gazetteer.getDefaultGazetteer());
+   }
+
+
+   public NERHeuristic (Gazetteer gazetteer) {
+      this.gazetteer = gazetteer;
+   }
+
+
+
+   @Override
+   public String[] getLabels (String[] tokens) {
+      return getHeuristicLabels(tokens);
+   }
+
+
+   @Override
+   public List<String[]> getLabels (List<TokenAnalysis> sentences) {
+      List<String[]> result = new ArrayList<String[]>(sentences.size());
+      for (TokenAnalysis analysis : sentences) {
+         result.add(getHeuristicLabels(analysis));
+      }
+      return result;
+   }
+
 
 
    public String[] getHeuristicLabels (String sentence) {
@@ -30,41 +73,49 @@ public class NERHeuristic {
    }
 
 
+   public String[] getHeuristicLabels (String[] words) {
+      return getHeuristicLabels(new TokenAnalysis(words));
+   }
+
+
 
-  public String[] getHeuristicLabels (String[] words) {
-      String[] labels = new String[words.length];
+   public String[] getHeuristicLabels (TokenAnalysis analysis) {
+      int length = analysis.length();
+      String[] labels = new String[length];
+      String[] gazetteerLabels = gazetteer.getLabels(analysis.getIndex());
 
       boolean lastDet = false;
       boolean lastCapitalized = false;
 
-      for (int i=0; i<words.length; i++) {
-         String word = words[i];
+      for (int i=0; i<length; i++) {
 
          boolean thisIsDet = false;
          boolean thisCapitalized = false;
 
 
-         if (isDet(word))
+         if (determiners.contains(analysis.getLowerForm(i)))
             thisIsDet = true;
-         if (isCapitalized(word))
+         if (analysis.is(i, TokenAnalysis.CAPITALIZED))
             thisCapitalized = true;
 
+         boolean isNumber = analysis.is(i, TokenAnalysis.NUMBER);
 
-         if (lastDet & (isAllUpper(word) || isNumber(word) || thisCapitalized)) {
+
+         if (lastDet & (analysis.is(i, TokenAnalysis.ALL_UPPER) || isNumber || thisCapitalized)) {
             // do this before next!! otherwise The X -> PRODUCT
             labels[i] = labelProduct;  // TODO my 5 year old
          } else
 
-         if (lastCapitalized & (isNumber(word) || thisCapitalized)) {
+         if (lastCapitalized & (isNumber || thisCapitalized)) {
             labels[i-1] = labelProduct;
             labels[i] = labelProduct;
          } else
 
-         if (isBrand(word)) {
-            labels[i] = labelBrand;
+         if (gazetteerLabels[i] != null) {
+            labels[i] = gazetteerLabels[i];
          } else
 
-         if (isModelName(word)) {
+         if (analysis.is(i, TokenAnalysis.HAS_DIGIT | TokenAnalysis.HAS_LETTER)) { // model name
             labels[i] = labelModel;
          }
 
@@ -78,101 +129,4 @@ public class NERHeuristic {
    }
 
 
-   private boolean isCapitalized(String form) {
-
-      if (form.equalsIgnoreCase("I"))
-         return false;
-
-      char firstLetter = form.charAt(0);
-      return Character.isUpperCase(firstLetter);
-   }
-
-
-   private boolean isModelName(String form) {
-
-      boolean hasDigit = false;
-      boolean hasLetter = false;
-
-      for (Character letter : form.toCharArray()) {
-         if (Character.isDigit(letter)) {
-            hasDigit = true;
-         }
-
-         if (Character.isLetter(letter)) {
-            hasLetter = true;
-         }
-      }
-
-      return hasDigit & hasLetter;
-   }
-
-
-   private boolean isDet(String form) {
-      if (form.equalsIgnoreCase("the"))
-         return true;
-      if (form.equalsIgnoreCase("a"))
-         return true;
-      if (form.equalsIgnoreCase("an"))
-         return true;
-      if (form.equalsIgnoreCase("my"))
-         return true;
-      if (form.equalsIgnoreCase("this"))
-         return true;
-
-      return false;
-
-   }
-
-
-   private boolean isAllUpper(String form) {
-
-      if (form.equalsIgnoreCase("I"))
-         return false;
-
-      for (Character letter : form.toCharArray()) {
-         if (!Character.isLetter(letter))
-            return false;
-         if (Character.isLowerCase(letter))
-            return false;
-      }
-      return true;
-
-   }
-
-
-   private boolean isNumber(String form) {
-
-      for (Character letter : form.toCharArray()) {
-         if (!Character.isDigit(letter))
-            return false;
-      }
-      return true;
-
-   }
-
-
-   private boolean isBrand(String form) {
-
-      if (form.equalsIgnoreCase("Sony"))
-         return true;
-      if (form.equalsIgnoreCase("Samsung"))
-         return true;
-      if (form.equalsIgnoreCase("Bravia"))
-         return true;
-      if (form.equalsIgnoreCase("Panasonic"))
-         return true;
-      if (form.equalsIgnoreCase("Loewe"))
-         return true;
-      if (form.equalsIgnoreCase("Freeview"))
-         return true;
-      if (form.equalsIgnoreCase("Philips"))
-         return true;
-      if (form.equalsIgnoreCase("Toshiba"))
-         return true;
-
-      return false;
-
-   }
-
-
 }
@@ -7,6 +7,8 @@
 
 package de.uni_stuttgart.ims.corpus.normalize;
 
+import java.util.List;
+
 
 /**
  * Do Named Entity recognition and replace all found entities
@@ -20,54 +22,99 @@ public class NERNormalizer {
    private int haveDeleted = 0;
    private int haveNE = 0;
 
-   private NERHeuristic nerClassifier;
+   private NERBackend nerClassifier;
+
+   // Merging token by token, the last label and the number
+   // of already merged tokens are kept until the next sentence starts.
+   private String lastLabel = "O";
+   private int del = 0;
 
 
    public NERNormalizer() {
-      this.nerClassifier = new NERHeuristic();
+      this(new NERHeuristic());
+   }
+
+
+   public NERNormalizer(NERBackend nerClassifier) {
+      this.nerClassifier = nerClassifier;
+   }
+
+
+   /**
+    * Get labels for several sentences at once,
+    * to be used with doNormalize(tokens, labels, ...).
+    */
+   public List<String[]> getLabels (List<TokenAnalysis> sentences) {
+      return nerClassifier.getLabels(sentences);
    }
 
 
-   public void doNormalize (String[] tokens, Integer[] newIndices, String[] replacements) {
+   public void doNormalize (String[] tokens, IndexMap indexMap) {
+      doNormalize(tokens, nerClassifier.getLabels(tokens), indexMap);
+   }
+
 
-      // Get new positions / replacements
-      String lastLabel = "O";
-      int del = 0;
-      int i=1; // start from 1, leave 0 empty
+   /**
+    * Merge tokens with the given labels.
+    */
+   public void doNormalize (String[] tokens, String[] labels, IndexMap indexMap) {
 
-      String[] labels = nerClassifier.getHeuristicLabels(tokens);
+      startSentence();
 
       // Go through all tokens / labels from the NER classification
-      for (String thisLabel : labels) { // sentences
-
-         if (!(thisLabel == null) && !thisLabel.equals("O")) {
-
-            // We have a named entity
-            haveNE ++;
-
-            if (thisLabel.equals(lastLabel)) {
-               // Two things with the same label -> merge,
-               // i.e., this token will be deleted.
-               newIndices[i] = null;
-               del += 1;
-               haveDeleted ++;
-            } else {
-               // Replace by NER label in sentence.
-               // No merging, just normal offset.
-               replacements[i] = thisLabel.toUpperCase();
-               newIndices[i] = newIndices[i]-del;
-            }
+      // start from 1, leave 0 empty
+      for (int i=1; i<=labels.length; i++) {
+         normalizeToken(i, labels[i-1], indexMap);
+      }
+
+   }
+
+
+   public void startSentence () {
+      lastLabel = "O";
+      del = 0;
+   }
+
+
+   /**
+    * Get new position / replacement for token i (starting at 1).
+    */
+   public void normalizeToken (int i, String thisLabel, IndexMap indexMap) {
+
+      if (!(thisLabel == null) && !thisLabel.equals("O")) {
+
+         // We have a named entity
+         haveNE ++;
+
+         if (thisLabel.equals(lastLabel)) {
+            // Two things with the same label -> merge,
+            // i.e., this token will be deleted.
+            indexMap.set(i, IndexMap.DELETED);
+            del += 1;
+            haveDeleted ++;
          } else {
-            // This is no named entity, keep whatever we have ('newIndices[i]'),
-            // consider already merged things ('del') before this index.
-            newIndices[i] = newIndices[i]-del;
+            // Replace by NER label in sentence.
+            // No merging, just normal offset.
+            indexMap.setReplacement(i, thisLabel.toUpperCase());
+            indexMap.set(i, indexMap.get(i)-del);
          }
-         lastLabel = thisLabel;
-
-         i++;
+      } else {
+         // This is no named entity, keep whatever we have ('indexMap.get(i)'),
+         // consider already merged things ('del') before this index.
+         indexMap.set(i, indexMap.get(i)-del);
       }
+      lastLabel = thisLabel;
+
+   }
 
 
+   /**
+    * Add the statistics of another normalizer to this one
+    * (each thread has its own normalizer).
+    */
+   public void addStatistics (NERNormalizer other) {
+      haveDeleted += other.haveDeleted;
+      haveNE += other.haveNE;
    }
 
 
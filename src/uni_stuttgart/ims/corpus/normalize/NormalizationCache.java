@@ -0,0 +1,459 @@
+// (c) Wiltrud Kessler
+// 19.10.2026
+// This code is distributed under a Creative Commons
+// Attribution-NonCommercial-ShareAlike 3.0 Unported license
+// http://creativecommons.org/licenses/by-nc-sa/3.0/
+
+package de.uni_stuttgart.ims.corpus.normalize;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/**
+ * Persistent cache of normalized sentences and annotations, so that
+ * a rerun only normalizes input lines that have changed.
+ *
+ * The key is the SHA-1 hash of the settings (normalizer version and options),
+ * the sentence line and the annotation line, so results for other
+ * options or an older normalizer are never used.
+ *
+ * The cache file is append-only: header (magic, version), then for
+ * every entry the key (20 bytes), the length of the value and the value
+ * (sentence, annotation, warnings as length + UTF-8 bytes, annotation
+ * length -1 if there is none).
+ * When the cache is opened, the file is memory-mapped and only the
+ * offsets of the entries are kept in memory, values are decoded on a hit.
+ * New entries are appended to the file, also only their offsets are kept,
+ * they are read from the file (not the mapping) on a hit.
+ * An incomplete last entry (e.g., last run was killed) is cut off.
+ *
+ * The cache can be shared by several threads.
+ *
+ * @author kesslewd
+ *
+ */
+public class NormalizationCache {
+
+   private static final long MAGIC = 0x494d534e43414348L; // "IMSNCACH"
+   private static final int VERSION = 1;
+   private static final int HEADER_SIZE = 12;
+   private static final int KEY_SIZE = 20;
+   /** Offset of an entry that is being written. */
+   private static final long WRITING = -1;
+
+   private static final int SEGMENT_BITS = 30;
+   private static final long SEGMENT_SIZE = 1L << SEGMENT_BITS;
+
+   private static final Charset UTF8 = Charset.forName("UTF-8");
+
+   private RandomAccessFile file;
+   private FileChannel channel;
+   /** End of the file, new entries are written here. */
+   private long end;
+   /** End of the file when it was opened. */
+   private long openedEnd;
+   /** Entries added after close are not written (e.g., batches still running after a failure). */
+   private boolean closed = false;
+
+   /** Entries that were in the file when it was opened. */
+   private MappedByteBuffer[] segments = new MappedByteBuffer[0];
+   private long mappedEnd = 0;
+   /** Offsets of the values of all entries (also those added in this run). */
+   private ConcurrentHashMap<Key, Long> offsets = new ConcurrentHashMap<Key, Long>();
+
+   private AtomicLong hits = new AtomicLong(0);
+   private AtomicLong misses = new AtomicLong(0);
+   private AtomicLong savedBytes = new AtomicLong(0);
+
+   private static ThreadLocal<MessageDigest> digest = new ThreadLocal<MessageDigest>() {
+      @Override
+      protected MessageDigest initialValue() {
+         try {
+            return MessageDigest.getInstance("SHA-1");
+         } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+         }
+      }
+   };
+
+
+
+   /**
+    * Normalized sentence, normalized annotation (null if there is none)
+    * and the warnings printed while normalizing.
+    */
+   public static class Entry {
+      public final String sentence;
+      public final String annotation;
+      public final String warnings;
+
+      public Entry(String sentence, String annotation, String warnings) {
+         this.sentence = sentence;
+         this.annotation = annotation;
+         this.warnings = warnings;
+      }
+   }
+
+
+
+   /**
+    * Open cache, index all entries in the file (if it exists).
+    */
+   public NormalizationCache(String filename) throws IOException {
+
+      this.file = new RandomAccessFile(new File(filename), "rw");
+      this.channel = this.file.getChannel();
+      long length = this.channel.size();
+
+      if (length >= HEADER_SIZE && readHeader()) {
+         map(length);
+         this.end = scan(length);
+         // Everything after this is read from the file
+         this.mappedEnd = this.end;
+         if (this.end < length) {
+            System.out.println("Normalization cache " + filename + ": cut off incomplete entry at " + this.end);
+            this.channel.truncate(this.end);
+         }
+      } else {
+         if (length > 0) {
+            System.out.println("Normalization cache " + filename + ": unknown format, start new cache");
+         }
+         this.channel.truncate(0);
+         ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+         header.putLong(MAGIC);
+         header.putInt(VERSION);
+         header.flip();
+         writeFully(header, 0);
+         this.end = HEADER_SIZE;
+      }
+      this.openedEnd = this.end;
+      System.out.println("Normalization cache " + filename + ": " + this.offsets.size() + " entries");
+   }
+
+
+
+   /**
+    * Key for one input line, the settings must contain everything
+    * that changes the result (normalizer version, options).
+    * @param annotation may be null.
+    */
+   public static byte[] getKey(String settings, String sentence, String annotation) {
+      MessageDigest md = digest.get();
+      md.reset();
+      md.update(settings.getBytes(UTF8));
+      md.update((byte) 0);
+      md.update(sentence.getBytes(UTF8));
+      if (annotation != null) {
+         md.update((byte) 0);
+         md.update(annotation.getBytes(UTF8));
+      }
+      return md.digest();
+   }
+
+
+   /**
+    * Get cached result, null if it is not in the cache.
+    */
+   public Entry get(byte[] key) {
+      Long offset = this.offsets.get(new Key(key));
+      if (offset == null || offset == WRITING) {
+         return null;
+      }
+      try {
+         return readEntry(offset);
+      } catch (IOException e) {
+         if (!this.closed) {
+            System.err.println("ERROR !!! while reading normalization cache: " + e);
+         }
+         return null;
+      }
+   }
+
+
+   /**
+    * Add result, it is appended to the file.
+    */
+   public void put(byte[] key, Entry entry) {
+      Key thisKey = new Key(key);
+      if (this.offsets.putIfAbsent(thisKey, WRITING) != null) {
+         return; // another thread was faster
+      }
+
+      byte[] sentence = entry.sentence.getBytes(UTF8);
+      byte[] annotation = (entry.annotation == null) ? null : entry.annotation.getBytes(UTF8);
+      byte[] warnings = entry.warnings.getBytes(UTF8);
+      int valueLength = 12 + sentence.length + warnings.length + ((annotation == null) ? 0 : annotation.length);
+
+      ByteBuffer record = ByteBuffer.allocate(KEY_SIZE + 4 + valueLength);
+      record.put(key);
+      record.putInt(valueLength);
+      record.putInt(sentence.length);
+      record.put(sentence);
+      if (annotation == null) {
+         record.putInt(-1);
+      } else {
+         record.putInt(annotation.length);
+         record.put(annotation);
+      }
+      record.putInt(warnings.length);
+      record.put(warnings);
+      record.flip();
+
+      synchronized (this) {
+         if (this.closed) {
+            this.offsets.remove(thisKey);
+            return;
+         }
+         try {
+            long start = this.end;
+            writeFully(record, start);
+            this.end += record.limit();
+            this.offsets.put(thisKey, start + KEY_SIZE + 4);
+         } catch (IOException e) {
+            this.offsets.remove(thisKey);
+            System.err.println("ERROR !!! while writing normalization cache: " + e);
+         }
+      }
+   }
+
+
+
+   /**
+    * Count one input line for the statistics, the bytes of
+    * sentence and annotation (UTF-8) are saved if the line was in the cache.
+    * @param annotation may be null.
+    */
+   public void countLine(boolean hit, String sentence, String annotation) {
+      if (hit) {
+         this.hits.incrementAndGet();
+         this.savedBytes.addAndGet(utf8Length(sentence) + ((annotation == null) ? 0 : utf8Length(annotation)));
+      } else {
+         this.misses.incrementAndGet();
+      }
+   }
+
+
+   private static int utf8Length(String string) {
+      int length = 0;
+      for (int i=0; i<string.length(); i++) {
+         char c = string.charAt(i);
+         if (c < 0x80) {
+            length += 1;
+         } else if (c < 0x800) {
+            length += 2;
+         } else if (Character.isHighSurrogate(c)) {
+            length += 4;
+            i++;
+         } else {
+            length += 3;
+         }
+      }
+      return length;
+   }
+
+
+   public void printStatistics() {
+      long lines = this.hits.get() + this.misses.get();
+      System.out.println("Normalization cache: " + this.hits.get() + " hits, " + this.misses.get() + " misses"
+            + ((lines > 0) ? String.format(" (hit rate %.1f%%)", 100.0 * this.hits.get() / lines) : "")
+            + ", " + this.savedBytes.get() + " input bytes not normalized again, "
+            + this.offsets.size() + " entries");
+   }
+
+
+   public synchronized void close() {
+      this.closed = true;
+      try {
+         this.channel.force(false);
+      } catch (IOException e) {
+         System.err.println("ERROR !!! while writing normalization cache: " + e);
+      }
+      try {
+         this.file.close();
+      } catch (IOException e) {
+         // ignore
+      }
+      // Mapped buffers are released by the garbage collector
+   }
+
+
+   /**
+    * Close the cache without keeping the entries added since
+    * it was opened (e.g., the run failed).
+    */
+   public synchronized void discard() {
+      this.closed = true;
+      try {
+         this.channel.truncate(this.openedEnd);
+      } catch (IOException e) {
+         System.err.println("ERROR !!! while resetting normalization cache: " + e);
+      }
+      try {
+         this.file.close();
+      } catch (IOException e) {
+         // ignore
+      }
+   }
+
+
+
+   // ========== FILE ==========
+
+
+   private boolean readHeader() throws IOException {
+      ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+      while (header.hasRemaining()) {
+         if (this.channel.read(header, header.position()) < 0) {
+            return false;
+         }
+      }
+      header.flip();
+      return header.getLong() == MAGIC && header.getInt() == VERSION;
+   }
+
+
+   private void map(long length) throws IOException {
+      this.mappedEnd = length;
+      int numberOfSegments = (int) ((length + SEGMENT_SIZE - 1) / SEGMENT_SIZE);
+      this.segments = new MappedByteBuffer[numberOfSegments];
+      for (int i=0; i<numberOfSegments; i++) {
+         long segmentStart = i * SEGMENT_SIZE;
+         this.segments[i] = this.channel.map(FileChannel.MapMode.READ_ONLY,
+               segmentStart, Math.min(SEGMENT_SIZE, length - segmentStart));
+      }
+   }
+
+
+   /**
+    * Index all complete entries.
+    * @return end of the last complete entry.
+    */
+   private long scan(long length) throws IOException {
+      long pos = HEADER_SIZE;
+      while (pos + KEY_SIZE + 4 <= length) {
+         int valueLength = readInt(pos + KEY_SIZE);
+         long next = pos + KEY_SIZE + 4 + valueLength;
+         if (valueLength < 12 || next > length || !isComplete(pos + KEY_SIZE + 4, valueLength)) {
+            break;
+         }
+         this.offsets.put(new Key(readBytes(pos, KEY_SIZE)), pos + KEY_SIZE + 4);
+         pos = next;
+      }
+      return pos;
+   }
+
+
+   /**
+    * The lengths of sentence, annotation and warnings
+    * must add up to the length of the value.
+    */
+   private boolean isComplete(long pos, int valueLength) throws IOException {
+      int length = readInt(pos);
+      if (length < 0 || length > valueLength - 12) {
+         return false;
+      }
+      int used = 4 + length;
+      length = readInt(pos + used);
+      if (length < -1 || length > valueLength - 12 - (used - 4)) {
+         return false;
+      }
+      used += 4 + Math.max(length, 0);
+      length = readInt(pos + used);
+      return length >= 0 && used + 4 + length == valueLength;
+   }
+
+
+   private Entry readEntry(long pos) throws IOException {
+      int length = readInt(pos);
+      String sentence = new String(readBytes(pos + 4, length), UTF8);
+      pos += 4 + length;
+      length = readInt(pos);
+      String annotation = null;
+      if (length >= 0) {
+         annotation = new String(readBytes(pos + 4, length), UTF8);
+         pos += length;
+      }
+      pos += 4;
+      length = readInt(pos);
+      String warnings = new String(readBytes(pos + 4, length), UTF8);
+      return new Entry(sentence, annotation, warnings);
+   }
+
+
+   private int readInt(long pos) throws IOException {
+      return ByteBuffer.wrap(readBytes(pos, 4)).getInt();
+   }
+
+
+   /**
+    * Read from the mapped segments, may cross segment boundaries,
+    * entries added after the file was mapped are read from the file.
+    * Every call uses its own view of the buffers (thread-safe).
+    */
+   private byte[] readBytes(long pos, int length) throws IOException {
+      byte[] result = new byte[length];
+      if (pos >= this.mappedEnd) {
+         ByteBuffer buffer = ByteBuffer.wrap(result);
+         while (buffer.hasRemaining()) {
+            if (this.channel.read(buffer, pos + buffer.position()) < 0) {
+               throw new IOException("unexpected end of normalization cache at " + (pos + buffer.position()));
+            }
+         }
+         return result;
+      }
+      int done = 0;
+      while (done < length) {
+         long current = pos + done;
+         ByteBuffer segment = this.segments[(int) (current >>> SEGMENT_BITS)].duplicate();
+         segment.position((int) (current & (SEGMENT_SIZE - 1)));
+         int n = Math.min(length - done, segment.remaining());
+         segment.get(result, done, n);
+         done += n;
+      }
+      return result;
+   }
+
+
+   private void writeFully(ByteBuffer buffer, long pos) throws IOException {
+      while (buffer.hasRemaining()) {
+         pos += this.channel.write(buffer, pos);
+      }
+   }
+
+
+
+   /**
+    * SHA-1 hash as map key.
+    */
+   private static final class Key {
+      private final byte[] hash;
+      private final int hashCode;
+
+      Key(byte[] hash) {
+         this.hash = hash;
+         this.hashCode = Arrays.hashCode(hash);
+      }
+
+      @Override
+      public int hashCode() {
+         return this.hashCode;
+      }
+
+      @Override
+      public boolean equals(Object o) {
+         return (o instanceof Key) && Arrays.equals(this.hash, ((Key) o).hash);
+      }
+   }
+
+}
@@ -0,0 +1,129 @@
+// (c) Wiltrud Kessler
+// 19.10.2026
+// This code is distributed under a Creative Commons
+// Attribution-NonCommercial-ShareAlike 3.0 Unported license
+// http://creativecommons.org/licenses/by-nc-sa/3.0/
+
+package de.uni_stuttgart.ims.corpus.normalize;
+
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import de.uni_stuttgart.ims.corpus.compannotation.ComparisonAnnotation;
+import de.uni_stuttgart.ims.corpus.compannotation.ImmutableComparisonAnnotation;
+import de.uni_stuttgart.ims.corpus.compannotation.SentenceAnnotation;
+
+
+/**
+ * Everything the normalization passes know about the current sentence.
+ *
+ * @author kesslewd
+ *
+ */
+public class NormalizationContext {
+
+   private int lineno;
+   private String sentence;
+   private TokenAnalysis analysis;
+   private SentenceAnnotation annotation = null;
+   private List<ImmutableComparisonAnnotation> comparisons = null;
+   private IndexMap indexMap = null;
+   private String[] nerLabels = null;
+   private String normalizedSentence = null;
+   private PrintWriter warnings = null;
+
+
+
+   /**
+    * @param lineno Line number in the input, for messages.
+    * @param sentence Sentence as read from the input.
+    * @param analysis Tokens of the sentence.
+    */
+   public NormalizationContext(int lineno, String sentence, TokenAnalysis analysis) {
+      this.lineno = lineno;
+      this.sentence = sentence;
+      this.analysis = analysis;
+   }
+
+
+   public int getLineNumber() {
+      return this.lineno;
+   }
+
+   public String getSentence() {
+      return this.sentence;
+   }
+
+   public TokenAnalysis getAnalysis() {
+      return this.analysis;
+   }
+
+   public String[] getTokens() {
+      return this.analysis.getTokens();
+   }
+
+
+   /**
+    * Annotation of the sentence as read, null if there is none.
+    * It is not changed by the passes.
+    */
+   public SentenceAnnotation getAnnotation() {
+      return this.annotation;
+   }
+   public void setAnnotation(SentenceAnnotation annotation) {
+      this.annotation = annotation;
+      this.comparisons = null;
+   }
+
+   /**
+    * Comparisons of the annotation as read (frozen only once,
+    * in the order of the annotation), empty if there is no annotation.
+    */
+   public List<ImmutableComparisonAnnotation> getComparisons() {
+      if (this.comparisons == null) {
+         this.comparisons = new ArrayList<ImmutableComparisonAnnotation>();
+         if (this.annotation != null) {
+            Iterator<ComparisonAnnotation> itty = this.annotation.getComparisonAnnotationsIterator();
+            while (itty.hasNext()) {
+               this.comparisons.add(itty.next().freeze());
+            }
+         }
+      }
+      return this.comparisons;
+   }
+
+   public IndexMap getIndexMap() {
+      return this.indexMap;
+   }
+   public void setIndexMap(IndexMap indexMap) {
+      this.indexMap = indexMap;
+   }
+
+   public String[] getNERLabels() {
+      return this.nerLabels;
+   }
+   public void setNERLabels(String[] nerLabels) {
+      this.nerLabels = nerLabels;
+   }
+
+   public String getNormalizedSentence() {
+      return this.normalizedSentence;
+   }
+   public void setNormalizedSentence(String normalizedSentence) {
+      this.normalizedSentence = normalizedSentence;
+   }
+
+
+   /**
+    * Warnings for this sentence go here, they are printed when it is written.
+    */
+   public PrintWriter getWarnings() {
+      return this.warnings;
+   }
+   public void setWarnings(PrintWriter warnings) {
+      this.warnings = warnings;
+   }
+
+}
@@ -0,0 +1,64 @@
+// (c) Wiltrud Kessler
+// 19.10.2026
+// This code is distributed under a Creative Commons
+// Attribution-NonCommercial-ShareAlike 3.0 Unported license
+// http://creativecommons.org/licenses/by-nc-sa/3.0/
+
+package de.uni_stuttgart.ims.corpus.normalize;
+
+import java.util.List;
+
+import de.uni_stuttgart.ims.corpus.compannotation.ImmutableComparisonAnnotation;
+
+
+/**
+ * One normalization step, run by a NormalizationPipeline.
+ *
+ * For every sentence, the pipeline calls startSentence, then processToken
+ * for every token from left to right (all token passes see token i before
+ * any pass sees token i+1), then endSentence. Afterwards processAnnotation
+ * is called for every comparison of the sentence, every pass gets the
+ * version returned by the pass before.
+ *
+ * A pass may only change the index map at the current token (and at
+ * index 0 in startSentence), so that the token passes can share one scan.
+ *
+ * Passes belong to one pipeline and are used by one thread only.
+ * Extend AbstractNormalizationPass to implement only what is needed.
+ *
+ * @author kesslewd
+ *
+ */
+public interface NormalizationPass {
+
+   /**
+    * Called once for all sentences of a batch before they are normalized,
+    * e.g., to label them all at once.
+    */
+   public void prepareBatch (List<NormalizationContext> batch);
+
+   public void startSentence (NormalizationContext context);
+
+   /**
+    * @param i token index, starting at 1.
+    */
+   public void processToken (NormalizationContext context, int i);
+
+   public void endSentence (NormalizationContext context);
+
+   /**
+    * Called after the sentence has been normalized, the index map
+    * is complete.
+    * @return the changed version of the annotation (or the same if nothing changed).
+    */
+   public ImmutableComparisonAnnotation processAnnotation (NormalizationContext context,
+         ImmutableComparisonAnnotation annotation);
+
+   /**
+    * Add the statistics of the same pass of another pipeline (other thread).
+    */
+   public void addStatistics (NormalizationPass other);
+
+   public void printStatistics ();
+
+}
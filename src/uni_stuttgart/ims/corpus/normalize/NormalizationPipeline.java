@@ -0,0 +1,413 @@
+// (c) Wiltrud Kessler
+// 19.10.2026
+// This code is distributed under a Creative Commons
+// Attribution-NonCommercial-ShareAlike 3.0 Unported license
+// http://creativecommons.org/licenses/by-nc-sa/3.0/
+
+package de.uni_stuttgart.ims.corpus.normalize;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import de.uni_stuttgart.ims.corpus.compannotation.ComparisonAnnotation;
+import de.uni_stuttgart.ims.corpus.compannotation.ImmutableComparisonAnnotation;
+import de.uni_stuttgart.ims.corpus.util.TokenReplacementRules;
+
+
+/**
+ * Sequence of normalization passes.
+ *
+ * All token passes run in one left-to-right scan over the sentence
+ * that also builds the normalized sentence, so adding a pass does not
+ * add another walk over the tokens.
+ * Then the annotation passes run for every comparison. They work on
+ * frozen versions, so the annotation as read stays unchanged
+ * and can be shared by several pipelines (variants); if a pass fails,
+ * nothing has been changed.
+ *
+ * A pipeline is not thread-safe, every thread needs its own
+ * (see create), the statistics can be added up at the end.
+ *
+ * @author kesslewd
+ *
+ */
+public class NormalizationPipeline {
+
+   /**
+    * Change whenever the output of the normalization changes,
+    * results in the NormalizationCache from older versions are not used.
+    */
+   public static final int VERSION = 1;
+
+   private List<NormalizationPass> passes = new ArrayList<NormalizationPass>();
+
+   /** Reused for every sentence. */
+   private IndexMap indexMap = new IndexMap();
+
+
+
+   /**
+    * Empty pipeline, add passes with addPass.
+    */
+   public NormalizationPipeline() {
+   }
+
+
+   /**
+    * Create pipeline for these normalization options:
+    * - always: replace tokens the parser cannot treat, cut long sentences,
+    *   change token indices of the annotations
+    * - '-ner': merge Named Entities (before everything else)
+    * - '-splitPred': split multiword predicates
+    * - '-adj': annotate adjective instead of 'more' etc.
+    * The predicate pass is always there, so that its statistics
+    * are printed also without these options.
+    *
+    * @param nerBackend used for '-ner', shared.
+    * @param windowSelector Window of long sentences, shared.
+    * @param rules Token replacements, shared.
+    * @param posTagCache POS tags of earlier runs for '-splitPred', shared (may be null).
+    */
+   public static NormalizationPipeline create(List<String> normOptions, NERBackend nerBackend,
+         WindowSelector windowSelector, TokenReplacementRules rules, POSTagCache posTagCache) {
+      NormalizationPipeline pipeline = new NormalizationPipeline();
+
+      if (normOptions.contains("-ner")) {
+         pipeline.addPass(new NERPass(new NERNormalizer(nerBackend)));
+      }
+      pipeline.addPass(new ReplacementPass(rules));
+      pipeline.addPass(new LengthPass(windowSelector));
+      pipeline.addPass(new AnnotationConversionPass());
+
+      boolean splitPred = normOptions.contains("-splitPred");
+      boolean annotateAdjective = normOptions.contains("-adj");
+      pipeline.addPass(new PredicatePass(splitPred, annotateAdjective, posTagCache));
+      return pipeline;
+   }
+
+
+   public NormalizationPipeline addPass(NormalizationPass pass) {
+      this.passes.add(pass);
+      return this;
+   }
+
+   public List<NormalizationPass> getPasses() {
+      return this.passes;
+   }
+
+
+
+   public void prepareBatch(List<NormalizationContext> batch) {
+      for (NormalizationPass pass : this.passes) {
+         pass.prepareBatch(batch);
+      }
+   }
+
+
+   /**
+    * Run the token passes, set the normalized sentence
+    * and the index map of the context.
+    */
+   public void normalizeSentence(NormalizationContext context) {
+
+      String[] tokens = context.getTokens();
+
+      // Initialize indices, token indices as given by parser/annotation start at 1
+      // -> leave 0 empty
+      this.indexMap.reset(tokens.length);
+      context.setIndexMap(this.indexMap);
+
+      for (NormalizationPass pass : this.passes) {
+         pass.startSentence(context);
+      }
+
+      StringBuilder newSentence = new StringBuilder();
+      for (int i=1; i<=tokens.length; i++) {
+         for (NormalizationPass pass : this.passes) {
+            pass.processToken(context, i);
+         }
+         if (!this.indexMap.isDeleted(i)) {
+            String replacement = this.indexMap.getReplacement(i);
+            newSentence.append(' ');
+            newSentence.append((replacement != null) ? replacement : tokens[i - 1]);
+         }
+      }
+
+      for (NormalizationPass pass : this.passes) {
+         pass.endSentence(context);
+      }
+
+      context.setNormalizedSentence(newSentence.toString().trim());
+   }
+
+
+   /**
+    * Run the annotation passes for all comparisons of the sentence,
+    * all passes for one comparison before the next one.
+    * @return the normalized comparisons, same order as the annotation.
+    */
+   public List<ComparisonAnnotation> normalizeAnnotations(NormalizationContext context) {
+      List<ImmutableComparisonAnnotation> comparisons = context.getComparisons();
+      List<ComparisonAnnotation> result = new ArrayList<ComparisonAnnotation>(comparisons.size());
+      for (ImmutableComparisonAnnotation comparison : comparisons) {
+         for (NormalizationPass pass : this.passes) {
+            comparison = pass.processAnnotation(context, comparison);
+         }
+         result.add(comparison.thaw());
+      }
+      return result;
+   }
+
+
+
+   /**
+    * Add statistics of another pipeline with the same passes.
+    */
+   public void addStatistics(NormalizationPipeline other) {
+      for (int i=0; i<this.passes.size(); i++) {
+         this.passes.get(i).addStatistics(other.passes.get(i));
+      }
+   }
+
+   public void printStatistics() {
+      for (NormalizationPass pass : this.passes) {
+         pass.printStatistics();
+      }
+   }
+
+
+
+   // ========== PASSES ==========
+
+
+   /**
+    * Recognize Named Entities and combine them into a single token.
+    */
+   public static class NERPass extends AbstractNormalizationPass {
+
+      private NERNormalizer ner;
+
+      public NERPass(NERNormalizer ner) {
+         this.ner = ner;
+      }
+
+      /**
+       * Label all sentences of the batch at once,
+       * except those that already have labels (from another pipeline).
+       */
+      @Override
+      public void prepareBatch(List<NormalizationContext> batch) {
+         List<NormalizationContext> unlabeled = new ArrayList<NormalizationContext>(batch.size());
+         List<TokenAnalysis> analyses = new ArrayList<TokenAnalysis>(batch.size());
+         for (NormalizationContext context : batch) {
+            if (context.getNERLabels() == null) {
+               unlabeled.add(context);
+               analyses.add(context.getAnalysis());
+            }
+         }
+         if (unlabeled.isEmpty()) {
+            return;
+         }
+         List<String[]> labels = ner.getLabels(analyses);
+         for (int k=0; k<unlabeled.size(); k++) {
+            unlabeled.get(k).setNERLabels(labels.get(k));
+         }
+      }
+
+      @Override
+      public void startSentence(NormalizationContext context) {
+         if (context.getNERLabels() == null) { // not prepared
+            List<TokenAnalysis> analyses = new ArrayList<TokenAnalysis>(1);
+            analyses.add(context.getAnalysis());
+            context.setNERLabels(ner.getLabels(analyses).get(0));
+         }
+         ner.startSentence();
+      }
+
+      @Override
+      public void processToken(NormalizationContext context, int i) {
+         String[] labels = context.getNERLabels();
+         if (i <= labels.length) {
+            ner.normalizeToken(i, labels[i-1], context.getIndexMap());
+         }
+      }
+
+      @Override
+      public void addStatistics(NormalizationPass other) {
+         ner.addStatistics(((NERPass) other).ner);
+      }
+
+      @Override
+      public void printStatistics() {
+         ner.writeDebug();
+      }
+   }
+
+
+   /**
+    * Treat things the parser cannot treat, e.g., =
+    */
+   public static class ReplacementPass extends AbstractNormalizationPass {
+
+      private TokenReplacementRules rules;
+
+      public ReplacementPass(TokenReplacementRules rules) {
+         this.rules = rules;
+      }
+
+      @Override
+      public void processToken(NormalizationContext context, int i) {
+         TokenLevelReplacements.replaceToken(context.getTokens(), i, context.getIndexMap(), rules);
+      }
+   }
+
+
+   /**
+    * Length cut off, the window is chosen by the WindowSelector
+    * (e.g., after 150 tokens).
+    */
+   public static class LengthPass extends AbstractNormalizationPass {
+
+      /**
+       * Parsing time grows about with the cube of the sentence length
+       * (used for the expected savings).
+       */
+      private static final double PARSE_COST_EXPONENT = 3;
+
+      private WindowSelector windowSelector;
+      private int longSentences = 0;
+      private int cutSentences = 0;
+      private long tokensBefore = 0;
+      private long tokensAfter = 0;
+      private double costBefore = 0;
+      private double costAfter = 0;
+      private int startIndex;
+      private int endIndex;
+      /** Tokens before the window deleted by earlier passes (e.g., NER). */
+      private int deletedBefore;
+
+      public LengthPass(WindowSelector windowSelector) {
+         this.windowSelector = windowSelector;
+      }
+
+      @Override
+      public void startSentence(NormalizationContext context) {
+         int length = context.getTokens().length;
+         int[] array = windowSelector.getWindow(context.getAnnotation(), length);
+         startIndex = array[0];
+         endIndex = array[1];
+         if (length > windowSelector.getTokenLimit()) {
+            context.getWarnings().println(NormalizeSentence.getErrorMessage("Sentence is too long (" + length + " tokens), print from "
+                  + startIndex + " to " + endIndex + " = " + (endIndex - startIndex), context.getSentence()));
+            longSentences++;
+         }
+
+         // Statistics: how much shorter does the window make the sentence?
+         int windowLength = Math.max(0, Math.min(endIndex, length) - Math.max(startIndex, 1) + 1);
+         if (windowLength < length) {
+            cutSentences++;
+         }
+         tokensBefore += length;
+         tokensAfter += windowLength;
+         costBefore += Math.pow(length, PARSE_COST_EXPONENT);
+         costAfter += Math.pow(windowLength, PARSE_COST_EXPONENT);
+
+         deletedBefore = 0;
+         LengthNormalizer.adjustReplacementIndex(0, startIndex, endIndex, context.getIndexMap());
+      }
+
+      @Override
+      public void processToken(NormalizationContext context, int i) {
+         IndexMap indexMap = context.getIndexMap();
+         if (i < startIndex && indexMap.isDeleted(i)) {
+            deletedBefore++;
+         }
+         LengthNormalizer.adjustReplacementIndex(i, startIndex, endIndex, startIndex - 1 - deletedBefore, indexMap);
+      }
+
+      @Override
+      public void addStatistics(NormalizationPass other) {
+         LengthPass otherPass = (LengthPass) other;
+         longSentences += otherPass.longSentences;
+         cutSentences += otherPass.cutSentences;
+         tokensBefore += otherPass.tokensBefore;
+         tokensAfter += otherPass.tokensAfter;
+         costBefore += otherPass.costBefore;
+         costAfter += otherPass.costAfter;
+      }
+
+      @Override
+      public void printStatistics() {
+         System.out.println("LenghtNormalizer: " + longSentences + " sentences");
+         System.out.println("Window selection (" + windowSelector.getClass().getSimpleName()
+               + "): cut " + cutSentences + " sentences, kept " + tokensAfter + " of " + tokensBefore + " tokens");
+         if (costBefore > 0) {
+            System.out.println(String.format("Expected parse cost savings: %.1f%% (cost ~ length^%.0f)",
+                  100.0 * (costBefore - costAfter) / costBefore, PARSE_COST_EXPONENT));
+         }
+      }
+   }
+
+
+   /**
+    * Change all token indices of all annotations.
+    */
+   public static class AnnotationConversionPass extends AbstractNormalizationPass {
+
+      @Override
+      public ImmutableComparisonAnnotation processAnnotation(NormalizationContext context,
+            ImmutableComparisonAnnotation annotation) {
+         return TokenLevelReplacements.convertAnnotation(annotation, context.getIndexMap());
+      }
+   }
+
+
+   /**
+    * Normalize multiword predicates:
+    * split them (if splitPred) and annotate the adjective (sentiment)
+    * instead of 'more' etc. (if annotateAdjective).
+    * The POS tagger is only loaded if a predicate is split.
+    */
+   public static class PredicatePass extends AbstractNormalizationPass {
+
+      private AnnotationNormalizer anny;
+      private boolean splitPred;
+      private boolean annotateAdjective;
+
+      /**
+       * @param posTagCache may be null.
+       */
+      public PredicatePass(boolean splitPred, boolean annotateAdjective, POSTagCache posTagCache) {
+         this.anny = new AnnotationNormalizer(posTagCache);
+         this.splitPred = splitPred;
+         this.annotateAdjective = annotateAdjective;
+      }
+
+      @Override
+      public ImmutableComparisonAnnotation processAnnotation(NormalizationContext context,
+            ImmutableComparisonAnnotation annotation) {
+
+         // Normalize predicate if necessary
+         if (splitPred) {
+            annotation = anny.splitPredicate(annotation, context.getAnalysis());
+         }
+
+         // Annotate adjective (sentiment) instead of 'more'
+         if (annotateAdjective && NormalizeSentence.exchangePreds.contains(annotation.getPredicateString())) {
+            annotation = anny.changePredicate(annotation);
+         }
+         return annotation;
+      }
+
+      @Override
+      public void addStatistics(NormalizationPass other) {
+         anny.addStatistics(((PredicatePass) other).anny);
+      }
+
+      @Override
+      public void printStatistics() {
+         anny.getStatistics();
+      }
+   }
+
+}
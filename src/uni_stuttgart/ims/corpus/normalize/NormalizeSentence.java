@@ -9,14 +9,24 @@ package de.uni_stuttgart.ims.corpus.normalize;
 
 import java.io.BufferedReader;
 import java.io.BufferedWriter;
+import java.io.File;
 import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Iterator;
+import java.util.Collections;
+import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
 
-import de.uni_stuttgart.ims.corpus.compannotation.ComparisonAnnotation;
 import de.uni_stuttgart.ims.corpus.compannotation.SentenceAnnotation;
+import de.uni_stuttgart.ims.corpus.util.ModelRegistry;
 import de.uni_stuttgart.ims.corpus.util.Options;
+import de.uni_stuttgart.ims.corpus.util.StageFailedException;
+import de.uni_stuttgart.ims.corpus.util.TokenReplacementRules;
+import de.uni_stuttgart.ims.corpus.util.WorkerPool;
 import de.uni_stuttgart.ims.util.Fileutils;
 
 
@@ -24,21 +34,30 @@ import de.uni_stuttgart.ims.util.Fileutils;
  * Do normalizations of sentences and annotations.
  * Which normalizations are performed, depends on the parameters.
  *
+ * Several variants with different normalization options can be written
+ * from one read of the input (option 'normVariants'). Parsing of the
+ * annotation, token analysis, POS tags and NER labels are done once
+ * per sentence, every variant normalizes its own copy of the annotation.
+ *
+ * With a normalization cache (option 'normCacheFilename'), lines that
+ * have been normalized with the same settings in an earlier run
+ * are taken from the cache (see NormalizationCache).
+ *
  * @author kesslewd
  *
  */
 public class NormalizeSentence {
 
    /**
-    * Recognize Named Entities.
+    * Recognize Named Entities (in some variant).
     */
-   private static boolean doNER = false;
+   private boolean doNER = false;
 
    /**
     * In a regular multiword-predicate, annotate the adjective
     * as the predicate, otherwise annotate the predicate.
     */
-   private static boolean annotateAdjective = false;
+   private boolean annotateAdjective = false;
 
    /**
     * The predicates to be considered for regular multiword-predicates.
@@ -47,54 +66,155 @@ public class NormalizeSentence {
          new String[] {"more", "less", "as", "most", "least"}); //, "compare", "like"});
 
    /**
-    * Do splitting of multiword predicates (all of them)
+    * Do splitting of multiword predicates (all of them) (in some variant).
     */
-   private static boolean splitPred = false;
+   private boolean splitPred = false;
 
+   /**
+    * Named Entity Recognizer used for '-ner', shared by all threads.
+    */
+   private NERBackend nerBackend = null;
 
+   /**
+    * Output variants, every thread creates one pipeline for each.
+    */
+   private List<Variant> variants = new ArrayList<Variant>();
 
+   /**
+    * Results of earlier runs, null if not used.
+    */
+   private NormalizationCache normCache = null;
 
+   /**
+    * Window of long sentences, shared by all threads.
+    */
+   private WindowSelector windowSelector = null;
 
    /**
-    * @param args
-    * @throws Exception
+    * Token replacements, shared by all threads.
     */
-   public static void main(String[] args) throws Exception {
+   private TokenReplacementRules rules = null;
 
-      // ===== GET USER-DEFINED OPTIONS =====
+   /**
+    * POS tags of earlier runs, null if not used.
+    */
+   private POSTagCache posTagCache = null;
+
+   private Options options;
 
-      try {
 
-         if (args.length < 1) {
-            System.err.println("Usage: NormalizeSentence <config file>");
-            //System.err.println("Usage: NormalizeSentence <sentences file> [<annotations file>] [-idsorteq] [-idsortall] [-ner] [-annAdj] [-splitPred]");
-            System.exit(1);
-         }
-         Options.parseOptionsFile(args[0]);
 
+
+
+   /**
+    * @param args
+    * @throws Exception
+    */
+   public static void main(String[] args) throws Exception {
+      if (args.length < 1) {
+         System.err.println("Usage: NormalizeSentence <config file>");
+         //System.err.println("Usage: NormalizeSentence <sentences file> [<annotations file>] [-idsorteq] [-idsortall] [-ner] [-annAdj] [-splitPred]");
+         System.exit(1);
+      }
+      Options options = null;
+      try {
+         options = Options.readOptionsFile(args[0]);
       } catch (IOException e) {
          System.err.println("ERROR !!! while parsing options file: " + e);
          System.exit(1);
       }
+      try {
+         run(options);
+      } catch (StageFailedException e) {
+         System.exit(1);
+      }
+      ModelRegistry.closeAll();
+   }
+
+
+
+   /**
+    * Run with these options.
+    * @return number of sentences processed.
+    * @throws StageFailedException if something goes wrong (the error has been printed).
+    */
+   public static int run(Options options) throws Exception {
+      return new NormalizeSentence(options).normalize();
+   }
+
+
+
+   private NormalizeSentence(Options options) {
+      this.options = options;
+   }
 
-      String sentencesIn = Options.getOption("plaintextSentencesFilename");
-      String annotationsIn = Options.getOption("plaintextAnnotationsFilename");
-      String sentencesOut = Options.getOption("plaintextSentencesNormFilename");
-      String annotationsOut = Options.getOption("plaintextAnnotationsNormFilename");
-      String[] nerOptions = Options.getListOption("normOptions");
-      System.out.println(Arrays.asList(nerOptions));
+
+
+   private int normalize() throws Exception {
+
+      // ===== GET USER-DEFINED OPTIONS =====
+
+      String sentencesIn = options.getOption("plaintextSentencesFilename");
+      String annotationsIn = options.getOption("plaintextAnnotationsFilename");
       boolean doAnnotations = false;
 
       if (annotationsIn != null && !annotationsIn.isEmpty()) {
          doAnnotations = true;
       }
-      for (String opt : nerOptions) {
-         if (opt.equals("-ner"))
-            doNER = true;
-         if (opt.equals("-adj"))
-            annotateAdjective = true; // for those from list
-         if (opt.equals("-splitPred"))
-            splitPred = true;
+
+      // Variants: either only one with the normal options,
+      // or for every variant name the options with '.<name>' appended.
+      String variantNames = options.getOption("normVariants");
+      if (variantNames == null || variantNames.isEmpty()) {
+         variants.add(new Variant(null));
+      } else {
+         for (String name : options.getListOption("normVariants")) {
+            variants.add(new Variant(name.trim()));
+         }
+      }
+      for (Variant variant : variants) {
+         if (variant.normOptions == null || variant.sentencesOut == null
+               || (doAnnotations && variant.annotationsOut == null)) {
+            System.err.println("ERROR, options missing for normalization variant " + variant.name);
+            throw new StageFailedException("Options missing for normalization variant " + variant.name);
+         }
+         System.out.println(variant.getLabel() + variant.normOptions);
+         for (String opt : variant.normOptions) {
+            if (opt.equals("-ner"))
+               doNER = true;
+            if (opt.equals("-adj"))
+               annotateAdjective = true; // for those from list
+            if (opt.equals("-splitPred"))
+               splitPred = true;
+         }
+      }
+      if (doNER) {
+         String nerBackendName = options.getOption("nerBackend");
+         if (nerBackendName == null || nerBackendName.isEmpty() || nerBackendName.equals("heuristic")) {
+            String gazetteerFiles = options.getOption("gazetteerFiles");
+            if (gazetteerFiles == null || gazetteerFiles.isEmpty()) {
+               nerBackend = new NERHeuristic();
+            } else {
+               try {
+                  Gazetteer gazetteer = Gazetteer.readGazetteer(options.getListOption("gazetteerFiles"));
+                  System.out.println("Read gazetteer with " + gazetteer.size() + " entries from: " + gazetteerFiles);
+                  nerBackend = new NERHeuristic(gazetteer);
+               } catch (IOException e) {
+                  System.err.println("ERROR while reading gazetteer: " + e.getMessage());
+                  e.printStackTrace();
+                  throw new StageFailedException("Error while reading gazetteer");
+               }
+            }
+         } else if (nerBackendName.equals("crf")) {
+            String nerModel = options.getOption("nerModel");
+            if (nerModel == null || nerModel.isEmpty()) {
+               nerModel = NER.defaultModel;
+            }
+            nerBackend = new NER(nerModel);
+         } else {
+            System.err.println("ERROR, unknown NER backend: " + nerBackendName + ", expected heuristic or crf");
+            throw new StageFailedException("Unknown NER backend " + nerBackendName);
+         }
       }
       System.out.println(
             "doNER " + doNER + "; "
@@ -108,234 +228,590 @@ public class NormalizeSentence {
 
       BufferedReader brAnnotations = null;
       BufferedReader brNERSentences = null;
-      BufferedWriter outSentences = null;
-      BufferedWriter outAnnotations = null;
+      boolean success = false;
 
-      try{
-
-         // open input file with sentences
-         brNERSentences = Fileutils.getReadFile(sentencesIn);
-         System.out.println("Read sentences from: " + sentencesIn);
+      // Close the files also if something goes wrong,
+      // the caches only keep the new entries of a successful run
+      try {
 
-         // open input file with annotations
-         if (doAnnotations) {
-            brAnnotations = Fileutils.getReadFile(annotationsIn);
-            System.out.println("Read annotations from: " + annotationsIn);
-         }
+         try{
 
-         // open output file (sentences)
-         outSentences = Fileutils.getWriteFile(sentencesOut);
-         System.out.println("Write sentences to: " + sentencesOut);
+            // open input file with sentences
+            brNERSentences = Fileutils.getReadFile(sentencesIn);
+            System.out.println("Read sentences from: " + sentencesIn);
 
-         // open output file (annotations)
-         if (doAnnotations) {
-            outAnnotations = Fileutils.getWriteFile(annotationsOut);
-            System.out.println("Write annotations to: " + annotationsOut);
-         }
+            // open input file with annotations
+            if (doAnnotations) {
+               brAnnotations = Fileutils.getReadFile(annotationsIn);
+               System.out.println("Read annotations from: " + annotationsIn);
+            }
 
-      } catch (Exception e) {
-         System.err.println("ERROR in initialization: " + e.getMessage());
-         e.printStackTrace();
-         System.exit(1);
-      }
+            for (Variant variant : variants) {
 
-      NERNormalizer ner = null;
-      if (doNER) {
-         ner = new NERNormalizer();
-      }
-      AnnotationNormalizer anny = new AnnotationNormalizer();
+               // open output file (sentences)
+               variant.outSentences = Fileutils.getWriteFile(variant.sentencesOut);
+               System.out.println(variant.getLabel() + "Write sentences to: " + variant.sentencesOut);
 
+               // open output file (annotations)
+               if (doAnnotations) {
+                  variant.outAnnotations = Fileutils.getWriteFile(variant.annotationsOut);
+                  System.out.println(variant.getLabel() + "Write annotations to: " + variant.annotationsOut);
+               }
+            }
 
+         } catch (Exception e) {
+            System.err.println("ERROR in initialization: " + e.getMessage());
+            e.printStackTrace();
+            throw new StageFailedException("Error in initialization");
+         }
 
+         int numThreads = WorkerPool.getNumThreads(options);
+         int batchSize = options.getIntOption("normBatchSize", 100);
 
-      // ========== PROCESSING ==========
+         String posCacheFilename = options.getOption("posCacheFilename");
+         if (splitPred && posCacheFilename != null && !posCacheFilename.isEmpty()) {
+            try {
+               posTagCache = new POSTagCache(posCacheFilename);
+            } catch (IOException e) {
+               System.err.println("ERROR in initialization of POS tag cache: " + e.getMessage());
+               e.printStackTrace();
+               throw new StageFailedException("Error in initialization of POS tag cache");
+            }
+         }
+         System.out.println("Normalize with " + numThreads + " threads.");
+
+         // Window of long sentences
+         int tokenlimit = options.getIntOption("tokenLimit", LengthNormalizer.DEFAULT_TOKEN_LIMIT);
+         String windowSelectorName = options.getOption("windowSelector");
+         if (windowSelectorName == null || windowSelectorName.isEmpty() || windowSelectorName.equals("fixed")) {
+            windowSelector = new FixedWindowSelector(tokenlimit);
+         } else if (windowSelectorName.equals("adaptive")) {
+            windowSelector = new AdaptiveWindowSelector(tokenlimit,
+                  options.getIntOption("windowContextMargin", 10),
+                  options.getIntOption("windowMinLength", 50));
+         } else {
+            System.err.println("ERROR, unknown window selector: " + windowSelectorName + ", expected fixed or adaptive");
+            throw new StageFailedException("Unknown window selector " + windowSelectorName);
+         }
+         System.out.println("Cut sentences with " + windowSelector.getClass().getSimpleName()
+               + ", token limit " + tokenlimit);
 
-      int longSentences = 0;
+         rules = TokenReplacementRules.getRules(options);
 
-      // REad first sentence
-      String thisLineAnn = null;
-      String thisLineSentence = null;
-      SentenceAnnotation thisLineAnnotation = null;
-      int lineno = 0;
-      try {
-         lineno += 1;
-         if (doAnnotations) {
-         thisLineAnn = brAnnotations.readLine();
+         String normCacheFilename = options.getOption("normCacheFilename");
+         if (normCacheFilename != null && !normCacheFilename.isEmpty()) {
+            try {
+               normCache = new NormalizationCache(normCacheFilename);
+            } catch (IOException e) {
+               System.err.println("ERROR in initialization of normalization cache: " + e.getMessage());
+               e.printStackTrace();
+               throw new StageFailedException("Error in initialization of normalization cache");
+            }
+            String settings = getCacheSettings();
+            for (Variant variant : variants) {
+               variant.cacheSettings = settings + " normOptions=" + variant.normOptions;
+            }
          }
-         thisLineSentence = brNERSentences.readLine();
-      } catch (IOException e) {
-         System.err.println("Error while reading sentence/annotations file at line " + lineno + "!");
-         e.printStackTrace();
-      }
 
 
-      // Go through all...
 
-      while ((thisLineAnn != null | !doAnnotations) && thisLineSentence != null) {
+         // ========== PROCESSING ==========
 
-         if (doAnnotations)
-            try {
-               thisLineAnnotation = new SentenceAnnotation(thisLineAnn);
-            } catch (Exception e) {
-             System.err.println("Error when creating sentence annotation from sentence " + lineno + ": " + thisLineAnn);
-             e.printStackTrace();
-             System.exit(1);
-            }
+         // Batches are normalized in parallel and written in input order.
+         // At most maxPending batches are read ahead.
+         int maxPending = 4 * numThreads;
+         LinkedList<Future<List<NormalizedLine>>> pending = new LinkedList<Future<List<NormalizedLine>>>();
 
-         // Initialize tokens
-         String[] tokens = thisLineSentence.split(" ");
+         int lineno = 0;
+         int linesRead = 0;
+         try {
+            while (true) {
+
+               // Read next batch
+               List<String> sentenceLines = new ArrayList<String>(batchSize);
+               List<String> annotationLines = new ArrayList<String>(batchSize);
+               int firstLineno = lineno + 1;
+               try {
+                  while (sentenceLines.size() < batchSize) {
+                     lineno += 1;
+                     String thisLineAnn = null;
+                     if (doAnnotations) {
+                        thisLineAnn = brAnnotations.readLine();
+                     }
+                     String thisLineSentence = brNERSentences.readLine();
+                     if ((thisLineAnn == null & doAnnotations) || thisLineSentence == null) {
+                        break;
+                     }
+                     sentenceLines.add(thisLineSentence);
+                     annotationLines.add(thisLineAnn);
+                  }
+               } catch (IOException e) {
+                  System.err.println("Error while reading sentence/annotations file at line " + lineno + "!");
+                  e.printStackTrace();
+               }
+               if (sentenceLines.isEmpty()) {
+                  break;
+               }
+               linesRead += sentenceLines.size();
 
-         // Initialize indices, token indices as given by parser/annotation start at 1
-         // -> leave 0 empty
-         Integer[] newIndices = new Integer[tokens.length+1];
-         for (int i=0; i<newIndices.length; i++) {
-            newIndices[i] = i;
-         }
+               Batch batch = new Batch(firstLineno, sentenceLines, annotationLines);
+               if (numThreads > 1) {
+                  pending.add(WorkerPool.getPool(options).submit(batch));
+                  if (pending.size() >= maxPending) {
+                     writeLines(pending.removeFirst().get());
+                  }
+               } else {
+                  writeLines(batch.call());
+               }
 
-         // Initialize replacements (null)
-         // Enter only things to be replaced, will be checked for isNull
-         String[] replacements = new String[tokens.length+1];
+               if (sentenceLines.size() < batchSize) { // end of input
+                  break;
+               }
+            }
 
+            while (!pending.isEmpty()) {
+               writeLines(pending.removeFirst().get());
+            }
 
+         } finally {
+            // Batches read ahead are not needed if something went wrong
+            for (Future<List<NormalizedLine>> future : pending) {
+               future.cancel(false);
+            }
+            WorkerPool.shutdown();
+         }
 
-         /// ==================
 
-         // Do NER on sentence (if wanted)
+         // Statistics (sum over all threads), in the order of the passes
+         for (int v=0; v<variants.size(); v++) {
+            Variant variant = variants.get(v);
+            NormalizationPipeline statistics = null;
+            for (Worker worker : workers) {
+               if (statistics == null) {
+                  statistics = worker.pipelines.get(v);
+               } else {
+                  statistics.addStatistics(worker.pipelines.get(v));
+               }
+            }
+            if (statistics == null) { // no input
+               statistics = variant.createPipeline();
+            }
+            if (variant.name != null) {
+               System.out.println("Statistics for variant " + variant.name + ":");
+            }
+            statistics.printStatistics();
+         }
 
-         if (doNER) {
-            ner.doNormalize(tokens, newIndices, replacements);
+         if (posTagCache != null) {
+            posTagCache.printStatistics();
          }
 
-         /// ==================
+         ModelRegistry.printStatistics();
 
-         // Treat things the parser cannot treat, e.g., =
+         if (normCache != null) {
+            System.out.println("(statistics of the normalizations only count lines not taken from the cache)");
+            normCache.printStatistics();
+         }
 
-         TokenLevelReplacements.globalReplaceTokens(tokens, newIndices, replacements);
+         success = true;
+         System.out.println("done.");
 
+         return linesRead;
 
-         /// ==================
+      } finally {
+         // Do some cleanup
+         Fileutils.closeSilently(brAnnotations);
+         Fileutils.closeSilently(brNERSentences);
+         for (Variant variant : variants) {
+            Fileutils.closeSilently(variant.outSentences);
+            Fileutils.closeSilently(variant.outAnnotations);
+         }
+         if (posTagCache != null) {
+            if (success) {
+               posTagCache.close();
+            } else {
+               posTagCache.discard();
+            }
+         }
+         if (normCache != null) {
+            if (success) {
+               normCache.close();
+            } else {
+               normCache.discard();
+            }
+         }
+      }
+   }
 
-         // Length cut off after 150 tokens
 
-         int[] array = LengthNormalizer.getStartEnd(thisLineAnnotation, tokens.length);
-         if (tokens.length > LengthNormalizer.tokenlimit) {
-            printError("Sentence is too long (" + tokens.length + " tokens), print from " + array[0] + " to " + array[1] + " = " + (array[1] - array[0]), thisLineSentence);
-            longSentences++;
+
+   /**
+    * Normalization options and output files of one variant.
+    */
+   private class Variant {
+      /** null if there are no variants. */
+      String name;
+      List<String> normOptions = null;
+      String sentencesOut;
+      String annotationsOut;
+      BufferedWriter outSentences = null;
+      BufferedWriter outAnnotations = null;
+      /** Everything that changes the result, for the cache key. */
+      String cacheSettings;
+
+      Variant(String name) {
+         this.name = name;
+         String suffix = (name == null) ? "" : "." + name;
+         String[] variantOptions = options.getListOption("normOptions" + suffix);
+         if (variantOptions != null) {
+            this.normOptions = Arrays.asList(variantOptions);
          }
-         LengthNormalizer.adjustReplacementIndices(array[0], array[1], newIndices, replacements);
+         this.sentencesOut = options.getOption("plaintextSentencesNormFilename" + suffix);
+         this.annotationsOut = options.getOption("plaintextAnnotationsNormFilename" + suffix);
+      }
 
+      NormalizationPipeline createPipeline() {
+         return NormalizationPipeline.create(normOptions, nerBackend, windowSelector, rules, posTagCache);
+      }
 
-         /// ==================
+      /**
+       * Prefix for messages, empty if there are no variants.
+       */
+      String getLabel() {
+         return (name == null) ? "" : "[" + name + "] ";
+      }
+   }
 
 
-         String newSentence = TokenLevelReplacements.getSentenceString(tokens, newIndices, replacements);
 
+   /**
+    * Normalization passes of one thread (one pipeline per variant),
+    * they are not thread-safe.
+    */
+   private class Worker {
+      List<NormalizationPipeline> pipelines = new ArrayList<NormalizationPipeline>(variants.size());
 
-         /// ==================
+      Worker() {
+         for (Variant variant : variants) {
+            pipelines.add(variant.createPipeline());
+         }
+      }
+   }
 
+   /**
+    * All workers that have been created, for the statistics.
+    */
+   private List<Worker> workers = Collections.synchronizedList(new ArrayList<Worker>());
 
-         if (doAnnotations) {
+   /**
+    * Worker of the current thread in this run.
+    */
+   private ThreadLocal<Worker> worker = new ThreadLocal<Worker>();
+
+   private Worker getWorker() {
+      Worker thisWorker = worker.get();
+      if (thisWorker == null) {
+         thisWorker = new Worker();
+         workers.add(thisWorker);
+         worker.set(thisWorker);
+      }
+      return thisWorker;
+   }
 
-            thisLineAnnotation.setSentence(newSentence);
 
-            try {
 
-               // Iterate through annotations
-               Iterator<ComparisonAnnotation> itty2 = thisLineAnnotation.getComparisonAnnotationsIterator();
-               while (itty2.hasNext()) {
-                  ComparisonAnnotation annotation = itty2.next();
+   /**
+    * Normalized sentence and annotation of one input line.
+    * Messages are collected and printed when the line is written,
+    * so they come in the same order as without threads.
+    */
+   private class NormalizedLine {
+      /** One for every variant. */
+      String[] sentences = new String[variants.size()];
+      String[] annotations = new String[variants.size()];
+      /** Warnings of every variant without label. */
+      String[] variantWarnings = new String[variants.size()];
+      StringWriter warnings = new StringWriter();
+      StringWriter errors = new StringWriter();
+      /** Stop processing after this line. */
+      boolean failed = false;
+   }
 
-                  // Change all token indices of all annotations
-                  TokenLevelReplacements.convertAnnotation(annotation, newIndices, replacements);
 
-                  // Normalize predicate if necessary
-                  if (splitPred) {
-                     anny.splitPredicate(annotation, tokens);
-                  }
 
-                  // Annotate adjective (sentiment) instead of 'more'
-                  if (annotateAdjective & exchangePreds.contains(annotation.getPredicateString())) {
-                     anny.changePredicate(annotation);
-                  }
+   /**
+    * Some consecutive lines that are normalized by one thread.
+    */
+   private class Batch implements Callable<List<NormalizedLine>> {
 
+      private int firstLineno;
+      private List<String> sentenceLines;
+      private List<String> annotationLines;
 
-               }
+      Batch(int firstLineno, List<String> sentenceLines, List<String> annotationLines) {
+         this.firstLineno = firstLineno;
+         this.sentenceLines = sentenceLines;
+         this.annotationLines = annotationLines;
+      }
 
-            } catch (Exception e) {
-               e.printStackTrace();
-               System.err.println(newSentence);
-               System.err.println(Arrays.toString(newIndices));
-               System.err.println(Arrays.toString(replacements));
-               System.exit(1);
+      @Override
+      public List<NormalizedLine> call() {
+         Worker thisWorker = getWorker();
+
+         // Take lines from the cache (if they are there for all variants),
+         // initialize tokens of the others
+         List<NormalizedLine> result = new ArrayList<NormalizedLine>(sentenceLines.size());
+         List<NormalizationContext> contexts = new ArrayList<NormalizationContext>(sentenceLines.size());
+         for (int k=0; k<sentenceLines.size(); k++) {
+            String thisLineSentence = sentenceLines.get(k);
+            NormalizedLine cached = getCachedLine(thisLineSentence, annotationLines.get(k));
+            result.add(cached);
+            if (cached == null) {
+               contexts.add(new NormalizationContext(firstLineno + k, thisLineSentence,
+                     new TokenAnalysis(thisLineSentence.split(" "))));
+            }
+         }
+
+         // Work for all sentences of the batch at once (e.g., NER),
+         // what is done in the first variant is reused by the others
+         if (!contexts.isEmpty()) {
+            for (NormalizationPipeline pipeline : thisWorker.pipelines) {
+               pipeline.prepareBatch(contexts);
+            }
+         }
+
+         int next = 0;
+         for (int k=0; k<sentenceLines.size(); k++) {
+            if (result.get(k) != null) {
+               continue;
+            }
+            NormalizedLine line = normalizeLine(contexts.get(next++), annotationLines.get(k), thisWorker.pipelines);
+            result.set(k, line);
+            if (line.failed) {
+               return result.subList(0, k + 1);
             }
+            putCachedLine(sentenceLines.get(k), annotationLines.get(k), line);
+         }
+         return result;
+      }
+   }
+
 
 
+   /**
+    * Get the line from the normalization cache,
+    * null if there is no cache or the line is missing for some variant.
+    */
+   private NormalizedLine getCachedLine(String sentenceLine, String annotationLine) {
+      if (normCache == null) {
+         return null;
+      }
+      NormalizedLine result = new NormalizedLine();
+      PrintWriter warnings = new PrintWriter(result.warnings);
+      for (int v=0; v<variants.size(); v++) {
+         Variant variant = variants.get(v);
+         NormalizationCache.Entry entry = normCache.get(
+               NormalizationCache.getKey(variant.cacheSettings, sentenceLine, annotationLine));
+         if (entry == null) {
+            normCache.countLine(false, sentenceLine, annotationLine);
+            return null;
          }
+         result.sentences[v] = entry.sentence;
+         result.annotations[v] = entry.annotation;
+         result.variantWarnings[v] = entry.warnings;
+         printWithLabel(entry.warnings, variant.getLabel(), warnings);
+      }
+      normCache.countLine(true, sentenceLine, annotationLine);
+      return result;
+   }
 
 
-         /// ==================
+   /**
+    * Add a normalized line to the cache (if there is one).
+    */
+   private void putCachedLine(String sentenceLine, String annotationLine, NormalizedLine line) {
+      if (normCache == null) {
+         return;
+      }
+      for (int v=0; v<variants.size(); v++) {
+         normCache.put(NormalizationCache.getKey(variants.get(v).cacheSettings, sentenceLine, annotationLine),
+               new NormalizationCache.Entry(line.sentences[v], line.annotations[v], line.variantWarnings[v]));
+      }
+   }
 
 
-         // Write sentence to sentence file
-         outSentences.write(newSentence);
-         outSentences.newLine();
-         outSentences.flush();
+   /**
+    * Everything besides the normalization options of a variant that
+    * changes the result: normalizer version, options and the
+    * files they name (length and modification time).
+    */
+   private String getCacheSettings() {
+      StringBuilder settings = new StringBuilder("version=" + NormalizationPipeline.VERSION);
+      for (String option : new String[] {"tokenLimit", "windowSelector", "windowContextMargin",
+            "windowMinLength", "nerBackend", "nerModel"}) {
+         settings.append(' ').append(option).append('=').append(options.getOption(option));
+      }
+      for (String option : new String[] {"tokenReplacementsFilename", "gazetteerFiles"}) {
+         settings.append(' ').append(option).append('=');
+         String value = options.getOption(option);
+         if (value != null && !value.isEmpty()) {
+            String[] filenames = options.getListOption(option);
+            for (String filename : filenames) {
+               File file = new File(filename.trim());
+               settings.append(filename.trim()).append(':').append(file.length())
+                     .append(':').append(file.lastModified()).append(',');
+            }
+         }
+      }
+      return settings.toString();
+   }
 
-         if (doAnnotations) {
 
-            // Write complete annotation to annotation file
-            outAnnotations.write(thisLineAnnotation.toString());
-            outAnnotations.newLine();
-            outAnnotations.flush();
 
+   /**
+    * Write normalized lines, print their messages.
+    * Exit if normalization of a line has failed.
+    */
+   private void writeLines(List<NormalizedLine> lines) throws IOException {
+
+      for (NormalizedLine line : lines) {
+
+         System.out.print(line.warnings);
+         System.err.print(line.errors);
+         if (line.failed) {
+            throw new StageFailedException("Normalization failed");
          }
 
+         for (int v=0; v<variants.size(); v++) {
+            Variant variant = variants.get(v);
 
+            // Write sentence to sentence file
+            variant.outSentences.write(line.sentences[v]);
+            variant.outSentences.newLine();
 
-         try {
-            lineno += 1;
+            if (line.annotations[v] != null) {
+
+               // Write complete annotation to annotation file
+               variant.outAnnotations.write(line.annotations[v]);
+               variant.outAnnotations.newLine();
 
-            if (doAnnotations) {
-               thisLineAnn = brAnnotations.readLine();
             }
-            thisLineSentence = brNERSentences.readLine();
-         } catch (IOException e) {
-            System.err.println("Error while reading annotations file at line " + lineno + "!");
-            e.printStackTrace();
-            break;
          }
+      }
 
+      for (Variant variant : variants) {
+         variant.outSentences.flush();
+         if (variant.outAnnotations != null) {
+            variant.outAnnotations.flush();
+         }
       }
+   }
 
 
-      // Statistics
-      anny.getStatistics();
-      System.out.println("LenghtNormalizer: " + longSentences + " sentences");
 
-      if (doNER) {
-         ner.writeDebug();
-      }
+   /**
+    * Normalize one sentence and its annotation (may be null)
+    * with the pipeline of every variant.
+    */
+   private NormalizedLine normalizeLine(NormalizationContext context,
+         String thisLineAnn, List<NormalizationPipeline> pipelines) {
+
+      NormalizedLine result = new NormalizedLine();
+      PrintWriter warnings = new PrintWriter(result.warnings);
+      PrintWriter errors = new PrintWriter(result.errors);
+
+      SentenceAnnotation parsedAnnotation = null;
+      if (thisLineAnn != null)
+         try {
+            parsedAnnotation = new SentenceAnnotation(thisLineAnn);
+         } catch (Exception e) {
+          errors.println("Error when creating sentence annotation from sentence " + context.getLineNumber() + ": " + thisLineAnn);
+          e.printStackTrace(errors);
+          result.failed = true;
+          return result;
+         }
 
+      // The parsed annotation is not changed, all variants
+      // start from the same frozen comparisons
+      context.setAnnotation(parsedAnnotation);
 
+      for (int v=0; v<pipelines.size(); v++) {
+         NormalizationPipeline pipeline = pipelines.get(v);
+         String label = variants.get(v).getLabel();
 
+         StringWriter variantWarnings = new StringWriter();
+         context.setWarnings(new PrintWriter(variantWarnings));
 
-      // Do some cleanup
-      if (doAnnotations) {
-      Fileutils.closeSilently(brAnnotations);
-      Fileutils.closeSilently(outAnnotations);
+
+         /// ==================
+
+         // All token level normalizations in one scan over the sentence
+
+         pipeline.normalizeSentence(context);
+         String newSentence = context.getNormalizedSentence();
+         result.sentences[v] = newSentence;
+         result.variantWarnings[v] = variantWarnings.toString();
+         printWithLabel(result.variantWarnings[v], label, warnings);
+
+
+         /// ==================
+
+
+         if (parsedAnnotation != null) {
+
+            SentenceAnnotation thisLineAnnotation = null;
+            try {
+
+               // Change all token indices of all annotations, normalize predicates
+               thisLineAnnotation = parsedAnnotation.copy(pipeline.normalizeAnnotations(context));
+               thisLineAnnotation.setSentence(newSentence);
+
+            } catch (Exception e) {
+               IndexMap indexMap = context.getIndexMap();
+               errors.print(label);
+               e.printStackTrace(errors);
+               errors.println(newSentence);
+               errors.println(indexMap.indicesToString());
+               errors.println(indexMap.replacementsToString());
+               result.failed = true;
+               return result;
+            }
+
+            result.annotations[v] = thisLineAnnotation.toString();
+
+         }
       }
-      Fileutils.closeSilently(brNERSentences);
-      Fileutils.closeSilently(outSentences);
-      System.out.println("done.");
 
+      return result;
+   }
+
+
+   /**
+    * Print every line of the messages with the label of the variant.
+    */
+   private static void printWithLabel(String messages, String label, PrintWriter out) {
+      if (messages.isEmpty()) {
+         return;
+      }
+      if (label.isEmpty()) {
+         out.print(messages);
+         return;
+      }
+      for (String line : messages.split("\n")) {
+         out.println(label + line);
+      }
    }
 
 
 
 
+   public static String getErrorMessage(String message, String sentence) {
+      return "NORMALIZATION WARNING !!! " + message
+              + " in sentence " + sentence.replaceAll("\n", " ");
+   }
+
    public static void printError(String message, String sentence) {
-     System.out.println("NORMALIZATION WARNING !!! " + message
-              + " in sentence " + sentence.replaceAll("\n", " "));
+     System.out.println(getErrorMessage(message, sentence));
    }
 
 
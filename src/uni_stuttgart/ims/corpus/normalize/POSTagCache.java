@@ -0,0 +1,172 @@
+// (c) Wiltrud Kessler
+// 19.10.2026
+// This code is distributed under a Creative Commons
+// Attribution-NonCommercial-ShareAlike 3.0 Unported license
+// http://creativecommons.org/licenses/by-nc-sa/3.0/
+
+package de.uni_stuttgart.ims.corpus.normalize;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.nio.charset.Charset;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import de.uni_stuttgart.ims.util.Fileutils;
+
+
+/**
+ * Persistent cache of POS tags for tokenized sentences,
+ * so that sentences are tagged only once over several runs.
+ *
+ * File format: one sentence per line,
+ * tokens separated by ' ' \t tags separated by ' '.
+ * The file is read completely when the cache is opened,
+ * newly tagged sentences are appended.
+ *
+ * The cache can be shared by several threads.
+ *
+ * @author kesslewd
+ *
+ */
+public class POSTagCache {
+
+   private ConcurrentHashMap<String, String[]> tags = new ConcurrentHashMap<String, String[]>();
+   private BufferedWriter out;
+   private String filename;
+   /** Length of the file when it was opened. */
+   private long openedLength;
+   /** Sentences added after close are not written (e.g., batches still running after a failure). */
+   private boolean closed = false;
+
+   private AtomicLong hits = new AtomicLong(0);
+   private AtomicLong misses = new AtomicLong(0);
+
+
+   /**
+    * Open cache, read all entries from the file (if it exists).
+    */
+   public POSTagCache(String filename) throws IOException {
+
+      if (new File(filename).exists()) {
+         BufferedReader in = Fileutils.getReadFile(filename);
+         try {
+            String strLine;
+            while ((strLine = in.readLine()) != null) {
+               int tab = strLine.lastIndexOf('\t');
+               if (tab < 0) { // broken line, e.g., last run was killed
+                  continue;
+               }
+               String[] sentenceTags = strLine.substring(tab + 1).split(" ");
+               String sentence = strLine.substring(0, tab);
+               if (sentence.split(" ").length == sentenceTags.length) {
+                  tags.put(sentence, sentenceTags);
+               }
+            }
+         } finally {
+            Fileutils.closeSilently(in);
+         }
+      }
+      System.out.println("POS tag cache " + filename + ": " + tags.size() + " sentences");
+
+      this.filename = filename;
+      this.openedLength = new File(filename).length();
+      out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(filename, true), Charset.forName("UTF-8")));
+   }
+
+
+
+   /**
+    * Get tags for these tokens, null if the sentence is not in the cache.
+    */
+   public String[] getTags(String[] tokens) {
+      String[] result = tags.get(getKey(tokens));
+      if (result == null) {
+         misses.incrementAndGet();
+         return null;
+      }
+      hits.incrementAndGet();
+      return result.clone();
+   }
+
+
+   /**
+    * Add tags for these tokens, they are written to the file.
+    */
+   public void putTags(String[] tokens, String[] sentenceTags) {
+      String key = getKey(tokens);
+      if (tags.putIfAbsent(key, sentenceTags.clone()) != null) {
+         return; // another thread was faster
+      }
+
+      StringBuilder line = new StringBuilder(key);
+      line.append('\t');
+      for (int i=0; i<sentenceTags.length; i++) {
+         if (i > 0) {
+            line.append(' ');
+         }
+         line.append(sentenceTags[i]);
+      }
+      synchronized (this) {
+         if (closed) {
+            return;
+         }
+         try {
+            out.write(line.toString());
+            out.newLine();
+         } catch (IOException e) {
+            System.err.println("ERROR !!! while writing POS tag cache: " + e);
+         }
+      }
+   }
+
+
+   public synchronized void close() {
+      closed = true;
+      Fileutils.closeSilently(out);
+   }
+
+
+   /**
+    * Close the cache without keeping the sentences added since
+    * it was opened (e.g., the run failed).
+    */
+   public synchronized void discard() {
+      closed = true;
+      Fileutils.closeSilently(out);
+      RandomAccessFile file = null;
+      try {
+         file = new RandomAccessFile(filename, "rw");
+         file.setLength(openedLength);
+      } catch (IOException e) {
+         System.err.println("ERROR !!! while resetting POS tag cache: " + e);
+      } finally {
+         Fileutils.closeSilently(file);
+      }
+   }
+
+
+   public void printStatistics() {
+      System.out.println("POS tag cache: " + hits.get() + " hits, " + misses.get() + " misses, "
+            + tags.size() + " sentences");
+   }
+
+
+
+   private static String getKey(String[] tokens) {
+      StringBuilder key = new StringBuilder();
+      for (int i=0; i<tokens.length; i++) {
+         if (i > 0) {
+            key.append(' ');
+         }
+         key.append(tokens[i]);
+      }
+      return key.toString();
+   }
+
+}
@@ -0,0 +1,150 @@
+// (c) Wiltrud Kessler
+// 19.10.2026
+// This code is distributed under a Creative Commons
+// Attribution-NonCommercial-ShareAlike 3.0 Unported license
+// http://creativecommons.org/licenses/by-nc-sa/3.0/
+
+package de.uni_stuttgart.ims.corpus.normalize;
+
+import de.uni_stuttgart.ims.corpus.util.SentenceTokenIndex;
+import de.uni_stuttgart.ims.nlpbase.tools.POSTagger;
+
+
+/**
+ * Things about the tokens of one sentence that several
+ * normalization steps need: shape of every token (bit flags),
+ * lowercased forms and POS tags.
+ * Shapes are computed with one scan over the characters of every token,
+ * lowercased forms and POS tags only when they are first needed.
+ *
+ * The token array must not be changed after the analysis has been created.
+ *
+ * @author kesslewd
+ *
+ */
+public class TokenAnalysis {
+
+   /** First character is uppercase (the pronoun 'I' does not count). */
+   public static final int CAPITALIZED = 1;
+   /** Only letters, none of them lowercase (not 'I'). */
+   public static final int ALL_UPPER = 1 << 1;
+   /** Only digits. */
+   public static final int NUMBER = 1 << 2;
+   /** Contains at least one digit. */
+   public static final int HAS_DIGIT = 1 << 3;
+   /** Contains at least one letter. */
+   public static final int HAS_LETTER = 1 << 4;
+
+
+   private String[] tokens;
+   private int[] shapes;
+   private SentenceTokenIndex index = null;
+   private String[] posTags = null;
+
+
+
+   public TokenAnalysis(String[] tokens) {
+      this.tokens = tokens;
+      this.shapes = new int[tokens.length];
+      for (int i=0; i<tokens.length; i++) {
+         this.shapes[i] = getShape(tokens[i]);
+      }
+   }
+
+
+   public String[] getTokens() {
+      return this.tokens;
+   }
+
+   public int length() {
+      return this.tokens.length;
+   }
+
+   public String getToken(int position) {
+      return this.tokens[position];
+   }
+
+
+   /**
+    * Check if the token at this position has all the given shape flags.
+    */
+   public boolean is(int position, int flags) {
+      return (this.shapes[position] & flags) == flags;
+   }
+
+   public int getShape(int position) {
+      return this.shapes[position];
+   }
+
+
+   public String getLowerForm(int position) {
+      return getIndex().getLowerForm(position);
+   }
+
+
+   /**
+    * Index of the tokens (positions of word forms).
+    */
+   public SentenceTokenIndex getIndex() {
+      if (this.index == null) {
+         this.index = new SentenceTokenIndex(this.tokens);
+      }
+      return this.index;
+   }
+
+
+   /**
+    * POS tags of the sentence, the tagger is called only the first time.
+    */
+   public String[] getPOSTags(POSTagger tagger) {
+      if (this.posTags == null) {
+         this.posTags = tagger.getPOSTags(this.tokens);
+      }
+      return this.posTags;
+   }
+
+
+
+   private static int getShape(String form) {
+
+      int length = form.length();
+      boolean allLetters = true;
+      boolean allDigits = true;
+      boolean noLowercase = true;
+      boolean hasDigit = false;
+      boolean hasLetter = false;
+
+      for (int i=0; i<length; i++) {
+         char letter = form.charAt(i);
+         if (Character.isDigit(letter)) {
+            hasDigit = true;
+         } else {
+            allDigits = false;
+         }
+         if (Character.isLetter(letter)) {
+            hasLetter = true;
+            if (Character.isLowerCase(letter)) {
+               noLowercase = false;
+            }
+         } else {
+            allLetters = false;
+         }
+      }
+
+      boolean isI = form.equalsIgnoreCase("I");
+
+      int shape = 0;
+      if (!isI && length > 0 && Character.isUpperCase(form.charAt(0)))
+         shape |= CAPITALIZED;
+      if (!isI && allLetters && noLowercase)
+         shape |= ALL_UPPER;
+      if (allDigits)
+         shape |= NUMBER;
+      if (hasDigit)
+         shape |= HAS_DIGIT;
+      if (hasLetter)
+         shape |= HAS_LETTER;
+      return shape;
+   }
+
+}
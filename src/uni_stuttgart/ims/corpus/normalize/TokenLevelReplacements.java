@@ -11,6 +11,9 @@ import java.util.List;
 
 import de.uni_stuttgart.ims.corpus.compannotation.ComparisonAnnotation;
 import de.uni_stuttgart.ims.corpus.compannotation.ComparisonAnnotationToken;
+import de.uni_stuttgart.ims.corpus.compannotation.ImmutableComparisonAnnotation;
+import de.uni_stuttgart.ims.corpus.util.TokenReplacementRules;
+import de.uni_stuttgart.ims.nlpbase.nlp.ArgumentType;
 
 
 /**
@@ -22,29 +25,41 @@ import de.uni_stuttgart.ims.corpus.compannotation.ComparisonAnnotationToken;
  */
 public class TokenLevelReplacements {
 
-   public static void globalReplaceTokens(String[] tokens, Integer[] newIndices,
-         String[] replacements) {
-      for (int i = 0; i < tokens.length; i++) {
-         if (tokens[i].equals("="))
-            replacements[i + 1] = "eq"; // beware of index token array from 0 /
-                                        // tokens from 1
+   public static void globalReplaceTokens(String[] tokens, IndexMap indexMap) {
+      TokenReplacementRules rules = TokenReplacementRules.getDefault();
+      for (int i = 1; i <= tokens.length; i++) {
+         replaceToken(tokens, i, indexMap, rules);
       }
    }
 
-   public static String getSentenceString(String[] tokens, Integer[] newIndices,
-         String[] replacements) {
-      String newSentence = "";
-      for (int i = 1; i < newIndices.length; i++) {
-         if (newIndices[i] != null) {
-            if (replacements[i] != null) {
-               newSentence += " " + replacements[i];
-            } else {
-               newSentence += " " + tokens[i - 1];
-            }
+   /**
+    * Replace token i (starting at 1) if necessary.
+    */
+   public static void replaceToken(String[] tokens, int i, IndexMap indexMap) {
+      replaceToken(tokens, i, indexMap, TokenReplacementRules.getDefault());
+   }
+
+   /**
+    * Replace token i (starting at 1) if one of the rules applies.
+    */
+   public static void replaceToken(String[] tokens, int i, IndexMap indexMap,
+         TokenReplacementRules rules) {
+      // beware of index token array from 0 / tokens from 1
+      String replacement = rules.getReplacement(tokens[i - 1]);
+      if (replacement != null)
+         indexMap.setReplacement(i, replacement);
+   }
+
+   public static String getSentenceString(String[] tokens, IndexMap indexMap) {
+      StringBuilder newSentence = new StringBuilder();
+      for (int i = 1; i < indexMap.size(); i++) {
+         if (!indexMap.isDeleted(i)) {
+            String replacement = indexMap.getReplacement(i);
+            newSentence.append(' ');
+            newSentence.append((replacement != null) ? replacement : tokens[i - 1]);
          }
       }
-      newSentence = newSentence.trim();
-      return newSentence;
+      return newSentence.toString().trim();
    }
 
 
@@ -52,45 +67,33 @@ public class TokenLevelReplacements {
     * Change all token indices of all annotations.
     */
    public static void convertAnnotation(ComparisonAnnotation annotation,
-         Integer[] newIndices, String[] replacements) {
-
-      ComparisonAnnotationToken[] newpred = convertAnnotationTokens(
-            annotation.getPredicate(), newIndices, replacements);
-      annotation.setPredicate(newpred);
-
-      List<ComparisonAnnotationToken[]> entity1list = annotation.getEntity1();
-      annotation.removeEntity1();
-      for (ComparisonAnnotationToken[] entity1 : entity1list) {
-         ComparisonAnnotationToken[] newentity1 = convertAnnotationTokens(
-               entity1, newIndices, replacements);
-         annotation.addEntity1(newentity1);
-      }
+         IndexMap indexMap) {
+      annotation.restore(convertAnnotation(annotation.freeze(), indexMap));
+   }
 
-      List<ComparisonAnnotationToken[]> entity2list = annotation.getEntity2();
-      annotation.removeEntity2();
-      for (ComparisonAnnotationToken[] entity2 : entity2list) {
-         ComparisonAnnotationToken[] newentity2 = convertAnnotationTokens(
-               entity2, newIndices, replacements);
-         annotation.addEntity2(newentity2);
-      }
 
-      List<ComparisonAnnotationToken[]> aspectlist = annotation.getAspect();
-      annotation.removeAspect();
-      for (ComparisonAnnotationToken[] aspect : aspectlist) {
-         ComparisonAnnotationToken[] newaspect = convertAnnotationTokens(aspect,
-               newIndices, replacements);
-         annotation.addAspect(newaspect);
-      }
+   /**
+    * Change all token indices of all annotations,
+    * return the changed version.
+    */
+   public static ImmutableComparisonAnnotation convertAnnotation(
+         ImmutableComparisonAnnotation annotation, IndexMap indexMap) {
 
-      List<ComparisonAnnotationToken[]> sentimentlist = annotation
-            .getSentiment();
-      annotation.removeSentiment();
-      for (ComparisonAnnotationToken[] sentiment : sentimentlist) {
-         ComparisonAnnotationToken[] newsentiment = convertAnnotationTokens(
-               sentiment, newIndices, replacements);
-         annotation.addSentiment(newsentiment);
+      ComparisonAnnotationToken[] newpred = convertAnnotationTokens(
+            annotation.getPredicate(), indexMap);
+      annotation = annotation.withPredicate(newpred);
+
+      for (ArgumentType argument : new ArgumentType[] {ArgumentType.entity1,
+            ArgumentType.entity2, ArgumentType.aspect, ArgumentType.sentiment}) {
+         List<ComparisonAnnotationToken[]> list = annotation.getArgument(argument);
+         List<ComparisonAnnotationToken[]> newlist = new ArrayList<ComparisonAnnotationToken[]>(list.size());
+         for (ComparisonAnnotationToken[] tokens : list) {
+            newlist.add(convertAnnotationTokens(tokens, indexMap));
+         }
+         annotation = annotation.withArgument(argument, newlist);
       }
 
+      return annotation;
    }
 
 
@@ -98,14 +101,13 @@ public class TokenLevelReplacements {
     * Change all words of all annotations.
     */
    public static ComparisonAnnotationToken[] convertAnnotationTokens(
-         ComparisonAnnotationToken[] tokenlist, Integer[] newIndices,
-         String[] replacements) {
+         ComparisonAnnotationToken[] tokenlist, IndexMap indexMap) {
 
       List<ComparisonAnnotationToken> list = new ArrayList<ComparisonAnnotationToken>();
       for (ComparisonAnnotationToken token : tokenlist) {
-         Integer newIndex = newIndices[token.tokenNumber];
-         if (newIndex != null) {
-            String replacement = replacements[token.tokenNumber];
+         int newIndex = indexMap.get(token.tokenNumber);
+         if (newIndex != IndexMap.DELETED) {
+            String replacement = indexMap.getReplacement(token.tokenNumber);
             if (replacement != null) {
                list.add(new ComparisonAnnotationToken(replacement, newIndex));
             } else {
@@ -116,9 +118,9 @@ public class TokenLevelReplacements {
             // something
             // This goes very wrong if we find something totally different....
             for (int j = token.tokenNumber; j > 0; j--) {
-               Integer newIndex2 = newIndices[j];
-               if (newIndex2 != null) {
-                  String replacement = replacements[j];
+               int newIndex2 = indexMap.get(j);
+               if (newIndex2 != IndexMap.DELETED) {
+                  String replacement = indexMap.getReplacement(j);
                   if (replacement != null) {
                      list.add(new ComparisonAnnotationToken(replacement,
                            newIndex2));
@@ -0,0 +1,35 @@
+// (c) Wiltrud Kessler
+// 19.10.2026
+// This code is distributed under a Creative Commons
+// Attribution-NonCommercial-ShareAlike 3.0 Unported license
+// http://creativecommons.org/licenses/by-nc-sa/3.0/
+
+package de.uni_stuttgart.ims.corpus.normalize;
+
+import de.uni_stuttgart.ims.corpus.compannotation.SentenceAnnotation;
+
+
+/**
+ * Chooses the part of a sentence that is kept by LengthNormalizer
+ * (the parser gets only this window).
+ *
+ * Implementations must be usable from several threads at the same time.
+ *
+ * @author kesslewd
+ *
+ */
+public interface WindowSelector {
+
+   /**
+    * Get first and last token (counting starts at 1) of the window.
+    *
+    * @param annotation Annotation of the sentence, may be null.
+    */
+   public int[] getWindow (SentenceAnnotation annotation, int sentenceLength);
+
+   /**
+    * Sentences longer than this are always cut.
+    */
+   public int getTokenLimit ();
+
+}
@@ -0,0 +1,323 @@
+// (c) Wiltrud Kessler
+// 19.10.2026
+// This code is distributed under a Creative Commons
+// Attribution-NonCommercial-ShareAlike 3.0 Unported license
+// http://creativecommons.org/licenses/by-nc-sa/3.0/
+
+package de.uni_stuttgart.ims.corpus.run;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import de.uni_stuttgart.ims.corpus.util.ModelRegistry;
+import de.uni_stuttgart.ims.corpus.util.Options;
+import de.uni_stuttgart.ims.corpus.util.StageFailedException;
+import de.uni_stuttgart.ims.corpus.util.WorkerPool;
+
+
+/**
+ * Run the processing steps of many configs (e.g., all files in configs/)
+ * at the same time in one process.
+ *
+ * All configs share the models (see ModelRegistry) and one thread pool,
+ * the number of threads of the pool is the thread budget of the whole batch.
+ * The steps of one config are run in order, a failed step ends the config.
+ *
+ * Options (config file of the batch):
+ * - batchConfigs: config files to run, separated by ':'
+ * - numThreads: size of the thread pool shared by all configs
+ * - maxConcurrentConfigs: how many configs run at the same time
+ *   (default: number of configs, at most numThreads)
+ * - stages: stages to run for every config, separated by ':' (see PipelineStages),
+ *   the option 'stages' in a config file is used instead if it is there
+ * - logDirectory: everything a config prints goes to '<config name>.log'
+ *   in this directory (default: print everything to the console),
+ *   messages of the threads of the shared pool still go to the console
+ *
+ * At the end, time and sentences per second of every step are printed.
+ *
+ * @author kesslewd
+ *
+ */
+public class BatchRunner {
+
+   /**
+    * Everything printed by the threads of a config goes to its log,
+    * everything else to the console.
+    */
+   private static class ThreadOutput extends OutputStream {
+
+      private PrintStream console;
+      private ThreadLocal<PrintStream> log = new ThreadLocal<PrintStream>();
+
+      ThreadOutput(PrintStream console) {
+         this.console = console;
+      }
+
+      void setLog(PrintStream log) {
+         this.log.set(log);
+      }
+
+      private PrintStream current() {
+         PrintStream thisLog = this.log.get();
+         return (thisLog == null) ? this.console : thisLog;
+      }
+
+      @Override
+      public void write(int b) {
+         current().write(b);
+      }
+
+      @Override
+      public void write(byte[] b, int off, int len) {
+         current().write(b, off, len);
+      }
+
+      @Override
+      public void flush() {
+         current().flush();
+      }
+   }
+
+
+   /**
+    * Result of one step of a config.
+    */
+   private static class StepResult {
+      String stage;
+      long millis;
+      int sentences;
+      boolean success;
+   }
+
+
+   /**
+    * All steps of one config.
+    */
+   private static class ConfigRun implements Runnable {
+
+      String configFilename;
+      String[] defaultStages;
+      ThreadOutput output;
+      File logFile = null;
+
+      String status = "not run";
+      long millis = 0;
+      List<StepResult> steps = new ArrayList<StepResult>();
+
+      ConfigRun(String configFilename, String[] defaultStages, ThreadOutput output, File logDirectory) {
+         this.configFilename = configFilename;
+         this.defaultStages = defaultStages;
+         this.output = output;
+         if (logDirectory != null) {
+            this.logFile = new File(logDirectory, new File(configFilename).getName() + ".log");
+         }
+      }
+
+      @Override
+      public void run() {
+         long start = System.currentTimeMillis();
+         PrintStream log = null;
+         try {
+            if (this.logFile != null) {
+               log = new PrintStream(new FileOutputStream(this.logFile), true, "UTF-8");
+               this.output.setLog(log);
+            }
+            this.status = runSteps() ? "done" : "FAILED";
+         } catch (IOException e) {
+            System.err.println("ERROR, cannot write log " + this.logFile + ": " + e);
+            this.status = "FAILED";
+         } finally {
+            this.output.setLog(null);
+            if (log != null) {
+               log.close();
+            }
+            this.millis = System.currentTimeMillis() - start;
+         }
+         System.out.println("config " + this.configFilename + " " + this.status + " in " + this.millis + " ms");
+      }
+
+      /**
+       * @return true if all steps were successful.
+       */
+      private boolean runSteps() {
+
+         Options options;
+         try {
+            options = Options.readOptionsFile(this.configFilename);
+         } catch (IOException e) {
+            System.err.println("ERROR !!! while parsing options file: " + e);
+            return false;
+         }
+
+         String[] stages = this.defaultStages;
+         String stagesOption = options.getOption("stages");
+         if (stagesOption != null && !stagesOption.isEmpty()) {
+            stages = options.getListOption("stages");
+         }
+         if (stages == null || stages.length == 0) {
+            System.err.println("ERROR, no stages for config " + this.configFilename);
+            return false;
+         }
+
+         for (String stageName : stages) {
+            stageName = stageName.trim();
+            PipelineStages.Stage stage = PipelineStages.get(stageName);
+            if (stage == null) {
+               System.err.println("ERROR, unknown stage: " + stageName + ", stages are " + PipelineStages.getNames());
+               return false;
+            }
+
+            System.out.println("===== " + stageName + " " + this.configFilename + " =====");
+            StepResult step = new StepResult();
+            step.stage = stageName;
+            this.steps.add(step);
+            long start = System.currentTimeMillis();
+            try {
+               step.sentences = stage.run(options);
+               step.success = true;
+            } catch (StageFailedException e) {
+               System.err.println("Step failed: " + e.getMessage());
+            } catch (Exception e) {
+               e.printStackTrace();
+            }
+            step.millis = System.currentTimeMillis() - start;
+            if (!step.success) {
+               return false;
+            }
+         }
+         return true;
+      }
+   }
+
+
+
+   public static void main(String[] args) throws InterruptedException {
+
+      // ===== GET USER-DEFINED OPTIONS =====
+
+      Options options = null;
+      try {
+
+         if (args.length < 1) {
+            System.err.println("Usage: BatchRunner <config file>");
+            System.exit(1);
+         }
+         options = Options.readOptionsFile(args[0]);
+
+      } catch (IOException e) {
+         System.err.println("ERROR !!! while parsing options file: " + e);
+         System.exit(1);
+      }
+
+      String configsOption = options.getOption("batchConfigs");
+      if (configsOption == null || configsOption.isEmpty()) {
+         System.err.println("ERROR, option batchConfigs missing");
+         System.exit(1);
+      }
+      String[] configs = options.getListOption("batchConfigs");
+
+      String[] stages = null;
+      String stagesOption = options.getOption("stages");
+      if (stagesOption != null && !stagesOption.isEmpty()) {
+         stages = options.getListOption("stages");
+      }
+
+      File logDirectory = null;
+      String logDirectoryName = options.getOption("logDirectory");
+      if (logDirectoryName != null && !logDirectoryName.isEmpty()) {
+         logDirectory = new File(logDirectoryName);
+         if (!logDirectory.isDirectory()) {
+            System.err.println("ERROR, log directory does not exist: " + logDirectoryName);
+            System.exit(1);
+         }
+      }
+
+
+      // ===== INITIALIZATION =====
+
+      // One pool for all configs, the options of the configs are not used for it
+      WorkerPool.setKeepAlive(true);
+      WorkerPool.getPool(options);
+      int numThreads = WorkerPool.getNumThreads(options);
+      int maxConcurrent = Math.max(1, options.getIntOption("maxConcurrentConfigs",
+            Math.min(configs.length, numThreads)));
+
+      PrintStream out = System.out;
+      PrintStream err = System.err;
+      ThreadOutput output = new ThreadOutput(out);
+      if (logDirectory != null) {
+         PrintStream routed = new PrintStream(output, true);
+         System.setOut(routed);
+         System.setErr(routed);
+      }
+
+      System.out.println("Run " + configs.length + " configs, " + maxConcurrent + " at the same time, with "
+            + numThreads + " threads" + ((logDirectory == null) ? "" : ", logs in " + logDirectory));
+
+
+      // ===== PROCESSING =====
+
+      long batchStart = System.currentTimeMillis();
+      List<ConfigRun> runs = new ArrayList<ConfigRun>();
+      List<Future<?>> pending = new ArrayList<Future<?>>();
+      ExecutorService executor = Executors.newFixedThreadPool(maxConcurrent);
+      for (String config : configs) {
+         ConfigRun run = new ConfigRun(config.trim(), stages, output, logDirectory);
+         runs.add(run);
+         pending.add(executor.submit(run));
+      }
+      for (Future<?> future : pending) {
+         try {
+            future.get();
+         } catch (Exception e) {
+            e.printStackTrace();
+         }
+      }
+      executor.shutdown();
+      long batchMillis = System.currentTimeMillis() - batchStart;
+
+      System.setOut(out);
+      System.setErr(err);
+
+
+      // ===== SUMMARY =====
+
+      int failed = 0;
+      System.out.println();
+      System.out.println("===== Summary =====");
+      for (ConfigRun run : runs) {
+         if (!run.status.equals("done")) {
+            failed++;
+         }
+         System.out.println(run.configFilename + ": " + run.status + " in " + run.millis + " ms");
+         for (StepResult step : run.steps) {
+            System.out.println("   " + step.stage + ": " + (step.success ? "" : "FAILED, ")
+                  + step.millis + " ms, " + step.sentences + " sentences"
+                  + ((step.millis > 0) ? String.format(" (%.1f sentences/s)", 1000.0 * step.sentences / step.millis) : ""));
+         }
+      }
+      System.out.println("Batch done in " + batchMillis + " ms, " + failed + " of " + runs.size() + " configs failed.");
+
+
+      // ===== CLEANUP =====
+
+      ModelRegistry.printStatistics();
+      ModelRegistry.closeAll();
+      WorkerPool.setKeepAlive(false);
+      WorkerPool.shutdown();
+
+      if (failed > 0) {
+         System.exit(1);
+      }
+   }
+
+}
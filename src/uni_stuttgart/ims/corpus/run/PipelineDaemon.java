@@ -0,0 +1,257 @@
+// (c) Wiltrud Kessler
+// 19.10.2026
+// This code is distributed under a Creative Commons
+// Attribution-NonCommercial-ShareAlike 3.0 Unported license
+// http://creativecommons.org/licenses/by-nc-sa/3.0/
+
+package de.uni_stuttgart.ims.corpus.run;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+import de.uni_stuttgart.ims.corpus.util.ModelRegistry;
+import de.uni_stuttgart.ims.corpus.util.Options;
+import de.uni_stuttgart.ims.corpus.util.StageFailedException;
+import de.uni_stuttgart.ims.corpus.util.WorkerPool;
+import de.uni_stuttgart.ims.util.Fileutils;
+
+
+/**
+ * Long-running process that runs processing steps for many configs,
+ * so that models (see ModelRegistry) are loaded and worker threads
+ * are started only once.
+ *
+ * Jobs are files '<name>.job' in the spool directory, one step per line:
+ *    <stage> <config file>
+ * with the stages of PipelineStages (ims, jdpa, liu, usage, normalize, srl),
+ * e.g., 'liu configs/liu.conf' and 'normalize configs/liu.conf'.
+ * Lines starting with # are ignored.
+ * The steps of a job are run in order, a failed step ends the job.
+ * Jobs are run one after the other, the oldest first
+ * (everything a step prints goes to the log of its job,
+ * see BatchRunner to run several configs at the same time).
+ *
+ * While a job runs, its file is renamed to '<name>.running', afterwards to
+ * '<name>.done' or '<name>.failed'. Everything the steps print goes to
+ * '<name>.log', a summary line per job is printed by the daemon.
+ * The daemon stops when a file 'stop' is put into the spool directory.
+ *
+ * Options (config file of the daemon):
+ * - spoolDirectory: directory with the job files
+ * - numThreads: size of the thread pool shared by all jobs
+ * - spoolPollMillis: how often to look for new jobs (default: 1000)
+ *
+ * @author kesslewd
+ *
+ */
+public class PipelineDaemon {
+
+   private static File spoolDirectory;
+
+
+   public static void main(String[] args) throws InterruptedException {
+
+      // ===== GET USER-DEFINED OPTIONS =====
+
+      Options options = null;
+      try {
+
+         if (args.length < 1) {
+            System.err.println("Usage: PipelineDaemon <config file>");
+            System.exit(1);
+         }
+         options = Options.readOptionsFile(args[0]);
+
+      } catch (IOException e) {
+         System.err.println("ERROR !!! while parsing options file: " + e);
+         System.exit(1);
+      }
+
+      String spoolDirectoryName = options.getOption("spoolDirectory");
+      if (spoolDirectoryName == null || spoolDirectoryName.isEmpty()) {
+         System.err.println("ERROR, option spoolDirectory missing");
+         System.exit(1);
+      }
+      spoolDirectory = new File(spoolDirectoryName);
+      if (!spoolDirectory.isDirectory()) {
+         System.err.println("ERROR, spool directory does not exist: " + spoolDirectoryName);
+         System.exit(1);
+      }
+      int pollMillis = options.getIntOption("spoolPollMillis", 1000);
+
+
+      // ===== INITIALIZATION =====
+
+      // One pool for all jobs, the options of the jobs are not used for it
+      WorkerPool.setKeepAlive(true);
+      WorkerPool.getPool(options);
+      File stopFile = new File(spoolDirectory, "stop");
+
+      for (File running : spoolDirectory.listFiles(getFilter(".running"))) {
+         System.out.println("WARNING, job was running when the last daemon stopped: " + running);
+      }
+      System.out.println("Waiting for jobs in " + spoolDirectory + " with " + WorkerPool.getNumThreads(options)
+            + " threads, stages " + PipelineStages.getNames() + ", stop with file " + stopFile);
+
+
+      // ===== PROCESSING =====
+
+      int jobs = 0;
+      int failedJobs = 0;
+      while (!stopFile.exists()) {
+         File job = getNextJob();
+         if (job == null) {
+            Thread.sleep(pollMillis);
+            continue;
+         }
+         Boolean success = runJob(job);
+         if (success != null) {
+            jobs++;
+            if (!success) {
+               failedJobs++;
+            }
+         }
+      }
+
+
+      // ===== CLEANUP =====
+
+      stopFile.delete();
+      System.out.println("Stopped after " + jobs + " jobs (" + failedJobs + " failed).");
+      ModelRegistry.printStatistics();
+      ModelRegistry.closeAll();
+      WorkerPool.setKeepAlive(false);
+      WorkerPool.shutdown();
+   }
+
+
+
+   /**
+    * Oldest job file, null if there is none.
+    */
+   private static File getNextJob() {
+      File[] jobs = spoolDirectory.listFiles(getFilter(".job"));
+      if (jobs == null || jobs.length == 0) {
+         return null;
+      }
+      Arrays.sort(jobs, new Comparator<File>() {
+         @Override
+         public int compare(File f1, File f2) {
+            if (f1.lastModified() != f2.lastModified()) {
+               return (f1.lastModified() < f2.lastModified()) ? -1 : 1;
+            }
+            return f1.getName().compareTo(f2.getName());
+         }
+      });
+      return jobs[0];
+   }
+
+
+   private static FilenameFilter getFilter(final String extension) {
+      return new FilenameFilter() {
+         @Override
+         public boolean accept(File dir, String name) {
+            return name.endsWith(extension);
+         }
+      };
+   }
+
+
+
+   /**
+    * Run all steps of the job.
+    * @return true if all steps were successful, null if the job could not be started.
+    */
+   private static Boolean runJob(File jobFile) {
+
+      String name = jobFile.getName().substring(0, jobFile.getName().length() - ".job".length());
+      File runningFile = new File(spoolDirectory, name + ".running");
+      if (!jobFile.renameTo(runningFile)) {
+         System.err.println("ERROR, cannot start job " + jobFile + ", removing it");
+         jobFile.delete();
+         return null;
+      }
+
+      List<String[]> steps = new ArrayList<String[]>();
+      PrintStream log = null;
+      try {
+         BufferedReader in = Fileutils.getReadFile(runningFile.getPath());
+         try {
+            String strLine;
+            while ((strLine = in.readLine()) != null) {
+               strLine = strLine.trim();
+               if (!strLine.isEmpty() && !strLine.startsWith("#")) {
+                  steps.add(strLine.split("\\s+", 2));
+               }
+            }
+         } finally {
+            Fileutils.closeSilently(in);
+         }
+         log = new PrintStream(new FileOutputStream(new File(spoolDirectory, name + ".log")), true, "UTF-8");
+      } catch (IOException e) {
+         System.err.println("ERROR, cannot start job " + name + ": " + e);
+         runningFile.renameTo(new File(spoolDirectory, name + ".failed"));
+         return false;
+      }
+
+      long jobStart = System.currentTimeMillis();
+      StringBuilder summary = new StringBuilder();
+      boolean success = true;
+
+      PrintStream out = System.out;
+      PrintStream err = System.err;
+      System.setOut(log);
+      System.setErr(log);
+      try {
+         for (String[] step : steps) {
+            PipelineStages.Stage stage = PipelineStages.get(step[0]);
+            if (stage == null || step.length < 2) {
+               System.err.println("ERROR, unknown stage or config file missing: " + Arrays.toString(step)
+                     + ", expected <stage> <config file> with stages " + PipelineStages.getNames());
+               success = false;
+               break;
+            }
+
+            System.out.println("===== " + step[0] + " " + step[1] + " =====");
+            long start = System.currentTimeMillis();
+            int sentences = 0;
+            try {
+               sentences = stage.run(Options.readOptionsFile(step[1]));
+            } catch (IOException e) {
+               System.err.println("ERROR !!! while parsing options file: " + e);
+               success = false;
+            } catch (StageFailedException e) {
+               System.err.println("Step failed: " + e.getMessage());
+               success = false;
+            } catch (Exception e) {
+               e.printStackTrace();
+               success = false;
+            }
+            summary.append(' ').append(step[0]).append(' ')
+                  .append(System.currentTimeMillis() - start).append(" ms, ")
+                  .append(sentences).append(" sentences;");
+            if (!success) {
+               break;
+            }
+         }
+      } finally {
+         System.setOut(out);
+         System.setErr(err);
+         log.close();
+      }
+
+      runningFile.renameTo(new File(spoolDirectory, name + (success ? ".done" : ".failed")));
+      System.out.println("job " + name + (success ? " done" : " FAILED") + " in "
+            + (System.currentTimeMillis() - jobStart) + " ms:" + summary);
+      return success;
+   }
+
+}
@@ -0,0 +1,97 @@
+// (c) Wiltrud Kessler
+// 19.10.2026
+// This code is distributed under a Creative Commons
+// Attribution-NonCommercial-ShareAlike 3.0 Unported license
+// http://creativecommons.org/licenses/by-nc-sa/3.0/
+
+package de.uni_stuttgart.ims.corpus.run;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import de.uni_stuttgart.ims.corpus.comparatives.ims.IMSExtractor;
+import de.uni_stuttgart.ims.corpus.comparatives.jdpa.JDPAConverter;
+import de.uni_stuttgart.ims.corpus.comparatives.liu.LiuConverter;
+import de.uni_stuttgart.ims.corpus.comparatives.usage.USAGEExtractor;
+import de.uni_stuttgart.ims.corpus.normalize.NormalizeSentence;
+import de.uni_stuttgart.ims.corpus.srlannotation.CreateSRLTrainingData;
+import de.uni_stuttgart.ims.corpus.util.Options;
+
+
+/**
+ * The processing steps (stages) that are configured with a config file,
+ * by the name used in job files:
+ * ims, jdpa, liu, usage (convert a corpus), normalize, srl.
+ *
+ * @author kesslewd
+ *
+ */
+public class PipelineStages {
+
+   /**
+    * One processing step.
+    */
+   public interface Stage {
+      /**
+       * @return number of sentences processed.
+       * @throws StageFailedException if something goes wrong (the error has been printed).
+       */
+      int run(Options options) throws Exception;
+   }
+
+
+   private static Map<String, Stage> stages = new LinkedHashMap<String, Stage>();
+
+   static {
+      stages.put("ims", new Stage() {
+         @Override
+         public int run(Options options) {
+            return IMSExtractor.run(options);
+         }
+      });
+      stages.put("jdpa", new Stage() {
+         @Override
+         public int run(Options options) {
+            return JDPAConverter.run(options);
+         }
+      });
+      stages.put("liu", new Stage() {
+         @Override
+         public int run(Options options) {
+            return LiuConverter.run(options);
+         }
+      });
+      stages.put("usage", new Stage() {
+         @Override
+         public int run(Options options) {
+            return USAGEExtractor.run(options);
+         }
+      });
+      stages.put("normalize", new Stage() {
+         @Override
+         public int run(Options options) throws Exception {
+            return NormalizeSentence.run(options);
+         }
+      });
+      stages.put("srl", new Stage() {
+         @Override
+         public int run(Options options) {
+            return CreateSRLTrainingData.run(options);
+         }
+      });
+   }
+
+
+   /**
+    * Get the stage with this name, null if there is none.
+    */
+   public static Stage get(String name) {
+      return stages.get(name);
+   }
+
+   public static Set<String> getNames() {
+      return stages.keySet();
+   }
+
+}
@@ -0,0 +1,249 @@
+// (c) Wiltrud Kessler
+// 19.10.2026
+// This code is distributed under a Creative Commons
+// Attribution-NonCommercial-ShareAlike 3.0 Unported license
+// http://creativecommons.org/licenses/by-nc-sa/3.0/
+
+package de.uni_stuttgart.ims.corpus.srlannotation;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedList;
+
+import de.uni_stuttgart.ims.corpus.compannotation.SentenceAnnotation;
+import de.uni_stuttgart.ims.nlpbase.nlp.SRLSentence;
+import de.uni_stuttgart.ims.nlpbase.nlp.Word;
+
+
+/**
+ * Finds the annotation line that belongs to a parse by the tokens
+ * of the sentence, so that a sentence that is missing or
+ * duplicated in one of the files does not move all following
+ * annotations to the wrong parses.
+ *
+ * Parses are given in order. The next lines of the annotations file
+ * (at most lookahead lines) are kept, the first one with the same tokens
+ * as the parse is used, the lines before it have no parse and are skipped.
+ * If none of the lines has the same tokens, the parse has no annotation.
+ * Short sentences often occur several times, so the line found may belong
+ * to a later parse with the same tokens: if one of the lines before it
+ * has the tokens of the next parse, no lines are skipped and
+ * the parse has no annotation.
+ * Lines and parses without a partner are counted and (if wanted) reported.
+ *
+ * Tokens are compared by a hash of the token sequence, the tokens
+ * themselves are only compared if the hashes are the same.
+ *
+ * @author kesslewd
+ *
+ */
+public class AnnotationJoin {
+
+   /**
+    * Annotation line that has not been used yet.
+    */
+   private static class Pending {
+      int lineno;
+      SentenceAnnotation annotation;
+      String tokens;
+      long hash;
+   }
+
+
+   private BufferedReader in;
+   private int lookahead;
+   private boolean logErrors;
+   private boolean inputEnded = false;
+
+   private LinkedList<Pending> pending = new LinkedList<Pending>();
+   private int linesRead = 0;
+
+   private int matched = 0;
+   private int parsesWithoutAnnotation = 0;
+   private int annotationsWithoutParse = 0;
+
+
+
+   /**
+    * @param in Annotations file.
+    * @param lookahead Number of annotation lines kept to find the one of a parse.
+    * @param logErrors Print every annotation line and parse without a partner.
+    */
+   public AnnotationJoin(BufferedReader in, int lookahead, boolean logErrors) {
+      this.in = in;
+      this.lookahead = Math.max(1, lookahead);
+      this.logErrors = logErrors;
+   }
+
+
+
+   /**
+    * Get the annotation of this parse.
+    * @param nextSentence Parse after this one, null if there is none.
+    * @return annotation with the same tokens, null if there is none
+    *    among the next lookahead lines.
+    */
+   public SentenceAnnotation getAnnotation(SRLSentence sentence, SRLSentence nextSentence, int parseNo)
+         throws IOException {
+
+      fill();
+
+      String tokens = getTokens(sentence);
+      int position = find(tokens, this.pending.size());
+
+      if (position < 0) {
+         skipParse(parseNo, tokens);
+         return null;
+      }
+      if (position > 0 && nextSentence != null && find(getTokens(nextSentence), position) >= 0) {
+         // The line of this parse is missing, the line found belongs to a later parse
+         skipParse(parseNo, tokens);
+         return null;
+      }
+
+      // All lines before this one have no parse
+      for (int i=0; i<position; i++) {
+         skipAnnotation(this.pending.removeFirst());
+      }
+      this.matched++;
+      return this.pending.removeFirst().annotation;
+   }
+
+
+   /**
+    * Position of the first of the first 'limit' lines with these tokens, -1 if there is none.
+    */
+   private int find(String tokens, int limit) {
+      long hash = getHash(tokens);
+      Iterator<Pending> itty = this.pending.iterator();
+      for (int position=0; position<limit && itty.hasNext(); position++) {
+         Pending candidate = itty.next();
+         if (candidate.hash == hash && candidate.tokens.equals(tokens)) {
+            return position;
+         }
+      }
+      return -1;
+   }
+
+
+   /**
+    * All annotation lines that are left have no parse.
+    */
+   public void finish() throws IOException {
+      fill();
+      while (!this.pending.isEmpty()) {
+         skipAnnotation(this.pending.removeFirst());
+         fill();
+      }
+   }
+
+
+   public void printStatistics() {
+      System.out.println("Join by tokens: " + this.matched + " parses with annotation, "
+            + this.parsesWithoutAnnotation + " parses without annotation, "
+            + this.annotationsWithoutParse + " annotation lines without parse.");
+   }
+
+
+   public int getMatched() {
+      return this.matched;
+   }
+
+   public int getParsesWithoutAnnotation() {
+      return this.parsesWithoutAnnotation;
+   }
+
+   public int getAnnotationsWithoutParse() {
+      return this.annotationsWithoutParse;
+   }
+
+
+
+   /**
+    * Read annotation lines until there are lookahead lines
+    * or the file has ended.
+    */
+   private void fill() throws IOException {
+      while (!this.inputEnded && this.pending.size() < this.lookahead) {
+         String line = this.in.readLine();
+         if (line == null) {
+            this.inputEnded = true;
+            break;
+         }
+         this.linesRead++;
+         Pending next = new Pending();
+         next.lineno = this.linesRead;
+         next.annotation = new SentenceAnnotation(line);
+         next.tokens = normalizeTokens(next.annotation.getSentence());
+         next.hash = getHash(next.tokens);
+         this.pending.add(next);
+      }
+   }
+
+
+   private void skipAnnotation(Pending skipped) {
+      if (this.logErrors) {
+         System.out.println("WARNING, no parse found for annotation line " + skipped.lineno
+               + " (" + skipped.annotation.getId() + "), skip annotation: " + skipped.tokens);
+      }
+      this.annotationsWithoutParse++;
+   }
+
+
+   private void skipParse(int parseNo, String tokens) {
+      if (this.logErrors) {
+         System.out.println("WARNING, no annotation found for parse " + parseNo
+               + ", skip parse: " + tokens);
+      }
+      this.parsesWithoutAnnotation++;
+   }
+
+
+
+   /**
+    * Word forms of the parse separated by one space.
+    */
+   private static String getTokens(SRLSentence sentence) {
+      StringBuilder tokens = new StringBuilder();
+      Word word;
+      int i = 1;
+      while ((word = sentence.getWord(i)) != null) {
+         if (i > 1) {
+            tokens.append(' ');
+         }
+         tokens.append(word.getForm());
+         i++;
+      }
+      return tokens.toString();
+   }
+
+
+   /**
+    * Tokens of the sentence separated by one space.
+    */
+   private static String normalizeTokens(String sentence) {
+      StringBuilder tokens = new StringBuilder();
+      for (String token : sentence.trim().split(" +")) {
+         if (tokens.length() > 0) {
+            tokens.append(' ');
+         }
+         tokens.append(token);
+      }
+      return tokens.toString();
+   }
+
+
+   /**
+    * 64 bit FNV-1a hash of the token sequence.
+    */
+   private static long getHash(String tokens) {
+      long hash = 0xcbf29ce484222325L;
+      for (int i=0; i<tokens.length(); i++) {
+         hash ^= tokens.charAt(i);
+         hash *= 0x100000001b3L;
+      }
+      return hash;
+   }
+
+}
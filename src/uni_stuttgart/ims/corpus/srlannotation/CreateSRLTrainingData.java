@@ -20,9 +20,8 @@ import de.uni_stuttgart.ims.nlpbase.nlp.PredicateType;
 import de.uni_stuttgart.ims.corpus.compannotation.ComparisonAnnotation;
 import de.uni_stuttgart.ims.corpus.compannotation.ComparisonAnnotationToken;
 import de.uni_stuttgart.ims.corpus.compannotation.SentenceAnnotation;
-import de.uni_stuttgart.ims.corpus.util.ArgumentNotFoundException;
 import de.uni_stuttgart.ims.corpus.util.Options;
-import de.uni_stuttgart.ims.corpus.util.PredicateNotFoundException;
+import de.uni_stuttgart.ims.corpus.util.StageFailedException;
 import de.uni_stuttgart.ims.nlpbase.nlp.SRLSentence;
 import de.uni_stuttgart.ims.nlpbase.nlp.Word;
 
@@ -33,9 +32,15 @@ import de.uni_stuttgart.ims.nlpbase.nlp.Word;
 public class CreateSRLTrainingData {
 
 
-   static int predicatesNotFound = 0;
-   static int argumentsNotFound = 0;
-   static private int reorder = 0;
+   private int predicatesNotFound = 0;
+   private int argumentsNotFound = 0;
+   private int reorder = 0;
+
+   /** Print every predicate and argument that could not be found. */
+   private boolean logAnnotationErrors = true;
+
+   /** Heads of multiword predicates and arguments of the current sentence. */
+   private HeadCache headCache = new HeadCache();
 
 
 
@@ -44,42 +49,77 @@ public class CreateSRLTrainingData {
     * @throws IOException
    */
    public static void main(String[] args) {
+      if (args.length < 1) {
+         System.err.println("Usage: CreateSRLTrainingData <config file> ");
+         System.exit(1);
+      }
+      Options options = null;
+      try {
+         System.out.println("Read options file " + args[0]);
+         options = Options.readOptionsFile(args[0]);
+      } catch (IOException e) {
+         System.err.println("ERROR !!! while parsing options file: " + e);
+         System.exit(1);
+      }
+      try {
+         run(options);
+      } catch (StageFailedException e) {
+         System.exit(1);
+      }
+   }
 
 
 
-      // ===== GET USER-DEFINED OPTIONS =====
+   /**
+    * Run with these options.
+    * @return number of sentences processed.
+    * @throws StageFailedException if something goes wrong (the error has been printed).
+    */
+   public static int run(Options options) {
+      // The argument marker is global (ArgumentType),
+      // so runs with different options must not overlap
+      synchronized (ArgumentType.class) {
+         return new CreateSRLTrainingData().annotate(options);
+      }
+   }
 
-      try {
-         if (args.length < 1) {
-            System.err.println("Usage: CreateSRLTrainingData <config file> ");
-            System.exit(1);
-         }
 
-         String optionsFilename = args[0];
 
-         System.out.println("Read options file " + optionsFilename);
-         Options.parseOptionsFile(optionsFilename);
+   private int annotate(Options options) {
 
-      } catch (IOException e) {
-         System.err.println("ERROR !!! while parsing options file: " + e);
-         System.exit(1);
-      }
+      // ===== GET USER-DEFINED OPTIONS =====
 
-      String sentencesInputFilename = Options.getOption("parsedSentencesFilename");
-      String annotationsInputFilename = Options.getOption("plaintextAnnotationsNormFilename");
-      String outputFilename = Options.getOption("srlAnnotatedSentencesFilename");
+      String sentencesInputFilename = options.getOption("parsedSentencesFilename");
+      String annotationsInputFilename = options.getOption("plaintextAnnotationsNormFilename");
+      String outputFilename = options.getOption("srlAnnotatedSentencesFilename");
 
-      String markerA = Options.getOption("useArgumentMarker");
+      String markerA = options.getOption("useArgumentMarker");
       ArgumentType.setArgumentMarker(markerA);
 
       boolean orderEntitiesByPreferred = false;
       boolean orderEntitiesBySurface = false;
-      String annOption = Options.getOption("annOption");
+      String annOption = options.getOption("annOption");
       if (annOption.equals("pref"))
          orderEntitiesByPreferred = true;
       if (annOption.equals("surf"))
          orderEntitiesBySurface = true;
 
+      String logOption = options.getOption("logAnnotationErrors");
+      if (logOption != null && !logOption.isEmpty()) {
+         logAnnotationErrors = Boolean.parseBoolean(logOption);
+      }
+
+      // Find the annotation of a parse by line number or by its tokens
+      boolean joinByTokens = false;
+      String joinMode = options.getOption("joinMode");
+      if (joinMode != null && joinMode.equals("tokens")) {
+         joinByTokens = true;
+      } else if (joinMode != null && !joinMode.isEmpty() && !joinMode.equals("line")) {
+         System.err.println("ERROR, unknown join mode: " + joinMode + ", expected line or tokens");
+         throw new StageFailedException("Unknown join mode " + joinMode);
+      }
+      int joinLookahead = options.getIntOption("joinLookahead", 100);
+
       boolean printNonComp = false;
 
       // ===== INITIALIZATION =====
@@ -88,75 +128,110 @@ public class CreateSRLTrainingData {
       ParseWriterCoNLL out = null;
       ParseReaderCoNLL parseReader = null;
 
-      try{
-         // Open input parsed sentences file
-         parseReader = new ParseReaderCoNLL(sentencesInputFilename);
-         parseReader.openFile();
-
-         // open input file with annotations
-         brAnnotations = Fileutils.getReadFile(annotationsInputFilename);
-
-         // open output file for parsed sentences
-         out = new ParseWriterCoNLL(outputFilename);
-
-      } catch (Exception e) {
-         System.err.println("ERROR in initialization: " + e.getMessage());
-         e.printStackTrace();
-         System.exit(1);
-      }
-
+      // Close the files also if the annotation fails
+      try {
 
-      // ===== PROCESSING =====
+         try{
+            // Open input parsed sentences file
+            parseReader = new ParseReaderCoNLL(sentencesInputFilename);
+            parseReader.openFile();
 
-      SRLSentence sentence;
-      int lineno = 0;
-      int linesprintedno = 0;
-      int errorNo = 0;
-      int comparativePredsNo = 0;
+            // open input file with annotations
+            brAnnotations = Fileutils.getReadFile(annotationsInputFilename);
 
-      while (!(sentence = parseReader.readParseSRL()).isEmpty()) {
+            // open output file for parsed sentences
+            out = new ParseWriterCoNLL(outputFilename);
 
-         String nextLine = null;
-         try {
-            nextLine = brAnnotations.readLine();
-         } catch (IOException e) {
-            System.err.println("Error while reading annotations file at line " + lineno + "!");
+         } catch (Exception e) {
+            System.err.println("ERROR in initialization: " + e.getMessage());
             e.printStackTrace();
-            break;
-         }
-
-         if (nextLine == null) {
-            System.err.println("Error, annotations file ended unexpectedly at line " + lineno + "!");
-            break;
+            throw new StageFailedException("Error in initialization");
          }
 
-         lineno++;
 
-         // Get annotation
-         SentenceAnnotation thisLineAnnotation = new SentenceAnnotation(nextLine);
+         // ===== PROCESSING =====
 
-         // Add annotations to parse
-         Iterator<ComparisonAnnotation> iter = thisLineAnnotation.getComparisonAnnotationsIterator();
-         String id = thisLineAnnotation.getId();
-         while (iter.hasNext()) {
-            ComparisonAnnotation comparison = iter.next();
+         SRLSentence sentence;
+         int lineno = 0;
+         int linesprintedno = 0;
+         int errorNo = 0;
+         int comparativePredsNo = 0;
 
+         AnnotationJoin join = null;
+         if (joinByTokens) {
+            join = new AnnotationJoin(brAnnotations, joinLookahead, logAnnotationErrors);
+         }
 
-            // Change order of entities if necessary
-            // either by preferred entity [call this for IMS corpus]
-            if (orderEntitiesByPreferred) {
-               reorderEntitiesByPreferred(comparison);
-            }
-            // or by surface order  [call this for JDPA corpus]
-            if (orderEntitiesBySurface) {
-               reorderEntitiesByID(comparison);
+         // The join by tokens also looks at the parse after the current one
+         SRLSentence nextSentence = parseReader.readParseSRL();
+         while (!(sentence = nextSentence).isEmpty()) {
+            nextSentence = parseReader.readParseSRL();
+
+            // Get annotation
+            SentenceAnnotation thisLineAnnotation;
+            if (joinByTokens) {
+               try {
+                  thisLineAnnotation = join.getAnnotation(sentence,
+                        nextSentence.isEmpty() ? null : nextSentence, lineno + 1);
+               } catch (IOException e) {
+                  System.err.println("Error while reading annotations file for parse " + (lineno + 1) + "!");
+                  e.printStackTrace();
+                  break;
+               }
+               lineno++;
+               if (thisLineAnnotation == null) {
+                  continue;
+               }
+
+            } else {
+               String nextLine = null;
+               try {
+                  nextLine = brAnnotations.readLine();
+               } catch (IOException e) {
+                  System.err.println("Error while reading annotations file at line " + lineno + "!");
+                  e.printStackTrace();
+                  break;
+               }
+
+               if (nextLine == null) {
+                  System.err.println("Error, annotations file ended unexpectedly at line " + lineno + "!");
+                  break;
+               }
+
+               lineno++;
+               thisLineAnnotation = new SentenceAnnotation(nextLine);
             }
+            headCache.clear();
 
+            // Add annotations to parse
+            Iterator<ComparisonAnnotation> iter = thisLineAnnotation.getComparisonAnnotationsIterator();
+            String id = thisLineAnnotation.getId();
+            while (iter.hasNext()) {
+               ComparisonAnnotation comparison = iter.next();
+
+
+               // Change order of entities if necessary
+               // either by preferred entity [call this for IMS corpus]
+               if (orderEntitiesByPreferred) {
+                  reorderEntitiesByPreferred(comparison);
+               }
+               // or by surface order  [call this for JDPA corpus]
+               if (orderEntitiesBySurface) {
+                  reorderEntitiesByID(comparison);
+               }
 
-            try {
 
                // Predicate
-               Word pred = SRLHelper.identifyPredicate(sentence, comparison.getPredicate());
+               IdentificationResult predResult = SRLHelper.findPredicate(sentence, comparison.getPredicate(), headCache);
+               if (!predResult.isFound()) {
+                  if (logAnnotationErrors) {
+                     System.out.println(predResult.getMessage() + "\n"
+                           + " in sentence " + id + ": " + sentence.toString());
+                  }
+                  predicatesNotFound++;
+                  continue;
+               }
+               Word pred = predResult.getWord();
                sentence.addPredicate(pred, comparison.getFineType(), comparison.getDirection());
                comparativePredsNo++;
 
@@ -166,45 +241,57 @@ public class CreateSRLTrainingData {
                identifyArguments(id, sentence, pred, comparison.getAspect(), ArgumentType.aspect);
                identifyArguments(id, sentence, pred, comparison.getSentiment(), ArgumentType.sentiment);
 
-            } catch (PredicateNotFoundException e) {
-               System.out.println(e.getMessage() + "\n"
-                     + " in sentence " + id + ": " + sentence.toString());
-               predicatesNotFound++;
+            }
+
+            // Write new parse with SRL annotation to file (if there is at least 1 predicate)
+            if (printNonComp | sentence.getPredicates().size() > 0) {
+               try {
+                  out.writeParse(sentence);
+                  linesprintedno++;
+               } catch (Exception e) {
+                  e.printStackTrace(); // TODO do something useful
+                  errorNo++;
+               }
             }
 
          }
 
-         // Write new parse with SRL annotation to file (if there is at least 1 predicate)
-         if (printNonComp | sentence.getPredicates().size() > 0) {
+
+         if (joinByTokens) {
             try {
-               out.writeParse(sentence);
-               linesprintedno++;
-            } catch (Exception e) {
-               e.printStackTrace(); // TODO do something useful
-               errorNo++;
+               join.finish();
+            } catch (IOException e) {
+               System.err.println("Error while reading annotations file!");
+               e.printStackTrace();
             }
          }
 
-      }
 
+         // ===== STATISTICS, CLEANUP =====
 
-      // ===== STATISTICS, CLEANUP =====
 
+         System.out.println("Read " + lineno + " sentences.");
+         System.out.println("Printed " + linesprintedno + " sentences.");
+         System.out.println("reordered: " + reorder + " entities\n");
+         System.out.println("Found " + errorNo + " sentences with errors.");
+         System.out.println("Caused by " + predicatesNotFound + " predicates that could not be found.");
+         System.out.println("Caused by " + argumentsNotFound + " arguments that could not be found.");
+         System.out.println("total comparative predicates found: " + comparativePredsNo);
+         headCache.printStatistics();
+         if (joinByTokens) {
+            join.printStatistics();
+         }
 
-      System.out.println("Read " + lineno + " sentences.");
-      System.out.println("Printed " + linesprintedno + " sentences.");
-      System.out.println("reordered: " + reorder + " entities\n");
-      System.out.println("Found " + errorNo + " sentences with errors.");
-      System.out.println("Caused by " + predicatesNotFound + " predicates that could not be found.");
-      System.out.println("Caused by " + argumentsNotFound + " arguments that could not be found.");
-      System.out.println("total comparative predicates found: " + comparativePredsNo);
+         System.out.println("... done.");
 
-      //Close files and clean up
-      Fileutils.closeSilently(parseReader);
-      Fileutils.closeSilently(out);
-      Fileutils.closeSilently(brAnnotations);
-      System.out.println("... done.");
+         return lineno;
 
+      } finally {
+         //Close files and clean up
+         Fileutils.closeSilently(parseReader);
+         Fileutils.closeSilently(out);
+         Fileutils.closeSilently(brAnnotations);
+      }
    }
 
 
@@ -212,16 +299,18 @@ public class CreateSRLTrainingData {
    /**
     * Find the arguments in tree.
     */
-   public static void identifyArguments
+   public void identifyArguments
          (String id, SRLSentence sentence, Word pred, List<ComparisonAnnotationToken[]> arguments, ArgumentType type)  {
       for (ComparisonAnnotationToken[] argument : arguments) {
          if (argument != null && !(argument.length == 0)) {
-            try {
-               Word argumentWord = SRLHelper.identifyArgument(sentence, argument);
-               sentence.addArgument(pred, argumentWord, type);
-            } catch (ArgumentNotFoundException e) {
-               System.out.println(e.getMessage()
-                     + " in sentence " + id + ": " + sentence.toString());
+            IdentificationResult result = SRLHelper.findArgument(sentence, argument, headCache);
+            if (result.isFound()) {
+               sentence.addArgument(pred, result.getWord(), type);
+            } else {
+               if (logAnnotationErrors) {
+                  System.out.println(result.getMessage()
+                        + " in sentence " + id + ": " + sentence.toString());
+               }
                argumentsNotFound++;
             }
          }
@@ -233,7 +322,7 @@ public class CreateSRLTrainingData {
     * Change order of entities
     * if we want to order by ID, reorder if necessary
     */
-   public static void reorderEntitiesByID(ComparisonAnnotation annotation) {
+   public void reorderEntitiesByID(ComparisonAnnotation annotation) {
 
       List<ComparisonAnnotationToken[]> entity1listNew = annotation.getEntity1();
       List<ComparisonAnnotationToken[]> entity2listNew = annotation.getEntity2();
@@ -261,7 +350,7 @@ public class CreateSRLTrainingData {
     * if we want to order by preferred, reorder if necessary
     * call this only on IMS corpus
     */
-   public static void reorderEntitiesByPreferred(ComparisonAnnotation annotation) {
+   public void reorderEntitiesByPreferred(ComparisonAnnotation annotation) {
 
       List<ComparisonAnnotationToken[]> entity1listNew = annotation.getEntity1();
       List<ComparisonAnnotationToken[]> entity2listNew = annotation.getEntity2();
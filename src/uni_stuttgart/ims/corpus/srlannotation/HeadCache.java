@@ -0,0 +1,133 @@
+// (c) Wiltrud Kessler
+// 19.10.2026
+// This code is distributed under a Creative Commons
+// Attribution-NonCommercial-ShareAlike 3.0 Unported license
+// http://creativecommons.org/licenses/by-nc-sa/3.0/
+
+package de.uni_stuttgart.ims.corpus.srlannotation;
+
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+
+import de.uni_stuttgart.ims.nlpbase.nlp.SRLSentence;
+import de.uni_stuttgart.ims.nlpbase.nlp.Word;
+import de.uni_stuttgart.ims.util.HeadFinder;
+
+
+/**
+ * Heads of multiword predicates and arguments of the current sentence,
+ * so that a span that is annotated several times (e.g., an entity
+ * of several comparisons) is only given to the HeadFinder once.
+ *
+ * The key is the set of token numbers of the span, packed into a long
+ * if all tokens are among the first 64 of the sentence, else a BitSet.
+ * Everything is forgotten when the heads of another sentence are asked for
+ * or clear is called (call it if the sentence object is used again for
+ * another sentence).
+ *
+ * Not thread-safe, use one cache per thread.
+ *
+ * @author kesslewd
+ *
+ */
+public class HeadCache {
+
+   private SRLSentence sentence = null;
+
+   private HashMap<Object, Word> predicateHeads = new HashMap<Object, Word>();
+   private HashMap<Object, Word> argumentHeads = new HashMap<Object, Word>();
+
+   private long hits = 0;
+   private long misses = 0;
+
+
+
+   /**
+    * Head of the multiword predicate with these words and token numbers.
+    * @see HeadFinder#getPredicateHead
+    */
+   public Word getPredicateHead (SRLSentence sentence, List<Word> words, int[] tokenNumbers) {
+      return getHead(sentence, words, tokenNumbers, true);
+   }
+
+
+   /**
+    * Head of the multiword argument with these words and token numbers.
+    * @see HeadFinder#getArgumentHead
+    */
+   public Word getArgumentHead (SRLSentence sentence, List<Word> words, int[] tokenNumbers) {
+      return getHead(sentence, words, tokenNumbers, false);
+   }
+
+
+   /**
+    * Forget all heads.
+    */
+   public void clear () {
+      this.sentence = null;
+      this.predicateHeads.clear();
+      this.argumentHeads.clear();
+   }
+
+
+   private Word getHead (SRLSentence sentence, List<Word> words, int[] tokenNumbers, boolean isPredicate) {
+
+      if (sentence != this.sentence) {
+         clear();
+         this.sentence = sentence;
+      }
+
+      HashMap<Object, Word> heads = isPredicate ? this.predicateHeads : this.argumentHeads;
+      Object key = getKey(tokenNumbers);
+      // The head may be null, so ask containsKey
+      if (heads.containsKey(key)) {
+         this.hits++;
+         return heads.get(key);
+      }
+
+      this.misses++;
+      Word head = isPredicate
+            ? HeadFinder.getPredicateHead(sentence, words)
+            : HeadFinder.getArgumentHead(sentence, words);
+      heads.put(key, head);
+      return head;
+   }
+
+
+   /**
+    * Token numbers of words in a sentence are never negative.
+    */
+   private static Object getKey (int[] tokenNumbers) {
+      long packed = 0;
+      for (int tokenNumber : tokenNumbers) {
+         if (tokenNumber >= 64) {
+            BitSet set = new BitSet();
+            for (int number : tokenNumbers) {
+               set.set(number);
+            }
+            return set;
+         }
+         packed |= 1L << tokenNumber;
+      }
+      return packed;
+   }
+
+
+
+   public long getHits() {
+      return this.hits;
+   }
+
+   public long getMisses() {
+      return this.misses;
+   }
+
+
+   public void printStatistics() {
+      long lookups = this.hits + this.misses;
+      System.out.println("Head cache: " + this.hits + " hits, " + this.misses + " misses"
+            + ((lookups > 0) ? String.format(" (hit rate %.1f%%)", 100.0 * this.hits / lookups) : ""));
+   }
+
+}
@@ -0,0 +1,141 @@
+// (c) Wiltrud Kessler
+// 19.10.2026
+// This code is distributed under a Creative Commons
+// Attribution-NonCommercial-ShareAlike 3.0 Unported license
+// http://creativecommons.org/licenses/by-nc-sa/3.0/
+
+package de.uni_stuttgart.ims.corpus.srlannotation;
+
+import java.util.Arrays;
+
+import de.uni_stuttgart.ims.nlpbase.nlp.Word;
+
+
+/**
+ * Result of mapping a predicate or argument to a word (see SRLHelper).
+ * Either the word was found or the status says why not.
+ * The error message is only built when it is asked for,
+ * so annotations that cannot be mapped cost nothing if the
+ * message is not printed.
+ *
+ * @author kesslewd
+ *
+ */
+public class IdentificationResult {
+
+   public enum Status {
+      /** The word was found. */
+      FOUND,
+      /** The predicate or argument is empty. */
+      EMPTY,
+      /** An annotation token is not in the sentence. */
+      NOT_IN_SENTENCE,
+      /** An annotation token is different from the sentence token at its place. */
+      TOKEN_MISMATCH,
+      /** No word corresponds to the predicate or argument. */
+      NOT_FOUND,
+      /** The word found is already a predicate. */
+      ALREADY_PREDICATE
+   }
+
+
+   private Status status;
+   private Word word;
+
+   // Only used for the message
+   private boolean isPredicate;
+   /** String or array of annotation tokens that was looked for. */
+   private Object query;
+   /** Annotation token and sentence word that caused the error, may be null. */
+   private Object token;
+   private Word sentenceWord;
+
+
+
+   private IdentificationResult(Status status, Word word, boolean isPredicate, Object query) {
+      this.status = status;
+      this.word = word;
+      this.isPredicate = isPredicate;
+      this.query = query;
+   }
+
+
+   static IdentificationResult found(Word word) {
+      return new IdentificationResult(Status.FOUND, word, false, null);
+   }
+
+   /**
+    * @param query String or array of annotation tokens that was looked for.
+    */
+   static IdentificationResult error(Status status, boolean isPredicate, Object query) {
+      return new IdentificationResult(status, null, isPredicate, query);
+   }
+
+   /**
+    * Error caused by one annotation token.
+    * @param sentenceWord Sentence word at the place of the token, may be null.
+    */
+   static IdentificationResult tokenError(Status status, boolean isPredicate, Object token, Word sentenceWord) {
+      IdentificationResult result = new IdentificationResult(status, null, isPredicate, null);
+      result.token = token;
+      result.sentenceWord = sentenceWord;
+      return result;
+   }
+
+
+
+   public boolean isFound() {
+      return this.status == Status.FOUND;
+   }
+
+   public Status getStatus() {
+      return this.status;
+   }
+
+   /**
+    * Word found, null if there is none.
+    */
+   public Word getWord() {
+      return this.word;
+   }
+
+
+
+   /**
+    * Message that says why nothing was found, null if the word was found.
+    */
+   public String getMessage() {
+
+      String kind = this.isPredicate ? "Predicate" : "Argument";
+      switch (this.status) {
+      case EMPTY:
+         return "ANNOTATION ERROR!!! " + kind + " is empty!!";
+      case NOT_IN_SENTENCE:
+         return "ANNOTATION ERROR!!! Annotation token is not in this sentence " + this.token;
+      case TOKEN_MISMATCH:
+         return "ANNOTATION ERROR!!! Annotation token " + this.token
+               + " does not correspond to sentence token at this place " + this.sentenceWord;
+      case NOT_FOUND:
+         if (this.isPredicate) {
+            return "ANNOTATION ERROR!!! Could not find predicate \"" + getQueryString() + "\"!!";
+         }
+         return "ANNOTATION ERROR!!! argument \"" + getQueryString() + "\" not found !!";
+      case ALREADY_PREDICATE:
+         if (this.query instanceof String) {
+            return "ERROR found the same predicate \"" + getQueryString() + "\" twice -- this should not happen";
+         }
+         return "ANNOTATION ERROR!!! Found the same predicate \"" + getQueryString() + "\" twice -- this should not happen";
+      default:
+         return null;
+      }
+   }
+
+
+   private String getQueryString() {
+      if (this.query instanceof Object[]) {
+         return Arrays.asList((Object[]) this.query).toString();
+      }
+      return String.valueOf(this.query);
+   }
+
+}
@@ -8,22 +8,25 @@
 package de.uni_stuttgart.ims.corpus.srlannotation;
 
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.List;
 
 import de.uni_stuttgart.ims.corpus.compannotation.ComparisonAnnotationToken;
 import de.uni_stuttgart.ims.corpus.util.ArgumentNotFoundException;
+import de.uni_stuttgart.ims.corpus.util.PhraseMatcher;
 import de.uni_stuttgart.ims.corpus.util.PredicateNotFoundException;
+import de.uni_stuttgart.ims.corpus.util.SentenceTokenIndex;
 import de.uni_stuttgart.ims.nlpbase.nlp.SRLSentence;
 import de.uni_stuttgart.ims.nlpbase.nlp.Word;
 import de.uni_stuttgart.ims.util.HeadFinder;
-import de.uni_stuttgart.ims.util.StringWordMapping;
 
 
 /**
  * Annotation helper.
  * Map from Strings (single tokens or multiword tokens to words).
  * For multiword predicates and arguments, find the head.
+ *
+ * The find methods return an IdentificationResult that says why
+ * nothing was found, the identify methods throw an exception instead.
  */
 public class SRLHelper {
 
@@ -45,36 +48,83 @@ public class SRLHelper {
     */
    public static Word identifyPredicate (SRLSentence sentence, String predicate)
          throws PredicateNotFoundException {
+      return identifyPredicate(sentence, getTokenIndex(sentence), predicate);
+   }
+
+
+   /**
+    * Map given String of predicate to word,
+    * use the index of the sentence to find the words.
+    * Does not change the tree.
+    *
+    * @param sentence Sentence that is supposed to contain the String.
+    * @param index Index of the word forms of this sentence, see getTokenIndex.
+    * @param predicate String to be found.
+    * @return Word where the form is equivalent to the String to be found,
+    *    the first occurrence is used,
+    *    in case of multiword predicate, one word is selected as the head.
+    * @throws PredicateNotFoundException if the String is empty
+    *    or cannot be mapped to a word in the sentence.
+    */
+   public static Word identifyPredicate (SRLSentence sentence, SentenceTokenIndex index, String predicate)
+         throws PredicateNotFoundException {
+      return getPredicate(findPredicate(sentence, index, predicate));
+   }
+
+
+   /**
+    * Map given String of predicate to word,
+    * use the index of the sentence to find the words.
+    * Does not change the tree.
+    *
+    * @param sentence Sentence that is supposed to contain the String.
+    * @param index Index of the word forms of this sentence, see getTokenIndex.
+    * @param predicate String to be found.
+    * @return Word where the form is equivalent to the String to be found
+    *    (see identifyPredicate), or why it was not found.
+    */
+   public static IdentificationResult findPredicate (SRLSentence sentence, SentenceTokenIndex index, String predicate) {
 
       // Return with error if String is empty.
       if (predicate == null || predicate.trim().equals("")) {
-         throw new PredicateNotFoundException("ANNOTATION ERROR!!! Predicate is empty!!");
+         return IdentificationResult.error(IdentificationResult.Status.EMPTY, true, predicate);
       }
 
       Word pred = null;
 
       // Treat simple preds different from MW pred
       String[] predwords = predicate.trim().split(" ");
+      int[] starts;
       if (predwords.length > 1) {
-         List<Word> preds = StringWordMapping.identifyMWU(sentence, predwords, true, true);
-         // TODO HERE markWords(preds, ComparativeUtils.getPredicateMarker(pred)); // SRLFtrs, only for display
-         pred = HeadFinder.getPredicateHead(sentence, preds);
+         PhraseMatcher matcher = new PhraseMatcher(true);
+         matcher.addPhrase(predwords);
+         starts = matcher.findAll(index)[0];
       } else {
-         pred = StringWordMapping.identifyOneWordAll(sentence, predicate.trim(), true, true).get(0);  // TODO what if null?
-         // TODO HERE markWords(pred, ComparativeUtils.getPredicateMarker(pred)); // SRLFtrs, only for display
+         starts = index.getPositions(predicate.trim(), true);
+      }
+
+      // Use the first place
+      if (starts.length > 0) {
+         List<Word> preds = getWords(sentence, starts[0], predwords.length);
+         if (preds.size() > 1) {
+            // TODO HERE markWords(preds, ComparativeUtils.getPredicateMarker(pred)); // SRLFtrs, only for display
+            pred = HeadFinder.getPredicateHead(sentence, preds);
+         } else {
+            pred = preds.get(0);
+         }
       }
 
       // Return with error if no corresponding word was found
       if (pred == null) {
-         throw new PredicateNotFoundException("ANNOTATION ERROR!!! Could not find predicate \"" + predicate + "\"!!");
+         return IdentificationResult.error(IdentificationResult.Status.NOT_FOUND, true, predicate);
       }
 
       // Return with error if the found word is already a predicate
       if (pred.isPredicate()) {
-         throw new PredicateNotFoundException("ERROR found the same predicate \"" + predicate + "\" twice -- this should not happen");
+         return IdentificationResult.error(IdentificationResult.Status.ALREADY_PREDICATE, true, predicate);
       }
 
-      return pred;
+      return IdentificationResult.found(pred);
    }
 
 
@@ -92,38 +142,73 @@ public class SRLHelper {
     */
    public static Word identifyPredicate (SRLSentence sentence, ComparisonAnnotationToken[] predicate)
          throws PredicateNotFoundException {
+      return getPredicate(findPredicate(sentence, predicate));
+   }
+
+
+   /**
+    * Map given String/Tokenindex of predicate to word.
+    * Does not change the tree.
+    *
+    * @param sentence Sentence that is supposed to contain the String.
+    * @param predicate String/Tokenindex to be found.
+    * @return Word at the token index indicated (see identifyPredicate),
+    *    or why it was not found.
+    */
+   public static IdentificationResult findPredicate (SRLSentence sentence, ComparisonAnnotationToken[] predicate) {
+      return findPredicate(sentence, predicate, null);
+   }
+
+
+   /**
+    * Map given String/Tokenindex of predicate to word,
+    * take the head from the cache if the same tokens were seen before.
+    * Does not change the tree.
+    *
+    * @param sentence Sentence that is supposed to contain the String.
+    * @param predicate String/Tokenindex to be found.
+    * @param headCache Heads found before in this sentence, may be null.
+    * @return Word at the token index indicated (see identifyPredicate),
+    *    or why it was not found.
+    */
+   public static IdentificationResult findPredicate (SRLSentence sentence, ComparisonAnnotationToken[] predicate,
+         HeadCache headCache) {
 
       // Return with error if Predicate is empty.
       if (predicate == null || predicate.length == 0) {
-         throw new PredicateNotFoundException("ANNOTATION ERROR!!! Predicate is empty!!");
+         return IdentificationResult.error(IdentificationResult.Status.EMPTY, true, predicate);
       }
 
-      List<Word> preds = new ArrayList<Word>();
+      List<Word> preds = new ArrayList<Word>(predicate.length);
+      int[] tokenNumbers = new int[predicate.length];
       for (ComparisonAnnotationToken predtoken : predicate) {
          Word predWord = sentence.getWord(predtoken.tokenNumber);
          if (predWord == null) {
-            throw new PredicateNotFoundException("ANNOTATION ERROR!!! Annotation token is not in this sentence " + predtoken);
+            return IdentificationResult.tokenError(IdentificationResult.Status.NOT_IN_SENTENCE, true, predtoken, null);
          }
          if (predWord.getForm().equals(predtoken.word)) {
+            tokenNumbers[preds.size()] = predtoken.tokenNumber;
             preds.add(predWord);
          } else {
-            throw new PredicateNotFoundException("ANNOTATION ERROR!!! Annotation token " + predtoken + " does not correspond to sentence token at this place " + predWord);
+            return IdentificationResult.tokenError(IdentificationResult.Status.TOKEN_MISMATCH, true, predtoken, predWord);
          }
       }
 
-      Word pred = HeadFinder.getPredicateHead(sentence, preds);
+      Word pred = (headCache == null)
+            ? HeadFinder.getPredicateHead(sentence, preds)
+            : headCache.getPredicateHead(sentence, preds, tokenNumbers);
 
       // Return with error if no corresponding word was found
       if (pred == null) {
-         throw new PredicateNotFoundException("ANNOTATION ERROR!!! Could not find predicate \"" + Arrays.asList(predicate) + "\"!!");
+         return IdentificationResult.error(IdentificationResult.Status.NOT_FOUND, true, predicate);
       }
 
       // Return with error if the found word is already a predicate
       if (pred.isPredicate()) {
-         throw new PredicateNotFoundException("ANNOTATION ERROR!!! Found the same predicate \"" + Arrays.asList(predicate) + "\" twice -- this should not happen");
+         return IdentificationResult.error(IdentificationResult.Status.ALREADY_PREDICATE, true, predicate);
       }
 
-      return pred;
+      return IdentificationResult.found(pred);
    }
 
 
@@ -147,29 +232,105 @@ public class SRLHelper {
    public static Word identifyArgument
          (SRLSentence sentence, String argument)
          throws ArgumentNotFoundException {
+      return identifyArgument(sentence, getTokenIndex(sentence), argument);
+   }
+
+
+   /**
+    *
+    * Map given String of argument to word,
+    * use the index of the sentence to find the words.
+    * Does not change the tree.
+    *
+    * @param sentence Sentence that is supposed to contain the String.
+    * @param index Index of the word forms of this sentence, see getTokenIndex.
+    * @param argument String to be found.
+    * @return Word where the form is equivalent to the String to be found,
+    *    in case of multiword argument, the lowest common ancestor
+    *    is selected as the head.
+    * @throws ArgumentNotFoundException If the String is empty
+    *    or cannot be mapped to a word in the sentence.
+    */
+   public static Word identifyArgument
+         (SRLSentence sentence, SentenceTokenIndex index, String argument)
+         throws ArgumentNotFoundException {
+      return getArgument(findArgument(sentence, index, argument));
+   }
+
+
+   /**
+    *
+    * Map given String of argument to word,
+    * use the index of the sentence to find the words.
+    * Does not change the tree.
+    *
+    * @param sentence Sentence that is supposed to contain the String.
+    * @param index Index of the word forms of this sentence, see getTokenIndex.
+    * @param argument String to be found.
+    * @return Word where the form is equivalent to the String to be found
+    *    (see identifyArgument), or why it was not found.
+    */
+   public static IdentificationResult findArgument
+         (SRLSentence sentence, SentenceTokenIndex index, String argument) {
 
       // Return with error if String is empty.
       if (argument == null || argument.trim().equals("")) {
-         throw new ArgumentNotFoundException("ANNOTATION ERROR!!! Argument is empty!!");
+         return IdentificationResult.error(IdentificationResult.Status.EMPTY, false, argument);
       }
 
-      Word argumentWord = null;
-
-      // Treat simple arguments different from MW arguments
-      String[] splitArgument = argument.trim().split(" ");
-      if (splitArgument.length>1) {
-         List<Word> argumentWords = StringWordMapping.identifyMWU(sentence, splitArgument, false, true);
-         argumentWord = HeadFinder.getArgumentHead(sentence, argumentWords);
-      } else {
-         argumentWord = StringWordMapping.identifyOneWordAll(sentence, argument.trim(), false, true).get(0); // TODO what if null?
-      }
+      Word argumentWord = identifyArguments(sentence, index, new String[] {argument})[0];
 
       // Return with error if no corresponding word was found
       if (argumentWord == null) {
-         throw new ArgumentNotFoundException("ANNOTATION ERROR!!! argument \"" + argument + "\" not found !!");
+         return IdentificationResult.error(IdentificationResult.Status.NOT_FOUND, false, argument);
       }
 
-      return argumentWord;
+      return IdentificationResult.found(argumentWord);
+   }
+
+
+   /**
+    * Map all given Strings of arguments to words,
+    * all arguments are found with one pass over the sentence.
+    * Does not change the tree.
+    *
+    * @param sentence Sentence that is supposed to contain the Strings.
+    * @param index Index of the word forms of this sentence, see getTokenIndex.
+    * @param arguments Strings to be found.
+    * @return For each argument the Word where the form is equivalent to the String
+    *    (first occurrence), in case of multiword argument, the lowest common ancestor
+    *    is selected as the head. null if the argument is empty or not found.
+    */
+   public static Word[] identifyArguments
+         (SRLSentence sentence, SentenceTokenIndex index, String[] arguments) {
+
+      PhraseMatcher matcher = new PhraseMatcher(true);
+      int[] lengths = new int[arguments.length];
+      for (int i=0; i<arguments.length; i++) {
+         String[] splitArgument = new String[0];
+         if (arguments[i] != null && !arguments[i].trim().equals("")) {
+            splitArgument = arguments[i].trim().split(" ");
+         }
+         lengths[i] = splitArgument.length;
+         matcher.addPhrase(splitArgument);
+      }
+
+      int[] starts = matcher.findFirst(index);
+
+      Word[] argumentWords = new Word[arguments.length];
+      for (int i=0; i<arguments.length; i++) {
+         if (starts[i] == -1) {
+            continue;
+         }
+         List<Word> words = getWords(sentence, starts[i], lengths[i]);
+         if (words.size() > 1) {
+            argumentWords[i] = HeadFinder.getArgumentHead(sentence, words);
+         } else {
+            argumentWords[i] = words.get(0);
+         }
+      }
+
+      return argumentWords;
    }
 
 
@@ -190,33 +351,115 @@ public class SRLHelper {
    public static Word identifyArgument
          (SRLSentence sentence,  ComparisonAnnotationToken[] argument)
          throws ArgumentNotFoundException {
+      return getArgument(findArgument(sentence, argument));
+   }
+
+
+   /**
+    *
+    * Map given String/Tokenindex of argument to word.
+    * Does not change the tree.
+    *
+    * @param sentence Sentence that is supposed to contain the String.
+    * @param argument String/Tokenindex to be found.
+    * @return Word at the token index indicated (see identifyArgument),
+    *    or why it was not found.
+    */
+   public static IdentificationResult findArgument
+         (SRLSentence sentence,  ComparisonAnnotationToken[] argument) {
+      return findArgument(sentence, argument, null);
+   }
+
+
+   /**
+    *
+    * Map given String/Tokenindex of argument to word,
+    * take the head from the cache if the same tokens were seen before.
+    * Does not change the tree.
+    *
+    * @param sentence Sentence that is supposed to contain the String.
+    * @param argument String/Tokenindex to be found.
+    * @param headCache Heads found before in this sentence, may be null.
+    * @return Word at the token index indicated (see identifyArgument),
+    *    or why it was not found.
+    */
+   public static IdentificationResult findArgument
+         (SRLSentence sentence,  ComparisonAnnotationToken[] argument, HeadCache headCache) {
 
       // Return with error if Argument is empty.
       if (argument == null || argument.length == 0) {
-         throw new ArgumentNotFoundException("ANNOTATION ERROR!!! Argument is empty!!");
+         return IdentificationResult.error(IdentificationResult.Status.EMPTY, false, argument);
       }
 
-      List<Word> argumentWords = new ArrayList<Word>();
+      List<Word> argumentWords = new ArrayList<Word>(argument.length);
+      int[] tokenNumbers = new int[argument.length];
       for (ComparisonAnnotationToken argtoken : argument) {
          Word argWord = sentence.getWord(argtoken.tokenNumber);
          if (argWord == null) {
-            throw new ArgumentNotFoundException("ANNOTATION ERROR!!! Annotation token is not in this sentence " + argtoken);
+            return IdentificationResult.tokenError(IdentificationResult.Status.NOT_IN_SENTENCE, false, argtoken, null);
          }
          if (argWord.getForm().equals(argtoken.word)) {
+            tokenNumbers[argumentWords.size()] = argtoken.tokenNumber;
             argumentWords.add(argWord);
          } else {
-            throw new ArgumentNotFoundException("ANNOTATION ERROR!!! Annotation token " + argtoken + " does not correspond to sentence token at this place " + argWord);
+            return IdentificationResult.tokenError(IdentificationResult.Status.TOKEN_MISMATCH, false, argtoken, argWord);
          }
       }
 
-      Word argumentWord = HeadFinder.getArgumentHead(sentence, argumentWords);
+      Word argumentWord = (headCache == null)
+            ? HeadFinder.getArgumentHead(sentence, argumentWords)
+            : headCache.getArgumentHead(sentence, argumentWords, tokenNumbers);
 
       // Return with error if no corresponding word was found
       if (argumentWord == null) {
-         throw new ArgumentNotFoundException("ANNOTATION ERROR!!! argument \"" + Arrays.asList(argument) + "\" not found !!");
+         return IdentificationResult.error(IdentificationResult.Status.NOT_FOUND, false, argument);
+      }
+
+      return IdentificationResult.found(argumentWord);
+   }
+
+
+
+   // ====== Helpers =====
+
+
+   /**
+    * Index of the word forms of the sentence,
+    * position i is the word with id i+1.
+    * Build this once per sentence when looking up several Strings.
+    */
+   public static SentenceTokenIndex getTokenIndex (SRLSentence sentence) {
+      List<String> forms = new ArrayList<String>();
+      Word word;
+      while ((word = sentence.getWord(forms.size() + 1)) != null) {
+         forms.add(word.getForm());
+      }
+      return new SentenceTokenIndex(forms.toArray(new String[forms.size()]));
+   }
+
+
+   private static Word getPredicate (IdentificationResult result) throws PredicateNotFoundException {
+      if (!result.isFound()) {
+         throw new PredicateNotFoundException(result.getMessage());
+      }
+      return result.getWord();
+   }
+
+
+   private static Word getArgument (IdentificationResult result) throws ArgumentNotFoundException {
+      if (!result.isFound()) {
+         throw new ArgumentNotFoundException(result.getMessage());
       }
+      return result.getWord();
+   }
 
-      return argumentWord;
+
+   private static List<Word> getWords (SRLSentence sentence, int start, int length) {
+      List<Word> words = new ArrayList<Word>(length);
+      for (int i=start; i<start+length; i++) {
+         words.add(sentence.getWord(i + 1));
+      }
+      return words;
    }
 
 
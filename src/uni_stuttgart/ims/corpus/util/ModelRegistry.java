@@ -0,0 +1,304 @@
+// (c) Wiltrud Kessler
+// 19.10.2026
+// This code is distributed under a Creative Commons
+// Attribution-NonCommercial-ShareAlike 3.0 Unported license
+// http://creativecommons.org/licenses/by-nc-sa/3.0/
+
+package de.uni_stuttgart.ims.corpus.util;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+import de.uni_stuttgart.ims.nlpbase.tools.POSTagger;
+import de.uni_stuttgart.ims.nlpbase.tools.POSTaggerStanford;
+import de.uni_stuttgart.ims.nlpbase.tools.SentenceSplitter;
+import de.uni_stuttgart.ims.nlpbase.tools.SentenceSplitterStanford;
+import de.uni_stuttgart.ims.nlpbase.tools.Tokenizer;
+import de.uni_stuttgart.ims.nlpbase.tools.TokenizerStanford;
+import de.uni_stuttgart.ims.util.Fileutils;
+
+
+/**
+ * Models (tokenizer, sentence splitter, POS tagger, NER classifier)
+ * for all tools of the process, every model is only loaded when it is
+ * first needed.
+ *
+ * Two kinds of models:
+ * - shared models are loaded once and used by all threads
+ *   (only for models that are not changed by using them, e.g., NER classifier),
+ * - pooled models are not thread-safe, a thread borrows an instance
+ *   from the pool and gives it back when it is done (or keeps one for
+ *   the whole run with forCurrentThread), new instances are only loaded
+ *   if there is no free one.
+ *
+ * The load time of every model is recorded, see printStatistics.
+ *
+ * @author kesslewd
+ *
+ */
+public class ModelRegistry {
+
+   public static final String TOKENIZER = "TokenizerStanford";
+   public static final String SENTENCE_SPLITTER = "SentenceSplitterStanford";
+   public static final String POS_TAGGER = "POSTaggerStanford";
+
+
+   /**
+    * Loads one instance of a model.
+    */
+   public interface Loader<T> {
+      T load() throws Exception;
+   }
+
+
+   private static Map<String, SharedModel> sharedModels = new HashMap<String, SharedModel>();
+   private static Map<String, Pool<?>> pools = new HashMap<String, Pool<?>>();
+
+   /** Load statistics by model name, in the order the models were first loaded. */
+   private static Map<String, long[]> loadStatistics = new LinkedHashMap<String, long[]>();
+
+
+
+   // ========== SHARED MODELS ==========
+
+
+   /**
+    * Holder for a shared model, so that loading one model
+    * does not block getting another one.
+    */
+   private static class SharedModel {
+      Object model = null;
+   }
+
+
+   /**
+    * Get the shared model with this name, load it if necessary.
+    * @throws IllegalStateException if the model cannot be loaded.
+    */
+   @SuppressWarnings("unchecked")
+   public static <T> T getShared(String name, Loader<T> loader) {
+      SharedModel holder;
+      synchronized (ModelRegistry.class) {
+         holder = sharedModels.get(name);
+         if (holder == null) {
+            holder = new SharedModel();
+            sharedModels.put(name, holder);
+         }
+      }
+      synchronized (holder) {
+         if (holder.model == null) {
+            holder.model = load(name, loader);
+         }
+         return (T) holder.model;
+      }
+   }
+
+
+
+   // ========== POOLED MODELS ==========
+
+
+   /**
+    * Instances of a model that is not thread-safe.
+    */
+   public static class Pool<T> {
+
+      private String name;
+      private Loader<T> loader;
+      private LinkedList<T> free = new LinkedList<T>();
+      private List<T> all = new ArrayList<T>();
+      /** Instances kept by threads (forCurrentThread). */
+      private Map<Thread, T> threadInstances = new HashMap<Thread, T>();
+
+      private Pool(String name, Loader<T> loader) {
+         this.name = name;
+         this.loader = loader;
+      }
+
+      /**
+       * Get a free instance, load a new one if there is none.
+       * Only the current thread may use it until it is released.
+       * @throws IllegalStateException if the model cannot be loaded.
+       */
+      public T borrow() {
+         synchronized (this) {
+            if (this.free.isEmpty()) {
+               reclaimFromDeadThreads();
+            }
+            if (!this.free.isEmpty()) {
+               return this.free.removeFirst();
+            }
+         }
+         T instance = load(this.name, this.loader);
+         synchronized (this) {
+            this.all.add(instance);
+         }
+         return instance;
+      }
+
+      /**
+       * Give back an instance, another thread may use it now.
+       */
+      public synchronized void release(T instance) {
+         if (instance != null) {
+            this.free.addFirst(instance);
+         }
+      }
+
+      /**
+       * Instance of the current thread, borrowed on the first call
+       * and kept by the thread (e.g., worker threads).
+       */
+      public T forCurrentThread() {
+         Thread thread = Thread.currentThread();
+         synchronized (this) {
+            T instance = this.threadInstances.get(thread);
+            if (instance != null) {
+               return instance;
+            }
+         }
+         T instance = borrow();
+         synchronized (this) {
+            this.threadInstances.put(thread, instance);
+         }
+         return instance;
+      }
+
+      /**
+       * Instances of threads that have ended (e.g., a thread pool
+       * was shut down) can be used again.
+       */
+      private void reclaimFromDeadThreads() {
+         Iterator<Map.Entry<Thread, T>> itty = this.threadInstances.entrySet().iterator();
+         while (itty.hasNext()) {
+            Map.Entry<Thread, T> entry = itty.next();
+            if (!entry.getKey().isAlive()) {
+               this.free.addFirst(entry.getValue());
+               itty.remove();
+            }
+         }
+      }
+
+      public synchronized int size() {
+         return this.all.size();
+      }
+
+      private synchronized void close() {
+         for (T instance : this.all) {
+            if (instance instanceof Closeable) {
+               Fileutils.closeSilently((Closeable) instance);
+            }
+         }
+         this.all.clear();
+         this.free.clear();
+         this.threadInstances.clear();
+      }
+   }
+
+
+   /**
+    * Get the pool for the model with this name, create it if necessary.
+    * The loader is only used the first time.
+    */
+   @SuppressWarnings("unchecked")
+   public static synchronized <T> Pool<T> getPool(String name, Loader<T> loader) {
+      Pool<T> pool = (Pool<T>) pools.get(name);
+      if (pool == null) {
+         pool = new Pool<T>(name, loader);
+         pools.put(name, pool);
+      }
+      return pool;
+   }
+
+
+   public static Pool<Tokenizer> getTokenizerPool() {
+      return getPool(TOKENIZER, new Loader<Tokenizer>() {
+         @Override
+         public Tokenizer load() throws Exception {
+            return new TokenizerStanford();
+         }
+      });
+   }
+
+   public static Pool<SentenceSplitter> getSentenceSplitterPool() {
+      return getPool(SENTENCE_SPLITTER, new Loader<SentenceSplitter>() {
+         @Override
+         public SentenceSplitter load() throws Exception {
+            return new SentenceSplitterStanford();
+         }
+      });
+   }
+
+   public static Pool<POSTagger> getPOSTaggerPool() {
+      return getPool(POS_TAGGER, new Loader<POSTagger>() {
+         @Override
+         public POSTagger load() throws Exception {
+            return new POSTaggerStanford();
+         }
+      });
+   }
+
+
+
+   // ========== LOADING, STATISTICS ==========
+
+
+   private static <T> T load(String name, Loader<T> loader) {
+      long start = System.currentTimeMillis();
+      T model;
+      try {
+         model = loader.load();
+      } catch (Exception e) {
+         throw new IllegalStateException("Could not load model " + name, e);
+      }
+      long time = System.currentTimeMillis() - start;
+      System.out.println("Loaded model " + name + " in " + time + " ms");
+
+      synchronized (loadStatistics) {
+         long[] statistics = loadStatistics.get(name);
+         if (statistics == null) {
+            statistics = new long[3]; // instances, total ms, max ms
+            loadStatistics.put(name, statistics);
+         }
+         statistics[0]++;
+         statistics[1] += time;
+         statistics[2] = Math.max(statistics[2], time);
+      }
+      return model;
+   }
+
+
+   /**
+    * Print number of instances and load time of every model
+    * that has been loaded.
+    */
+   public static void printStatistics() {
+      synchronized (loadStatistics) {
+         for (Map.Entry<String, long[]> entry : loadStatistics.entrySet()) {
+            long[] statistics = entry.getValue();
+            System.out.println("model " + entry.getKey() + ": " + statistics[0] + " instance(s) loaded in "
+                  + statistics[1] + " ms (max " + statistics[2] + " ms)");
+         }
+      }
+   }
+
+
+   /**
+    * Close all pooled instances and forget all models,
+    * they are loaded again when they are needed the next time.
+    */
+   public static synchronized void closeAll() {
+      for (Pool<?> pool : pools.values()) {
+         pool.close();
+      }
+      pools.clear();
+      sharedModels.clear();
+   }
+
+}
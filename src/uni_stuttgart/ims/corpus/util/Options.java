@@ -17,29 +17,74 @@ import java.util.HashMap;
 
 
 /**
- * Manage the options to be read in from the configuration file.
+ * Options read in from a configuration file.
+ * Every processing step gets its own options object,
+ * so steps with different configuration files can run
+ * in the same process (see BatchRunner).
  * @author kesslewd
  *
  */
 public class Options {
 
-   private static HashMap<String, String> argumentMap;
+   private HashMap<String, String> argumentMap = new HashMap<String, String>();
    private static String listDelimiter = ":";
 
+   /** File the options were read from, null if there is none. */
+   private String filename = null;
 
-   public static String getOption (String optionName) {
+
+   /**
+    * Empty options, add options with setOption.
+    */
+   public Options() {
+   }
+
+
+   /**
+    * Read options from a configuration file.
+    */
+   public static Options readOptionsFile (String filename) throws IOException {
+      Options options = new Options();
+      options.parseOptionsFile(filename);
+      options.filename = filename;
+      return options;
+   }
+
+
+   public String getFilename() {
+      return this.filename;
+   }
+
+
+   public String getOption (String optionName) {
       return argumentMap.get(optionName);
    }
 
-   public static int getIntOption (String optionName) {
+   public void setOption (String optionName, String value) {
+      argumentMap.put(optionName, value);
+   }
+
+   public int getIntOption (String optionName) {
       return Integer.parseInt(getOption(optionName));
    }
 
-   public static boolean getBooleanOption (String optionName) {
-      return Boolean.getBoolean(getOption(optionName));
+   /**
+    * Get an int option, return the default value if the option is not set.
+    */
+   public int getIntOption (String optionName, int defaultValue) {
+      String result = getOption(optionName);
+      if (result == null || result.isEmpty()) {
+         return defaultValue;
+      }
+      return Integer.parseInt(result);
+   }
+
+   public boolean getBooleanOption (String optionName) {
+      // Boolean.getBoolean would look up a system property
+      return Boolean.parseBoolean(getOption(optionName));
    }
 
-   public static String[] getListOption (String optionName) {
+   public String[] getListOption (String optionName) {
       String result = getOption(optionName);
       if (result == null) {
          System.err.println("ERROR, could not find option: " + optionName);
@@ -48,13 +93,11 @@ public class Options {
       return result.split(listDelimiter);
    }
 
-   public static void parseOptionsFile (String filename) throws IOException {
+   private void parseOptionsFile (String filename) throws IOException {
 
       DataInputStream in = new DataInputStream(new FileInputStream(filename));
       BufferedReader br = new BufferedReader(new InputStreamReader(in, Charset.forName("UTF-8")));
 
-      argumentMap = new HashMap<String, String>();
-
       String strLine;
       while ((strLine = br.readLine()) != null) {
 
@@ -88,7 +131,7 @@ public class Options {
 
    }
 
-   public static void printAll() {
+   public void printAll() {
       for (String key : argumentMap.keySet()) {
          System.out.println(key + ": " + argumentMap.get(key));
       }
@@ -0,0 +1,243 @@
+// (c) Wiltrud Kessler
+// 19.10.2026
+// This code is distributed under a Creative Commons
+// Attribution-NonCommercial-ShareAlike 3.0 Unported license
+// http://creativecommons.org/licenses/by-nc-sa/3.0/
+
+package de.uni_stuttgart.ims.corpus.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+
+/**
+ * Find several token sequences (phrases) in a sentence at once.
+ * Aho-Corasick automaton over tokens instead of characters,
+ * all phrases are found with one left-to-right pass over the sentence.
+ *
+ * Usage: add all phrases, then call find* for the sentence(s).
+ *
+ * @author kesslewd
+ *
+ */
+public class PhraseMatcher {
+
+   private static final int[] NONE = new int[0];
+
+   private boolean caseSensitive;
+   private List<Integer> phraseLengths = new ArrayList<Integer>();
+   private Node root = new Node();
+   private boolean built = false;
+
+
+   private static class Node {
+      Map<String, Node> children = new HashMap<String, Node>(4);
+      Node fail;
+      /** Ids of the phrases that end exactly here. */
+      int[] phrases = NONE;
+      /** Ids of all phrases that end here, including those reached via fail links. */
+      int[] outputs = NONE;
+   }
+
+
+   /**
+    * @param caseSensitive if false, tokens are compared lowercased.
+    */
+   public PhraseMatcher(boolean caseSensitive) {
+      this.caseSensitive = caseSensitive;
+   }
+
+
+   /**
+    * Add a phrase, returns its id (ids are given out in order, starting at 0).
+    * Empty phrases get an id, but are never found.
+    */
+   public int addPhrase(String[] phrase) {
+      int id = this.phraseLengths.size();
+      this.phraseLengths.add(phrase.length);
+      if (phrase.length == 0) {
+         return id;
+      }
+
+      Node node = this.root;
+      for (String token : phrase) {
+         String key = getKey(token);
+         Node next = node.children.get(key);
+         if (next == null) {
+            next = new Node();
+            node.children.put(key, next);
+         }
+         node = next;
+      }
+      node.phrases = append(node.phrases, id);
+      this.built = false;
+      return id;
+   }
+
+
+   /**
+    * Number of phrases added.
+    */
+   public int size() {
+      return this.phraseLengths.size();
+   }
+
+
+   /**
+    * Find all occurrences of all phrases in the sentence.
+    *
+    * @return for each phrase id the start positions (ascending, starting at 0)
+    *   of all occurrences, empty array if the phrase is not found.
+    */
+   public int[][] findAll(SentenceTokenIndex sentence) {
+      int[][] result = new int[size()][];
+      Arrays.fill(result, NONE);
+
+      int length = sentence.length();
+      Node state = getRoot();
+      for (int i=0; i<length; i++) {
+         state = step(state, sentence.getForm(i, this.caseSensitive));
+         for (int id : state.outputs) {
+            result[id] = append(result[id], i - this.phraseLengths.get(id) + 1);
+         }
+      }
+      return result;
+   }
+
+
+   /**
+    * Find the first (leftmost) occurrence of all phrases in the sentence.
+    *
+    * @return for each phrase id the start position (starting at 0)
+    *   of the first occurrence, -1 if the phrase is not found.
+    */
+   public int[] findFirst(SentenceTokenIndex sentence) {
+      int[] result = new int[size()];
+      Arrays.fill(result, -1);
+
+      int length = sentence.length();
+      Node state = getRoot();
+      for (int i=0; i<length; i++) {
+         state = step(state, sentence.getForm(i, this.caseSensitive));
+         for (int id : state.outputs) {
+            if (result[id] == -1) {
+               result[id] = i - this.phraseLengths.get(id) + 1;
+            }
+         }
+      }
+      return result;
+   }
+
+
+   public int[] findFirst(String[] tokens) {
+      return findFirst(new SentenceTokenIndex(tokens));
+   }
+
+
+   /**
+    * Find all occurrences of all phrases in the sentence,
+    * cost does not depend on the number of phrases.
+    *
+    * @return one entry {start, end (exclusive), phrase id} per occurrence,
+    *   ordered by end position.
+    */
+   public List<int[]> findMatches(SentenceTokenIndex sentence) {
+      List<int[]> result = new ArrayList<int[]>();
+
+      int length = sentence.length();
+      Node state = getRoot();
+      for (int i=0; i<length; i++) {
+         state = step(state, sentence.getForm(i, this.caseSensitive));
+         for (int id : state.outputs) {
+            result.add(new int[] {i - this.phraseLengths.get(id) + 1, i + 1, id});
+         }
+      }
+      return result;
+   }
+
+
+
+   private Node step(Node state, String key) {
+      while (state != this.root && !state.children.containsKey(key)) {
+         state = state.fail;
+      }
+      Node next = state.children.get(key);
+      return (next == null) ? this.root : next;
+   }
+
+
+   private String getKey(String token) {
+      return this.caseSensitive ? token : SentenceTokenIndex.toLowerCase(token);
+   }
+
+
+   /**
+    * Get root, compute fail links first if phrases have been added.
+    */
+   private Node getRoot() {
+      if (!this.built) {
+         build();
+      }
+      return this.root;
+   }
+
+
+   /**
+    * Compute fail links breadth first and collect outputs along them.
+    * Fail links always point to a node closer to the root,
+    * so its outputs are complete when a node is dequeued.
+    *
+    * This is done automatically on the first search after adding phrases,
+    * call it explicitly before the matcher is used by several threads.
+    */
+   public void build() {
+      LinkedList<Node> queue = new LinkedList<Node>();
+      this.root.fail = this.root;
+      for (Node child : this.root.children.values()) {
+         child.fail = this.root;
+         queue.add(child);
+      }
+
+      while (!queue.isEmpty()) {
+         Node node = queue.removeFirst();
+         node.outputs = merge(node.phrases, node.fail.outputs);
+
+         for (Map.Entry<String, Node> entry : node.children.entrySet()) {
+            String key = entry.getKey();
+            Node child = entry.getValue();
+
+            Node fail = node.fail;
+            while (fail != this.root && !fail.children.containsKey(key)) {
+               fail = fail.fail;
+            }
+            Node target = fail.children.get(key);
+            child.fail = (target == null) ? this.root : target;
+
+            queue.add(child);
+         }
+      }
+
+      this.built = true;
+   }
+
+
+   private static int[] merge(int[] first, int[] second) {
+      if (second.length == 0) {
+         return first;
+      }
+      int[] result = Arrays.copyOf(first, first.length + second.length);
+      System.arraycopy(second, 0, result, first.length, second.length);
+      return result;
+   }
+
+   private static int[] append(int[] array, int value) {
+      int[] result = Arrays.copyOf(array, array.length + 1);
+      result[array.length] = value;
+      return result;
+   }
+
+}
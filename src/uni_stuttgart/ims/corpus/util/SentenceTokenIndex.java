@@ -0,0 +1,124 @@
+// (c) Wiltrud Kessler
+// 19.10.2026
+// This code is distributed under a Creative Commons
+// Attribution-NonCommercial-ShareAlike 3.0 Unported license
+// http://creativecommons.org/licenses/by-nc-sa/3.0/
+
+package de.uni_stuttgart.ims.corpus.util;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+
+/**
+ * Index of the tokens of one sentence,
+ * maps word forms (and lowercased word forms) to their positions.
+ *
+ * Positions start at 0, token ids as used in annotations
+ * are position + 1.
+ *
+ * @author kesslewd
+ *
+ */
+public class SentenceTokenIndex {
+
+   private static final int[] NONE = new int[0];
+
+   private String[] forms;
+   private String[] lowerForms;
+   private Map<String, int[]> positions;
+   private Map<String, int[]> lowerPositions;
+
+
+   /**
+    * Create index for these tokens,
+    * the lowercased index is only built when needed.
+    */
+   public SentenceTokenIndex(String[] forms) {
+      this.forms = forms;
+   }
+
+
+   public int length() {
+      return this.forms.length;
+   }
+
+   public String getForm(int position) {
+      return this.forms[position];
+   }
+
+   public String getLowerForm(int position) {
+      return getLowerForms()[position];
+   }
+
+   /**
+    * Form of the token at this position, lowercased if not case sensitive.
+    */
+   public String getForm(int position, boolean caseSensitive) {
+      return caseSensitive ? this.forms[position] : getLowerForm(position);
+   }
+
+
+   /**
+    * All positions (ascending) of the given word form,
+    * empty array if the form does not occur.
+    */
+   public int[] getPositions(String form, boolean caseSensitive) {
+      int[] result;
+      if (caseSensitive) {
+         if (this.positions == null) {
+            this.positions = buildIndex(this.forms);
+         }
+         result = this.positions.get(form);
+      } else {
+         if (this.lowerPositions == null) {
+            this.lowerPositions = buildIndex(getLowerForms());
+         }
+         result = this.lowerPositions.get(toLowerCase(form));
+      }
+      return (result == null) ? NONE : result;
+   }
+
+   /**
+    * First position of the given word form, -1 if the form does not occur.
+    */
+   public int getFirstPosition(String form, boolean caseSensitive) {
+      int[] result = getPositions(form, caseSensitive);
+      return (result.length == 0) ? -1 : result[0];
+   }
+
+
+   static String toLowerCase(String form) {
+      return form.toLowerCase(Locale.ENGLISH);
+   }
+
+
+   private String[] getLowerForms() {
+      if (this.lowerForms == null) {
+         this.lowerForms = new String[this.forms.length];
+         for (int i=0; i<this.forms.length; i++) {
+            this.lowerForms[i] = toLowerCase(this.forms[i]);
+         }
+      }
+      return this.lowerForms;
+   }
+
+
+   private static Map<String, int[]> buildIndex(String[] forms) {
+      Map<String, int[]> index = new HashMap<String, int[]>(forms.length * 2);
+      for (int i=0; i<forms.length; i++) {
+         int[] old = index.get(forms[i]);
+         if (old == null) {
+            index.put(forms[i], new int[] {i});
+         } else {
+            int[] extended = new int[old.length + 1];
+            System.arraycopy(old, 0, extended, 0, old.length);
+            extended[old.length] = i;
+            index.put(forms[i], extended);
+         }
+      }
+      return index;
+   }
+
+}
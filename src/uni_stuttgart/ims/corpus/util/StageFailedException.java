@@ -0,0 +1,29 @@
+// (c) Wiltrud Kessler
+// 19.10.2026
+// This code is distributed under a Creative Commons
+// Attribution-NonCommercial-ShareAlike 3.0 Unported license
+// http://creativecommons.org/licenses/by-nc-sa/3.0/
+
+package de.uni_stuttgart.ims.corpus.util;
+
+
+/**
+ * A processing step (IMSExtractor, NormalizeSentence, ...) cannot go on,
+ * the reason has already been printed to System.err.
+ *
+ * Thrown by the run methods instead of calling System.exit,
+ * so that a process running several steps (PipelineDaemon) survives it.
+ * The main methods exit with status 1.
+ *
+ * @author kesslewd
+ *
+ */
+public class StageFailedException extends RuntimeException {
+
+   private static final long serialVersionUID = 1L;
+
+   public StageFailedException(String message) {
+      super(message);
+   }
+
+}
@@ -0,0 +1,195 @@
+// (c) Wiltrud Kessler
+// 19.10.2026
+// This code is distributed under a Creative Commons
+// Attribution-NonCommercial-ShareAlike 3.0 Unported license
+// http://creativecommons.org/licenses/by-nc-sa/3.0/
+
+package de.uni_stuttgart.ims.corpus.util;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+
+import de.uni_stuttgart.ims.util.Fileutils;
+
+
+/**
+ * Replacements for tokens that make the parser crash, used by the
+ * normalization and by the converters that write sentences.
+ *
+ * Two kinds of rules:
+ * - token rules replace a whole token if it is exactly the same
+ *   (looked up in a hash map),
+ * - character rules replace a single character wherever it occurs
+ *   in a token (looked up in a table indexed by the character).
+ * Token rules are tried first.
+ *
+ * Rule file: one rule per line, original and replacement separated
+ * by a tab. If the original is a single character, it is a character rule,
+ * otherwise a token rule. Lines starting with # are ignored.
+ *
+ * The rules are read from the file given in the option
+ * 'tokenReplacementsFilename', without it only '=' is replaced by 'eq'.
+ *
+ * @author kesslewd
+ *
+ */
+public class TokenReplacementRules {
+
+   /** Built-in rules. */
+   private static TokenReplacementRules defaultRules = null;
+
+   /** Rules read from files, by file name. */
+   private static HashMap<String, TokenReplacementRules> fileRules = new HashMap<String, TokenReplacementRules>();
+   /** Modification time of the file when the rules were read. */
+   private long lastModified = 0;
+
+   private HashMap<String, String> tokenRules = new HashMap<String, String>();
+
+   /** Replacement for every character, null if it is not replaced. */
+   private String[] charRules = new String[0];
+
+
+
+   /**
+    * Empty rule table.
+    */
+   public TokenReplacementRules() {
+   }
+
+
+   /**
+    * The built-in rules, only '=' is replaced by 'eq'.
+    */
+   public static synchronized TokenReplacementRules getDefault() {
+      if (defaultRules == null) {
+         defaultRules = new TokenReplacementRules();
+         defaultRules.addRule("=", "eq");
+      }
+      return defaultRules;
+   }
+
+
+   /**
+    * Rules from the option 'tokenReplacementsFilename'
+    * or the built-in rules. Every file is only read once
+    * (again if it has been changed).
+    * @throws StageFailedException if the file cannot be read.
+    */
+   public static synchronized TokenReplacementRules getRules(Options options) {
+      String filename = options.getOption("tokenReplacementsFilename");
+      if (filename == null || filename.isEmpty()) {
+         return getDefault();
+      }
+      TokenReplacementRules rules = fileRules.get(filename);
+      if (rules == null || rules.lastModified != new File(filename).lastModified()) {
+         try {
+            rules = readRules(filename);
+            System.out.println("Read " + rules.size() + " token replacement rules from: " + filename);
+         } catch (IOException e) {
+            System.err.println("ERROR while reading token replacement rules: " + e.getMessage());
+            e.printStackTrace();
+            throw new StageFailedException("Cannot read token replacement rules " + filename);
+         }
+         fileRules.put(filename, rules);
+      }
+      return rules;
+   }
+
+
+   public static TokenReplacementRules readRules(String filename) throws IOException {
+      TokenReplacementRules rules = new TokenReplacementRules();
+      rules.lastModified = new File(filename).lastModified();
+      BufferedReader br = Fileutils.getReadFile(filename);
+      try {
+         String strLine;
+         int lineno = 0;
+         while ((strLine = br.readLine()) != null) {
+            lineno++;
+            if (strLine.trim().isEmpty() || strLine.startsWith("#")) {
+               continue;
+            }
+            String[] parts = strLine.split("\t");
+            if (parts.length != 2 || parts[0].isEmpty() || parts[1].trim().isEmpty()) {
+               System.err.println("WARNING, ignoring malformed token replacement rule in line " + lineno + ": " + strLine);
+               continue;
+            }
+            rules.addRule(parts[0], parts[1].trim());
+         }
+      } finally {
+         Fileutils.closeSilently(br);
+      }
+      return rules;
+   }
+
+
+
+   /**
+    * Add a rule, a single character as original is a character rule.
+    */
+   public void addRule(String original, String replacement) {
+      if (original.length() == 1) {
+         char c = original.charAt(0);
+         if (c >= this.charRules.length) {
+            this.charRules = Arrays.copyOf(this.charRules, c + 1);
+         }
+         this.charRules[c] = replacement;
+      } else {
+         this.tokenRules.put(original, replacement);
+      }
+   }
+
+
+   public int size() {
+      int size = this.tokenRules.size();
+      for (String rule : this.charRules) {
+         if (rule != null) {
+            size++;
+         }
+      }
+      return size;
+   }
+
+
+
+   /**
+    * Get the replaced token, null if no rule applies.
+    */
+   public String getReplacement(String token) {
+
+      String replacement = this.tokenRules.get(token);
+      if (replacement != null) {
+         return replacement;
+      }
+
+      // Character rules, only copy the token if something is replaced
+      StringBuilder result = null;
+      int length = token.length();
+      for (int i=0; i<length; i++) {
+         char c = token.charAt(i);
+         String charReplacement = (c < this.charRules.length) ? this.charRules[c] : null;
+         if (charReplacement != null) {
+            if (result == null) {
+               result = new StringBuilder(length + 8);
+               result.append(token, 0, i);
+            }
+            result.append(charReplacement);
+         } else if (result != null) {
+            result.append(c);
+         }
+      }
+      return (result == null) ? null : result.toString();
+   }
+
+
+   /**
+    * Get the replaced token, the token itself if no rule applies.
+    */
+   public String apply(String token) {
+      String replacement = getReplacement(token);
+      return (replacement == null) ? token : replacement;
+   }
+
+}
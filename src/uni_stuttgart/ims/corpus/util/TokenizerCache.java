@@ -0,0 +1,150 @@
+// (c) Wiltrud Kessler
+// 19.10.2026
+// This code is distributed under a Creative Commons
+// Attribution-NonCommercial-ShareAlike 3.0 Unported license
+// http://creativecommons.org/licenses/by-nc-sa/3.0/
+
+package de.uni_stuttgart.ims.corpus.util;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import de.uni_stuttgart.ims.nlpbase.tools.Tokenizer;
+
+
+/**
+ * Bounded LRU memo of tokenizer results.
+ * Annotated strings like entities ("canon", "this camera") are
+ * tokenized over and over again, this remembers the tokens of
+ * the most recently used strings.
+ *
+ * The cache can be shared by several threads, every thread
+ * calls it with its own tokenizer. To keep contention low,
+ * the entries are spread over several independently locked segments.
+ *
+ * @author kesslewd
+ *
+ */
+public class TokenizerCache {
+
+   private static int numberOfSegments = 16;
+
+   private Segment[] segments;
+
+   private AtomicLong hits = new AtomicLong(0);
+   private AtomicLong misses = new AtomicLong(0);
+   private AtomicLong evictions = new AtomicLong(0);
+
+
+   /**
+    * One LRU segment, access needs to be synchronized on the segment.
+    */
+   @SuppressWarnings("serial")
+   private class Segment extends LinkedHashMap<String, String[]> {
+
+      private int capacity;
+
+      Segment(int capacity) {
+         super(16, 0.75f, true); // access order -> LRU
+         this.capacity = capacity;
+      }
+
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, String[]> eldest) {
+         if (size() > capacity) {
+            evictions.incrementAndGet();
+            return true;
+         }
+         return false;
+      }
+   }
+
+
+   /**
+    * Create a cache that holds at most (about) maxEntries tokenized strings.
+    */
+   public TokenizerCache(int maxEntries) {
+      int perSegment = Math.max(1, maxEntries / numberOfSegments);
+      this.segments = new Segment[numberOfSegments];
+      for (int i=0; i<numberOfSegments; i++) {
+         this.segments[i] = new Segment(perSegment);
+      }
+   }
+
+
+
+   /**
+    * Tokenize the text, use the cached tokens if the text has been seen before.
+    * The returned array belongs to the caller.
+    *
+    * @param tokenizer Used in case the text is not in the cache,
+    *    it is only called from the current thread.
+    * @param text Text to be tokenized.
+    */
+   public String[] tokenize(Tokenizer tokenizer, String text) {
+
+      Segment segment = segments[(text.hashCode() & 0x7fffffff) % segments.length];
+
+      String[] tokens;
+      synchronized (segment) {
+         tokens = segment.get(text);
+      }
+      if (tokens != null) {
+         hits.incrementAndGet();
+         return tokens.clone();
+      }
+
+      misses.incrementAndGet();
+      tokens = tokenizer.tokenize(text);
+      if (tokens != null) {
+         synchronized (segment) {
+            segment.put(text, tokens.clone());
+         }
+      }
+      return tokens;
+   }
+
+
+
+   public long getHits() {
+      return hits.get();
+   }
+
+   public long getMisses() {
+      return misses.get();
+   }
+
+   public long getEvictions() {
+      return evictions.get();
+   }
+
+   /**
+    * Fraction of lookups that were answered from the cache (0 if there were none).
+    */
+   public double getHitRate() {
+      long total = getHits() + getMisses();
+      if (total == 0) {
+         return 0;
+      }
+      return (double) getHits() / total;
+   }
+
+   public int size() {
+      int size = 0;
+      for (Segment segment : segments) {
+         synchronized (segment) {
+            size += segment.size();
+         }
+      }
+      return size;
+   }
+
+
+   public void printStatistics() {
+      System.out.println("tokenizer cache: " + getHits() + " hits, " + getMisses() + " misses, "
+            + getEvictions() + " evictions, " + size() + " entries, "
+            + String.format("hit rate %.2f%%", getHitRate() * 100));
+   }
+
+}
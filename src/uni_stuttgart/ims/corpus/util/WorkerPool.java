@@ -0,0 +1,74 @@
+// (c) Wiltrud Kessler
+// 19.10.2026
+// This code is distributed under a Creative Commons
+// Attribution-NonCommercial-ShareAlike 3.0 Unported license
+// http://creativecommons.org/licenses/by-nc-sa/3.0/
+
+package de.uni_stuttgart.ims.corpus.util;
+
+import java.util.concurrent.ForkJoinPool;
+
+
+/**
+ * Thread pool shared by all processing steps.
+ * The number of threads is taken from the option 'numThreads'
+ * (default: number of cores) of the step that first uses the pool.
+ * If the pool is kept alive (e.g., BatchRunner), it is the thread budget
+ * of all steps that run at the same time.
+ *
+ * @author kesslewd
+ *
+ */
+public class WorkerPool {
+
+   private static ForkJoinPool pool = null;
+
+   /** Ignore shutdown, see setKeepAlive. */
+   private static boolean keepAlive = false;
+
+
+   /**
+    * Number of threads to be used, option 'numThreads'
+    * (the size of the pool if it is kept alive).
+    */
+   public static synchronized int getNumThreads(Options options) {
+      if (keepAlive && pool != null) {
+         return pool.getParallelism();
+      }
+      return Math.max(1, options.getIntOption("numThreads", Runtime.getRuntime().availableProcessors()));
+   }
+
+
+   /**
+    * Get the pool, create it with the number of threads of
+    * these options if necessary.
+    */
+   public static synchronized ForkJoinPool getPool(Options options) {
+      if (pool == null) {
+         pool = new ForkJoinPool(getNumThreads(options));
+      }
+      return pool;
+   }
+
+
+   /**
+    * Keep the pool when a processing step shuts it down,
+    * e.g., PipelineDaemon and BatchRunner run all steps with the same pool.
+    */
+   public static synchronized void setKeepAlive(boolean keep) {
+      keepAlive = keep;
+   }
+
+
+   /**
+    * Shut down the pool (if there is one and it is not kept alive),
+    * the next call to getPool creates a new one.
+    */
+   public static synchronized void shutdown() {
+      if (pool != null && !keepAlive) {
+         pool.shutdown();
+         pool = null;
+      }
+   }
+
+}